@@ -0,0 +1,89 @@
+package com.hmdp.config;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.utils.ReadWriteInterceptor;
+import com.hmdp.utils.ReadWriteRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读写分离数据源，开启后替换默认的单数据源
+ * <p>
+ * 主库使用spring.datasource，从库使用hmdp.datasource.replicas；从库连接池设置为只读，误路由的写语句会直接报错。
+ * 主库和从库的连接池都使用spring.datasource.hikari中的配置，与单数据源时一致
+ */
+@Configuration
+@EnableConfigurationProperties(ReadWriteProperties.class)
+@ConditionalOnProperty(prefix = "hmdp.datasource", name = "read-write-split", havingValue = "true")
+public class DataSourceConfig {
+
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource(DataSourceProperties dataSourceProperties,
+                                                        ReadWriteProperties properties,
+                                                        Environment environment) {
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class).build();
+        bindHikari(binder, primary);
+        primary.setPoolName("primary");
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<ReadWriteProperties.Replica> list = properties.getReplicas();
+        for (int i = 0; i < list.size(); i++) {
+            ReadWriteProperties.Replica replica = list.get(i);
+            HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(replica.getUrl())
+                    .username(StrUtil.blankToDefault(replica.getUsername(), dataSourceProperties.determineUsername()))
+                    .password(StrUtil.blankToDefault(replica.getPassword(), dataSourceProperties.determinePassword()))
+                    .build();
+            bindHikari(binder, dataSource);
+            String name = "replica-" + i;
+            dataSource.setPoolName(name);
+            dataSource.setReadOnly(true);
+            replicas.put(name, dataSource);
+        }
+        return new ReadWriteRoutingDataSource(primary, replicas,
+                properties.getMaxLagSeconds(), properties.getCheckIntervalSeconds());
+    }
+
+    /**
+     * 与Spring Boot自动配置的Hikari数据源相同，把spring.datasource.hikari绑定到连接池上；连接池名称和只读随后覆盖
+     */
+    private static void bindHikari(Binder binder, HikariDataSource dataSource) {
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+    }
+
+    /**
+     * 延迟取连接，事务开始时不立即决定主从
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * 写语句走主库并标记粘主库，由mybatis-plus自动注册
+     */
+    @Bean
+    public ReadWriteInterceptor readWriteInterceptor(StringRedisTemplate stringRedisTemplate,
+                                                     ReadWriteProperties properties) {
+        return new ReadWriteInterceptor(stringRedisTemplate, TimeUnit.SECONDS.toMillis(properties.getStickySeconds()));
+    }
+}
@@ -1,10 +1,18 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminInterceptor;
+import com.hmdp.utils.DauTracker;
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.RefreshTokenInterceptor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import javax.annotation.Resource;
+import java.util.List;
+
 /**
  * @author RainSoul
  * @create 2024-09-02
@@ -12,8 +20,22 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private DauTracker dauTracker;
+
+    /**
+     * 管理员用户id，未配置时管理接口对所有用户返回403
+     */
+    @Value("${hmdp.admin.user-ids:}")
+    private List<Long> adminIds;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        // token刷新拦截器拦截所有请求，先于登录拦截器执行
+        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate, dauTracker)).order(0);
         registry.addInterceptor(new LoginInterceptor())
                 .excludePathPatterns(
                         "/user/code",
@@ -22,7 +44,15 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/shop-type/**",
                         "/blog/hot",
                         "/upload/**",
+                        "/imgs/**",
                         "/voucher/**"
-                );
+                ).order(1);
+        registry.addInterceptor(new AdminInterceptor(adminIds))
+                .addPathPatterns(
+                        "/blog/hot/rebuild",
+                        "/analytics/**",
+                        "/metrics/**"
+                )
+                .order(2);
     }
 }
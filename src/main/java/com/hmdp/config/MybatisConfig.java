@@ -3,6 +3,8 @@ package com.hmdp.config;
 import com.baomidou.mybatisplus.annotation.DbType;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.hmdp.utils.SqlFingerprintMetrics;
+import com.hmdp.utils.SqlMetricsInterceptor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -14,4 +16,12 @@ public class MybatisConfig {
         interceptor.addInnerInterceptor(new PaginationInnerInterceptor(DbType.MYSQL));
         return interceptor;
     }
+
+    /**
+     * 统计SQL耗时与指纹，由mybatis-plus自动注册
+     */
+    @Bean
+    public SqlMetricsInterceptor sqlMetricsInterceptor(SqlFingerprintMetrics sqlFingerprintMetrics) {
+        return new SqlMetricsInterceptor(sqlFingerprintMetrics);
+    }
 }
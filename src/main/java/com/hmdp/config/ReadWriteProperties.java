@@ -0,0 +1,42 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离配置，主库沿用spring.datasource
+ */
+@Data
+@ConfigurationProperties(prefix = "hmdp.datasource")
+public class ReadWriteProperties {
+    /**
+     * 是否开启读写分离
+     */
+    private boolean readWriteSplit;
+    /**
+     * 从库复制延迟超过该值时暂停读取
+     */
+    private long maxLagSeconds = 3;
+    /**
+     * 用户写入数据后该时间内的读都走主库，应大于maxLagSeconds
+     */
+    private long stickySeconds = 5;
+    /**
+     * 从库健康检查间隔
+     */
+    private long checkIntervalSeconds = 5;
+    private List<Replica> replicas = new ArrayList<>();
+
+    @Data
+    public static class Replica {
+        private String url;
+        /**
+         * 为空时与主库相同
+         */
+        private String username;
+        private String password;
+    }
+}
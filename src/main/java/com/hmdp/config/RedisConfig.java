@@ -0,0 +1,19 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.TimedStringRedisTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@Configuration
+public class RedisConfig {
+
+    /**
+     * 代替自动配置的StringRedisTemplate，在请求线程中统计Redis耗时
+     */
+    @Bean
+    public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory redisConnectionFactory) {
+        return new TimedStringRedisTemplate(redisConnectionFactory);
+    }
+}
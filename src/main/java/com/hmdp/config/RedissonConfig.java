@@ -1,8 +1,12 @@
 package com.hmdp.config;
 
+import cn.hutool.core.util.StrUtil;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.redisson.config.SingleServerConfig;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -13,10 +17,19 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class RedissonConfig {
 
+    /**
+     * 与StringRedisTemplate使用同一个Redis，地址和密码取自spring.redis配置
+     */
     @Bean
-    public RedissonClient redissonClient() {
+    @ConditionalOnMissingBean
+    public RedissonClient redissonClient(RedisProperties redisProperties) {
         Config config = new Config();
-        config.useSingleServer().setAddress("redis://123.60.49.130:6379").setPassword("redis_FNK7nE");
+        SingleServerConfig server = config.useSingleServer()
+                .setAddress("redis://" + redisProperties.getHost() + ":" + redisProperties.getPort())
+                .setDatabase(redisProperties.getDatabase());
+        if (StrUtil.isNotBlank(redisProperties.getPassword())) {
+            server.setPassword(redisProperties.getPassword());
+        }
         return Redisson.create(config);
     }
 }
@@ -0,0 +1,61 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IAnalyticsService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/analytics")
+public class AnalyticsController {
+
+    @Resource
+    private IAnalyticsService analyticsService;
+
+    /**
+     * 查询日活
+     * @param date 日期，默认今天
+     * @return 活跃用户数
+     */
+    @GetMapping("/dau")
+    public Result queryDau(
+            @RequestParam(value = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date
+    ) {
+        return analyticsService.queryDau(date);
+    }
+
+    /**
+     * 查询截止某天最近7天的周活
+     * @param date 截止日期，默认今天
+     * @return 活跃用户数
+     */
+    @GetMapping("/wau")
+    public Result queryWau(
+            @RequestParam(value = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date
+    ) {
+        return analyticsService.queryWau(date);
+    }
+
+    /**
+     * 查询留存
+     * @param date 同期群日期
+     * @param days 间隔天数，默认1
+     * @param cohort new为新用户，active为活跃用户
+     * @return 同期群人数、留存人数和留存率
+     */
+    @GetMapping("/retention")
+    public Result queryRetention(
+            @RequestParam("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(value = "days", defaultValue = "1") Integer days,
+            @RequestParam(value = "cohort", defaultValue = "active") String cohort
+    ) {
+        return analyticsService.queryRetention(date, days, cohort);
+    }
+}
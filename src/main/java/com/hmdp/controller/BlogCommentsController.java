@@ -1,13 +1,56 @@
 package com.hmdp.controller;
 
 
-import org.springframework.web.bind.annotation.RequestMapping;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.BlogComments;
+import com.hmdp.service.IBlogCommentsService;
+import org.springframework.web.bind.annotation.*;
 
-import org.springframework.web.bind.annotation.RestController;
+import javax.annotation.Resource;
 
 
 @RestController
 @RequestMapping("/blog-comments")
 public class BlogCommentsController {
 
+    @Resource
+    private IBlogCommentsService blogCommentsService;
+
+    /**
+     * 发表评论或回复
+     * @param comment 评论内容，parentId为空表示一级评论
+     * @return 评论id
+     */
+    @PostMapping
+    public Result saveComment(@RequestBody BlogComments comment) {
+        return blogCommentsService.saveComment(comment);
+    }
+
+    /**
+     * 游标分页查询博文的一级评论，每条附带前几条回复
+     * @param blogId 博文id
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 评论列表和下一页游标
+     */
+    @GetMapping("/of/blog")
+    public Result queryComments(
+            @RequestParam("blogId") Long blogId,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return blogCommentsService.queryComments(blogId, cursor);
+    }
+
+    /**
+     * 游标分页查询一级评论下的回复
+     * @param parentId 一级评论id
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 回复列表和下一页游标
+     */
+    @GetMapping("/replies")
+    public Result queryReplies(
+            @RequestParam("parentId") Long parentId,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return blogCommentsService.queryReplies(parentId, cursor);
+    }
 }
@@ -5,14 +5,14 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.User;
 import com.hmdp.service.IBlogService;
-import com.hmdp.service.IUserService;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.time.LocalDate;
 import java.util.List;
 
 
@@ -22,26 +22,41 @@ public class BlogController {
 
     @Resource
     private IBlogService blogService;
-    @Resource
-    private IUserService userService;
 
     @PostMapping
     public Result saveBlog(@RequestBody Blog blog) {
-        // 获取登录用户
-        UserDTO user = UserHolder.getUser();
-        blog.setUserId(user.getId());
-        // 保存探店博文
-        blogService.save(blog);
-        // 返回id
-        return Result.ok(blog.getId());
+        return blogService.saveBlog(blog);
+    }
+
+    @GetMapping("/{id}")
+    public Result queryBlogById(@PathVariable("id") Long id) {
+        return blogService.queryBlogById(id);
+    }
+
+    /**
+     * 查询博文在日期范围内的独立访客数
+     * @param id 博文id
+     * @param from 开始日期，默认6天前
+     * @param to 结束日期，默认今天
+     * @return 近似UV
+     */
+    @GetMapping("/uv/{id}")
+    public Result queryBlogUv(
+            @PathVariable("id") Long id,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to
+    ) {
+        return blogService.queryBlogUv(id, from, to);
     }
 
     @PutMapping("/like/{id}")
     public Result likeBlog(@PathVariable("id") Long id) {
-        // 修改点赞数量
-        blogService.update()
-                .setSql("liked = liked + 1").eq("id", id).update();
-        return Result.ok();
+        return blogService.likeBlog(id);
+    }
+
+    @GetMapping("/likes/{id}")
+    public Result queryBlogLikes(@PathVariable("id") Long id) {
+        return blogService.queryBlogLikes(id);
     }
 
     @GetMapping("/of/me")
@@ -56,21 +71,44 @@ public class BlogController {
         return Result.ok(records);
     }
 
+    /**
+     * 游标分页查询我的博文
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 博文列表和下一页游标
+     */
+    @GetMapping("/of/me/cursor")
+    public Result queryMyBlogByCursor(@RequestParam(value = "cursor", required = false) String cursor) {
+        return blogService.queryMyBlogByCursor(cursor);
+    }
+
     @GetMapping("/hot")
     public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
-        // 根据用户查询
-        Page<Blog> page = blogService.query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog ->{
-            Long userId = blog.getUserId();
-            User user = userService.getById(userId);
-            blog.setName(user.getNickName());
-            blog.setIcon(user.getIcon());
-        });
-        return Result.ok(records);
+        return blogService.queryHotBlog(current);
+    }
+
+    /**
+     * 滚动分页查询关注的人发布的博文
+     * @param max 上一页最小的时间戳，第一页传当前时间戳
+     * @param offset 上一页中与最小时间戳相同的博文数量，第一页传0
+     * @return 博文列表、本页最小时间戳和偏移量
+     */
+    @GetMapping("/of/follow")
+    public Result queryBlogOfFollow(
+            @RequestParam("lastId") Long max,
+            @RequestParam(value = "offset", defaultValue = "0") Integer offset
+    ) {
+        return blogService.queryBlogOfFollow(max, offset);
+    }
+
+    /**
+     * 从数据库重建热门博文排行，仅管理员可调用，重建在后台执行
+     * @return 无
+     */
+    @PutMapping("/hot/rebuild")
+    public Result rebuildHotRank() {
+        if (!blogService.rebuildHotRank()) {
+            return Result.fail("热榜正在重建，请稍后再试");
+        }
+        return Result.ok();
     }
 }
@@ -0,0 +1,40 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.EndpointMetrics;
+import com.hmdp.utils.SqlFingerprintMetrics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    @Resource
+    private EndpointMetrics endpointMetrics;
+
+    @Resource
+    private SqlFingerprintMetrics sqlFingerprintMetrics;
+
+    /**
+     * 查询各接口的耗时分解，按总耗时从高到低排列
+     * @return 接口统计列表
+     */
+    @GetMapping("/endpoints")
+    public Result queryEndpoints() {
+        return Result.ok(endpointMetrics.snapshot());
+    }
+
+    /**
+     * 查询各类SQL的耗时分布和疑似N+1的次数，按总耗时从高到低排列
+     * @return SQL指纹统计列表
+     */
+    @GetMapping("/sql")
+    public Result querySql() {
+        return Result.ok(sqlFingerprintMetrics.snapshot());
+    }
+}
@@ -1,15 +1,14 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.time.LocalDate;
 
 
 @RestController
@@ -29,6 +28,22 @@ public class ShopController {
         return shopService.queryById(id);
     }
 
+    /**
+     * 查询商铺详情页在日期范围内的独立访客数
+     * @param id 商铺id
+     * @param from 开始日期，默认6天前
+     * @param to 结束日期，默认今天
+     * @return 近似UV
+     */
+    @GetMapping("/uv/{id}")
+    public Result queryShopUv(
+            @PathVariable("id") Long id,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to
+    ) {
+        return shopService.queryShopUv(id, from, to);
+    }
+
     /**
      * 新增商铺信息
      * @param shop 商铺数据
@@ -36,10 +51,7 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -53,22 +65,59 @@ public class ShopController {
     }
 
     /**
-     * 根据商铺类型分页查询商铺信息
+     * 根据商铺类型分页查询商铺信息，传入坐标时按距离由近到远排序
      * @param typeId 商铺类型
      * @param current 页码
+     * @param x 经度
+     * @param y 纬度
      * @return 商铺列表
      */
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y
+    ) {
+        return shopService.queryShopByType(typeId, current, x, y);
+    }
+
+    /**
+     * 按距离分页查询附近的商铺
+     * @param x 经度
+     * @param y 纬度
+     * @param typeId 商铺类型
+     * @param minScore 最低评分，乘10后的值
+     * @param minPrice 最低均价
+     * @param maxPrice 最高均价
+     * @param current 页码
+     * @return 商铺列表
+     */
+    @GetMapping("/nearby")
+    public Result queryNearby(
+            @RequestParam("x") Double x,
+            @RequestParam("y") Double y,
+            @RequestParam(value = "typeId", required = false) Integer typeId,
+            @RequestParam(value = "minScore", required = false) Integer minScore,
+            @RequestParam(value = "minPrice", required = false) Long minPrice,
+            @RequestParam(value = "maxPrice", required = false) Long maxPrice,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .eq("type_id", typeId)
-                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryNearby(x, y, typeId, minScore, minPrice, maxPrice, current);
+    }
+
+    /**
+     * 根据商铺类型游标分页查询商铺信息，按评分倒序
+     * @param typeId 商铺类型
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 商铺列表和下一页游标
+     */
+    @GetMapping("/of/type/cursor")
+    public Result queryShopByTypeCursor(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByTypeCursor(typeId, cursor);
     }
 
     /**
@@ -82,11 +131,20 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByName(name, current);
+    }
+
+    /**
+     * 根据商铺名称关键字游标分页查询商铺信息
+     * @param name 商铺名称关键字
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 商铺列表和下一页游标
+     */
+    @GetMapping("/of/name/cursor")
+    public Result queryShopByNameCursor(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByNameCursor(name, cursor);
     }
 }
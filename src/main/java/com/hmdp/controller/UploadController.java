@@ -1,63 +1,55 @@
 package com.hmdp.controller;
 
-import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.Result;
-import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.ImageStore;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
+import javax.annotation.Resource;
 import java.io.IOException;
-import java.util.UUID;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 @Slf4j
 @RestController
 @RequestMapping("upload")
 public class UploadController {
 
+    @Resource
+    private ImageStore imageStore;
+
     @PostMapping("blog")
     public Result uploadImage(@RequestParam("file") MultipartFile image) {
-        try {
-            // 获取原始文件名称
-            String originalFilename = image.getOriginalFilename();
-            // 生成新文件名
-            String fileName = createNewFileName(originalFilename);
-            // 保存文件
-            image.transferTo(new File(SystemConstants.IMAGE_UPLOAD_DIR, fileName));
+        // 流式保存，文件名为内容的SHA-256，相同的图片只保存一份
+        try (InputStream in = image.getInputStream()) {
+            String fileName = imageStore.store(in, image.getOriginalFilename());
             // 返回结果
             log.debug("文件上传成功，{}", fileName);
             return Result.ok(fileName);
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
         } catch (IOException e) {
             throw new RuntimeException("文件上传失败", e);
         }
     }
 
+    /**
+     * 删除上传的博文图片
+     * 图片按内容寻址，同一个文件可能同时属于其他用户尚未发布的上传或已发布的博文，这里只校验文件名，不删除文件；
+     * 回收不再被引用的文件需要对照tb_blog.images离线清理
+     *
+     * @param filename 上传时返回的文件名
+     * @return 无
+     */
     @GetMapping("/blog/delete")
     public Result deleteBlogImg(@RequestParam("name") String filename) {
-        File file = new File(SystemConstants.IMAGE_UPLOAD_DIR, filename);
-        if (file.isDirectory()) {
+        // 只能是存储根目录下blogs中的文件
+        Path path = imageStore.resolveSafely(filename);
+        if (path == null || !path.startsWith(imageStore.getRoot().resolve("blogs")) || Files.isDirectory(path)) {
             return Result.fail("错误的文件名称");
         }
-        FileUtil.del(file);
         return Result.ok();
     }
-
-    private String createNewFileName(String originalFilename) {
-        // 获取后缀
-        String suffix = StrUtil.subAfter(originalFilename, ".", true);
-        // 生成目录
-        String name = UUID.randomUUID().toString();
-        int hash = name.hashCode();
-        int d1 = hash & 0xF;
-        int d2 = (hash >> 4) & 0xF;
-        // 判断目录是否存在
-        File dir = new File(SystemConstants.IMAGE_UPLOAD_DIR, StrUtil.format("/blogs/{}/{}", d1, d2));
-        if (!dir.exists()) {
-            dir.mkdirs();
-        }
-        // 生成文件名
-        return StrUtil.format("/blogs/{}/{}/{}.{}", d1, d2, name, suffix);
-    }
 }
@@ -5,6 +5,7 @@ import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.UserInfo;
+import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.UserHolder;
@@ -13,6 +14,7 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
+import java.util.Map;
 
 @Slf4j
 @RestController
@@ -25,6 +27,9 @@ public class UserController {
     @Resource
     private IUserInfoService userInfoService;
 
+    @Resource
+    private IFollowService followService;
+
     /**
      * 发送手机验证码
      */
@@ -68,7 +73,39 @@ public class UserController {
         }
         info.setCreateTime(null);
         info.setUpdateTime(null);
+        // 粉丝数和关注数以Redis中的计数为准，数据库中的值会延迟几秒回写
+        Map<String, Integer> counts = followService.queryFollowCount(userId);
+        info.setFans(counts.get("fans"));
+        info.setFollowee(counts.get("followee"));
         // 返回
         return Result.ok(info);
     }
+
+    /**
+     * 今日签到
+     * @return 无
+     */
+    @PostMapping("/sign")
+    public Result sign() {
+        return userService.sign();
+    }
+
+    /**
+     * 查询连续签到天数和本月签到天数
+     * @return 签到统计
+     */
+    @GetMapping("/sign/count")
+    public Result signCount() {
+        return userService.signCount();
+    }
+
+    /**
+     * 查询某个月的签到天数
+     * @param month 月份，格式yyyyMM，不传为本月
+     * @return 签到天数
+     */
+    @GetMapping("/sign/month")
+    public Result signCountOfMonth(@RequestParam(value = "month", required = false) String month) {
+        return userService.signCountOfMonth(month);
+    }
 }
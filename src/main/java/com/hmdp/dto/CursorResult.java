@@ -0,0 +1,14 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CursorResult {
+    private List<?> list;
+    /**
+     * 下一页的游标，为空表示没有更多数据
+     */
+    private String nextCursor;
+}
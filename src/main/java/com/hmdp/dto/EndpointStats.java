@@ -0,0 +1,47 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class EndpointStats {
+    /**
+     * 请求方法与路径模板，如 GET /shop/{id}
+     */
+    private String endpoint;
+    /**
+     * 请求次数
+     */
+    private Long count;
+    /**
+     * 状态码5xx的次数
+     */
+    private Long errors;
+    /**
+     * 平均总耗时，毫秒
+     */
+    private Double avgMs;
+    /**
+     * 最大总耗时，毫秒
+     */
+    private Double maxMs;
+    /**
+     * 平均Redis耗时，毫秒
+     */
+    private Double avgRedisMs;
+    /**
+     * 平均每个请求的Redis调用次数
+     */
+    private Double avgRedisCalls;
+    /**
+     * 平均SQL耗时，毫秒
+     */
+    private Double avgSqlMs;
+    /**
+     * 平均每个请求的SQL次数
+     */
+    private Double avgSqlCalls;
+    /**
+     * 平均的其余耗时（处理逻辑、序列化），毫秒
+     */
+    private Double avgHandlerMs;
+}
@@ -0,0 +1,22 @@
+package com.hmdp.dto;
+
+import lombok.Value;
+
+/**
+ * 预先序列化好的JSON响应，不可变，可以被多个请求同时读取
+ */
+@Value
+public class JsonSnapshot {
+    /**
+     * 生成快照时的版本号
+     */
+    String version;
+    /**
+     * 响应体，UTF-8编码的JSON，调用方不能修改
+     */
+    byte[] body;
+    /**
+     * 响应体的摘要，带引号
+     */
+    String etag;
+}
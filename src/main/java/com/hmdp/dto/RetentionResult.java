@@ -0,0 +1,19 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class RetentionResult {
+    /**
+     * 同期群的人数
+     */
+    private Long cohortSize;
+    /**
+     * N天后仍然活跃的人数
+     */
+    private Long retained;
+    /**
+     * 留存率，同期群为空时为0
+     */
+    private Double rate;
+}
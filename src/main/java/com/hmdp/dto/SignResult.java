@@ -0,0 +1,19 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class SignResult {
+    /**
+     * 截止今天（今天未签到时截止昨天）的连续签到天数
+     */
+    private Integer streak;
+    /**
+     * 本月签到天数
+     */
+    private Integer monthCount;
+    /**
+     * 今天是否已签到
+     */
+    private Boolean signedToday;
+}
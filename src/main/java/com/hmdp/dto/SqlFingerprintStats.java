@@ -0,0 +1,35 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class SqlFingerprintStats {
+    /**
+     * 去掉字面量后的SQL
+     */
+    private String fingerprint;
+    /**
+     * 执行次数
+     */
+    private Long count;
+    /**
+     * 平均耗时，毫秒
+     */
+    private Double avgMs;
+    /**
+     * 耗时的50分位，按直方图估算，毫秒
+     */
+    private Double p50Ms;
+    /**
+     * 耗时的99分位，按直方图估算，毫秒
+     */
+    private Double p99Ms;
+    /**
+     * 最大耗时，毫秒
+     */
+    private Double maxMs;
+    /**
+     * 单个请求中执行次数超过阈值（疑似N+1）的请求数
+     */
+    private Long flaggedRequests;
+}
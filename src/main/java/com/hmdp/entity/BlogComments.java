@@ -1,6 +1,7 @@
 package com.hmdp.entity;
 
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
@@ -9,6 +10,7 @@ import lombok.experimental.Accessors;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 @EqualsAndHashCode(callSuper = false)
@@ -29,6 +31,24 @@ public class BlogComments implements Serializable {
      */
     private Long userId;
 
+    /**
+     * 用户图标
+     */
+    @TableField(exist = false)
+    private String icon;
+
+    /**
+     * 用户姓名
+     */
+    @TableField(exist = false)
+    private String name;
+
+    /**
+     * 前几条回复，只有一级评论有
+     */
+    @TableField(exist = false)
+    private List<BlogComments> replies;
+
     /**
      * 探店id
      */
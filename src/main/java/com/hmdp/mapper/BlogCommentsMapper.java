@@ -2,7 +2,11 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.BlogComments;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 public interface BlogCommentsMapper extends BaseMapper<BlogComments> {
 
+    List<BlogComments> queryReplyPreview(@Param("parentIds") List<Long> parentIds, @Param("limit") Integer limit);
 }
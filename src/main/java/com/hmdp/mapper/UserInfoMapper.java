@@ -2,7 +2,12 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.UserInfo;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 public interface UserInfoMapper extends BaseMapper<UserInfo> {
 
+    int incrementCount(@Param("column") String column, @Param("setSql") String setSql,
+                       @Param("userIds") List<Long> userIds, @Param("delta") Long delta);
 }
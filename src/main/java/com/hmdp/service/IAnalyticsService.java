@@ -0,0 +1,14 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.Result;
+
+import java.time.LocalDate;
+
+public interface IAnalyticsService {
+
+    Result queryDau(LocalDate date);
+
+    Result queryWau(LocalDate date);
+
+    Result queryRetention(LocalDate date, Integer days, String cohort);
+}
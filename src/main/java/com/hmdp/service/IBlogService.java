@@ -1,8 +1,28 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.time.LocalDate;
+
 public interface IBlogService extends IService<Blog> {
 
+    Result saveBlog(Blog blog);
+
+    Result queryBlogById(Long id);
+
+    Result queryBlogUv(Long id, LocalDate from, LocalDate to);
+
+    Result likeBlog(Long id);
+
+    Result queryBlogLikes(Long id);
+
+    Result queryHotBlog(Integer current);
+
+    Result queryBlogOfFollow(Long max, Integer offset);
+
+    Result queryMyBlogByCursor(String cursor);
+
+    boolean rebuildHotRank();
 }
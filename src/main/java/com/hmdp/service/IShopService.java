@@ -4,9 +4,25 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.time.LocalDate;
+
 public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    Result saveShop(Shop shop);
+
     Result update(Shop shop);
+
+    Result queryShopUv(Long id, LocalDate from, LocalDate to);
+
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    Result queryNearby(Double x, Double y, Integer typeId, Integer minScore, Long minPrice, Long maxPrice, Integer current);
+
+    Result queryShopByName(String name, Integer current);
+
+    Result queryShopByTypeCursor(Integer typeId, String cursor);
+
+    Result queryShopByNameCursor(String name, String cursor);
 }
@@ -1,11 +1,11 @@
 package com.hmdp.service;
 
-import com.hmdp.dto.Result;
+import com.hmdp.dto.JsonSnapshot;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
 
 public interface IShopTypeService extends IService<ShopType> {
 
-    Result queryTypeList();
+    JsonSnapshot queryTypeList();
 
 }
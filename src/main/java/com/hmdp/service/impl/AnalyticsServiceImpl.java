@@ -0,0 +1,173 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.RetentionResult;
+import com.hmdp.service.IAnalyticsService;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.DauTracker.DAY_FORMATTER;
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 基于每日活跃bitmap的统计
+ * <p>
+ * dau:{yyyyMMdd} 的第userId位表示该用户当天活跃，dau:new:{yyyyMMdd} 表示当天注册；
+ * 多天的并集、交集用BITOP OR/AND写入临时key再BITCOUNT，结果缓存后删除临时key
+ *
+ * @author RainSoul
+ */
+@Service
+public class AnalyticsServiceImpl implements IAnalyticsService {
+    /**
+     * 留存统计允许的最大间隔天数，不超过bitmap的保留天数
+     */
+    private static final int MAX_RETENTION_DAYS = 365;
+    private static final String COHORT_ACTIVE = "active";
+    private static final String COHORT_NEW = "new";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 查询某天的日活
+     *
+     * @param date 日期，为空时为今天
+     * @return 当天活跃的用户数
+     */
+    @Override
+    public Result queryDau(LocalDate date) {
+        LocalDate day = date == null ? LocalDate.now() : date;
+        if (day.isAfter(LocalDate.now())) {
+            return Result.fail("日期不能晚于今天");
+        }
+        // 1.查询缓存
+        String cacheKey = CACHE_ANALYTICS_KEY + "dau:" + day.format(DAY_FORMATTER);
+        String cached = stringRedisTemplate.opsForValue().get(cacheKey);
+        if (cached != null) {
+            return Result.ok(Long.valueOf(cached));
+        }
+        // 2.单个bitmap直接BITCOUNT
+        String key = DAU_KEY + day.format(DAY_FORMATTER);
+        Long count = stringRedisTemplate.execute((RedisCallback<Long>) connection ->
+                ((StringRedisConnection) connection).bitCount(key));
+        long dau = count == null ? 0 : count;
+        // 3.写入缓存
+        cache(cacheKey, String.valueOf(dau), day);
+        return Result.ok(dau);
+    }
+
+    /**
+     * 查询截止某天的周活，即最近7天（包含当天）的活跃用户并集
+     *
+     * @param date 截止日期，为空时为今天
+     * @return 7天内活跃过的用户数
+     */
+    @Override
+    public Result queryWau(LocalDate date) {
+        LocalDate day = date == null ? LocalDate.now() : date;
+        if (day.isAfter(LocalDate.now())) {
+            return Result.fail("日期不能晚于今天");
+        }
+        // 1.查询缓存
+        String cacheKey = CACHE_ANALYTICS_KEY + "wau:" + day.format(DAY_FORMATTER);
+        String cached = stringRedisTemplate.opsForValue().get(cacheKey);
+        if (cached != null) {
+            return Result.ok(Long.valueOf(cached));
+        }
+        // 2.7天的bitmap做OR后BITCOUNT
+        String[] keys = new String[7];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = DAU_KEY + day.minusDays(i).format(DAY_FORMATTER);
+        }
+        long wau = bitOpCount(RedisStringCommands.BitOperation.OR, keys);
+        // 3.写入缓存
+        cache(cacheKey, String.valueOf(wau), day);
+        return Result.ok(wau);
+    }
+
+    /**
+     * 查询某天同期群在N天后的留存
+     *
+     * @param date   同期群的日期
+     * @param days   间隔天数，默认1（次日留存）
+     * @param cohort 同期群：new为当天注册的用户，active（默认）为当天活跃的用户
+     * @return 同期群人数、留存人数、留存率
+     */
+    @Override
+    public Result queryRetention(LocalDate date, Integer days, String cohort) {
+        if (date == null) {
+            return Result.fail("日期不能为空");
+        }
+        int n = days == null ? 1 : days;
+        if (n < 1 || n > MAX_RETENTION_DAYS) {
+            return Result.fail("间隔天数需要在1到" + MAX_RETENTION_DAYS + "之间");
+        }
+        String type = StrUtil.isBlank(cohort) ? COHORT_ACTIVE : cohort;
+        if (!COHORT_ACTIVE.equals(type) && !COHORT_NEW.equals(type)) {
+            return Result.fail("同期群类型错误");
+        }
+        LocalDate target = date.plusDays(n);
+        if (target.isAfter(LocalDate.now())) {
+            return Result.fail("留存日期不能晚于今天");
+        }
+        // 1.查询缓存
+        String cacheKey = CACHE_ANALYTICS_KEY + "retention:" + type + ":" + date.format(DAY_FORMATTER) + ":" + n;
+        String cached = stringRedisTemplate.opsForValue().get(cacheKey);
+        if (cached != null) {
+            return Result.ok(JSONUtil.toBean(cached, RetentionResult.class));
+        }
+        // 2.同期群BITCOUNT，与N天后的日活做AND后BITCOUNT
+        String cohortKey = (COHORT_NEW.equals(type) ? DAU_NEW_KEY : DAU_KEY) + date.format(DAY_FORMATTER);
+        Long size = stringRedisTemplate.execute((RedisCallback<Long>) connection ->
+                ((StringRedisConnection) connection).bitCount(cohortKey));
+        long cohortSize = size == null ? 0 : size;
+        long retained = cohortSize == 0 ? 0 : bitOpCount(RedisStringCommands.BitOperation.AND,
+                cohortKey, DAU_KEY + target.format(DAY_FORMATTER));
+        RetentionResult r = new RetentionResult();
+        r.setCohortSize(cohortSize);
+        r.setRetained(retained);
+        r.setRate(cohortSize == 0 ? 0D : (double) retained / cohortSize);
+        // 3.写入缓存
+        cache(cacheKey, JSONUtil.toJsonStr(r), target);
+        return Result.ok(r);
+    }
+
+    /**
+     * BITOP写入临时key后BITCOUNT，完成后删除临时key
+     */
+    private long bitOpCount(RedisStringCommands.BitOperation op, String... keys) {
+        String tmpKey = ANALYTICS_TMP_KEY + UUID.randomUUID().toString(true);
+        try {
+            Long count = stringRedisTemplate.execute((RedisCallback<Long>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.bitOp(op, tmpKey, keys);
+                return conn.bitCount(tmpKey);
+            });
+            return count == null ? 0 : count;
+        } finally {
+            stringRedisTemplate.delete(tmpKey);
+        }
+    }
+
+    /**
+     * 统计范围包含今天时结果还会变化，缓存时间较短
+     */
+    private void cache(String key, String value, LocalDate lastDay) {
+        if (lastDay.isBefore(LocalDate.now())) {
+            stringRedisTemplate.opsForValue().set(key, value, CACHE_ANALYTICS_TTL, TimeUnit.MINUTES);
+        } else {
+            stringRedisTemplate.opsForValue().set(key, value, CACHE_ANALYTICS_TODAY_TTL, TimeUnit.MINUTES);
+        }
+    }
+}
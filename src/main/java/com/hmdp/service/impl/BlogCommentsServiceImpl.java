@@ -1,12 +1,257 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.CursorResult;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.BlogComments;
 import com.hmdp.mapper.BlogCommentsMapper;
 import com.hmdp.service.IBlogCommentsService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IBlogService;
+import com.hmdp.utils.CounterFlusher;
+import com.hmdp.utils.PageCursor;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UserProfileLoader;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
 @Service
 public class BlogCommentsServiceImpl extends ServiceImpl<BlogCommentsMapper, BlogComments> implements IBlogCommentsService {
 
+    /**
+     * 每条一级评论预览的回复数量
+     */
+    private static final int REPLY_PREVIEW_SIZE = 3;
+    private static final DefaultRedisScript<Long> COMMENTS_CACHE_SCRIPT;
+
+    static {
+        COMMENTS_CACHE_SCRIPT = new DefaultRedisScript<>();
+        COMMENTS_CACHE_SCRIPT.setLocation(new ClassPathResource("comments_cache.lua"));
+        COMMENTS_CACHE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private UserProfileLoader userProfileLoader;
+
+    @Resource
+    private CounterFlusher counterFlusher;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @PostConstruct
+    public void init() {
+        // 评论数增量定时批量回写tb_blog.comments
+        counterFlusher.register(BLOG_COMMENTS_DELTA_KEY, (delta, ids) ->
+                blogService.update().setSql(CounterFlusher.incrementSql("comments", delta)).in("id", ids).update());
+    }
+
+    /**
+     * 发表评论或回复
+     * 评论数只记增量由CounterFlusher批量回写，同时让博文详情缓存失效；一级评论直接插入缓存的第一页头部，回复则让第一页缓存失效
+     *
+     * @param comment 评论内容，parentId为0或为空表示一级评论
+     * @return 评论id
+     */
+    @Override
+    public Result saveComment(BlogComments comment) {
+        if (comment.getBlogId() == null || StrUtil.isBlank(comment.getContent())) {
+            return Result.fail("评论内容不能为空");
+        }
+        UserDTO user = UserHolder.getUser();
+        comment.setUserId(user.getId());
+        if (comment.getParentId() == null || comment.getParentId() == 0) {
+            comment.setParentId(0L);
+            comment.setAnswerId(0L);
+        } else {
+            // 回复必须挂在同一篇博文的一级评论下
+            BlogComments parent = getById(comment.getParentId());
+            if (parent == null || !Long.valueOf(0).equals(parent.getParentId())
+                    || !parent.getBlogId().equals(comment.getBlogId())) {
+                return Result.fail("评论不存在");
+            }
+            if (comment.getAnswerId() == null || comment.getAnswerId() == 0 || comment.getAnswerId().equals(parent.getId())) {
+                comment.setAnswerId(parent.getId());
+            } else {
+                // 回复的对象必须是同一篇博文、同一条一级评论下的回复
+                BlogComments answer = getById(comment.getAnswerId());
+                if (answer == null || !parent.getId().equals(answer.getParentId())
+                        || !parent.getBlogId().equals(answer.getBlogId())) {
+                    return Result.fail("回复的评论不存在");
+                }
+            }
+        }
+        comment.setLiked(0);
+        comment.setStatus(false);
+        comment.setCreateTime(LocalDateTime.now());
+        save(comment);
+
+        Long blogId = comment.getBlogId();
+        String cacheKey = CACHE_BLOG_COMMENTS_KEY + blogId;
+        String loadingKey = CACHE_BLOG_COMMENTS_LOADING_KEY + blogId;
+        stringRedisTemplate.opsForHash().increment(BLOG_COMMENTS_DELTA_KEY, blogId.toString(), 1);
+        if (comment.getParentId() == 0) {
+            // 缓存存在时才插入头部并裁剪到一页
+            comment.setName(user.getNickName());
+            comment.setIcon(user.getIcon());
+            comment.setReplies(Collections.emptyList());
+            String json = JSONUtil.toJsonStr(comment);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.lPushX(cacheKey, json);
+                // 缓存一页加一条，多出的一条用于判断是否还有下一页
+                conn.lTrim(cacheKey, 0, SystemConstants.MAX_PAGE_SIZE);
+                // 正在加载的第一页可能不包含这条评论，让其放弃写入
+                conn.del(loadingKey, CACHE_BLOG_KEY + blogId);
+                return null;
+            });
+        } else {
+            stringRedisTemplate.delete(Arrays.asList(cacheKey, loadingKey, CACHE_BLOG_KEY + blogId));
+        }
+        return Result.ok(comment.getId());
+    }
+
+    /**
+     * 游标分页查询博文的一级评论，按id倒序，每条附带前几条回复
+     * 第一页缓存在Redis的LIST中，多缓存一条用于判断是否还有下一页，热门博文的第一页基本不访问数据库
+     *
+     * @param blogId 博文id
+     * @param cursor 上一页返回的游标，第一页为空
+     * @return 评论列表和下一页游标
+     */
+    @Override
+    public Result queryComments(Long blogId, String cursor) {
+        long[] keys;
+        try {
+            keys = PageCursor.decode(cursor, 1);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        String cacheKey = CACHE_BLOG_COMMENTS_KEY + blogId;
+        // 1.第一页先查缓存
+        if (keys == null) {
+            List<String> cached = stringRedisTemplate.opsForList().range(cacheKey, 0, -1);
+            if (cached != null && !cached.isEmpty()) {
+                List<BlogComments> comments = cached.stream()
+                        .filter(StrUtil::isNotBlank)
+                        .map(json -> JSONUtil.toBean(json, BlogComments.class))
+                        .collect(Collectors.toList());
+                boolean hasMore = comments.size() > size;
+                return Result.ok(toCursorResult(hasMore ? comments.subList(0, size) : comments, hasMore));
+            }
+        }
+        // 2.查询一级评论，多查一条判断是否还有下一页；第一页查询前写入加载标记
+        String loadingKey = CACHE_BLOG_COMMENTS_LOADING_KEY + blogId;
+        String token = null;
+        if (keys == null) {
+            token = UUID.randomUUID().toString(true);
+            stringRedisTemplate.opsForValue().set(loadingKey, token, CACHE_BLOG_COMMENTS_LOADING_TTL, TimeUnit.SECONDS);
+        }
+        List<BlogComments> comments = query()
+                .eq("blog_id", blogId)
+                .eq("parent_id", 0)
+                .and(w -> w.isNull("status").or().lt("status", 2))
+                .lt(keys != null, "id", keys == null ? null : keys[0])
+                .orderByDesc("id")
+                .last("LIMIT " + (size + 1))
+                .list();
+        // 3.一次查询所有评论的回复预览，一次批量加载所有用户；第一页多查的一条同样填充，一起写入缓存
+        fillReplies(comments);
+        List<BlogComments> all = new ArrayList<>(comments);
+        comments.forEach(c -> all.addAll(c.getReplies()));
+        fillUsers(all);
+        // 4.写入第一页缓存，没有评论时写入空值占位；写入、设置有效期在一个脚本中完成
+        if (keys == null) {
+            List<String> args = new ArrayList<>(comments.size() + 3);
+            args.add(token);
+            args.add(String.valueOf(TimeUnit.MINUTES.toSeconds(CACHE_BLOG_COMMENTS_TTL)));
+            comments.forEach(c -> args.add(JSONUtil.toJsonStr(c)));
+            if (comments.isEmpty()) {
+                args.add("");
+            }
+            stringRedisTemplate.execute(COMMENTS_CACHE_SCRIPT, Arrays.asList(cacheKey, loadingKey), args.toArray());
+        }
+        boolean hasMore = comments.size() > size;
+        return Result.ok(toCursorResult(hasMore ? comments.subList(0, size) : comments, hasMore));
+    }
+
+    /**
+     * 游标分页查询一级评论下的回复，按id正序
+     *
+     * @param parentId 一级评论id
+     * @param cursor   上一页返回的游标，第一页为空
+     * @return 回复列表和下一页游标
+     */
+    @Override
+    public Result queryReplies(Long parentId, String cursor) {
+        long[] keys;
+        try {
+            keys = PageCursor.decode(cursor, 1);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        List<BlogComments> replies = query()
+                .eq("parent_id", parentId)
+                .and(w -> w.isNull("status").or().lt("status", 2))
+                .gt(keys != null, "id", keys == null ? null : keys[0])
+                .orderByAsc("id")
+                .last("LIMIT " + (size + 1))
+                .list();
+        boolean hasMore = replies.size() > size;
+        if (hasMore) {
+            replies = new ArrayList<>(replies.subList(0, size));
+        }
+        fillUsers(replies);
+        return Result.ok(toCursorResult(replies, hasMore));
+    }
+
+    private void fillReplies(List<BlogComments> comments) {
+        if (comments.isEmpty()) {
+            return;
+        }
+        List<Long> parentIds = comments.stream().map(BlogComments::getId).collect(Collectors.toList());
+        Map<Long, List<BlogComments>> repliesByParent = getBaseMapper()
+                .queryReplyPreview(parentIds, REPLY_PREVIEW_SIZE)
+                .stream()
+                .collect(Collectors.groupingBy(BlogComments::getParentId));
+        comments.forEach(c -> c.setReplies(repliesByParent.getOrDefault(c.getId(), Collections.emptyList())));
+    }
+
+    private void fillUsers(List<BlogComments> comments) {
+        userProfileLoader.fill(comments, BlogComments::getUserId, (comment, user) -> {
+            comment.setName(user.getNickName());
+            comment.setIcon(user.getIcon());
+        });
+    }
+
+    private CursorResult toCursorResult(List<BlogComments> comments, boolean hasMore) {
+        CursorResult r = new CursorResult();
+        r.setList(comments);
+        if (hasMore && !comments.isEmpty()) {
+            r.setNextCursor(PageCursor.encode(comments.get(comments.size() - 1).getId()));
+        }
+        return r;
+    }
 }
@@ -1,12 +1,543 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.CursorResult;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CounterFlusher;
+import com.hmdp.utils.FeedEngine;
+import com.hmdp.utils.PageCursor;
+import com.hmdp.utils.ReadOnly;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UserProfileLoader;
+import com.hmdp.utils.UvTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    /**
+     * 时间衰减的起始时间戳，与RedisIdWorker保持一致，避免分数过大
+     */
+    private static final long BEGIN_TIMESTAMP = 1640995200L;
+    /**
+     * 重建热榜时每批读取的博文数量
+     */
+    private static final int HOT_REBUILD_BATCH_SIZE = 1000;
+
+    /**
+     * 点赞列表展示的用户数量
+     */
+    private static final int BLOG_LIKES_TOP_N = 5;
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+    private static final DefaultRedisScript<Long> HOT_REBUILD_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+        HOT_REBUILD_SCRIPT = new DefaultRedisScript<>();
+        HOT_REBUILD_SCRIPT.setLocation(new ClassPathResource("hot_rebuild.lua"));
+        HOT_REBUILD_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private UserProfileLoader userProfileLoader;
+
+    @Resource
+    private FeedEngine feedEngine;
+
+    @Resource
+    private CounterFlusher counterFlusher;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private UvTracker uvTracker;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 重建热榜的后台线程，重建要全表扫描tb_blog，不能在请求线程中执行
+     */
+    private final ThreadPoolExecutor hotRankExecutor = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), r -> {
+        Thread thread = new Thread(r, "blog-hot-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * 本实例是否已经提交了重建任务，热榜缺失时并发的请求只提交一次
+     */
+    private final AtomicBoolean hotRankScheduled = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        // 点赞数增量定时批量回写tb_blog.liked
+        counterFlusher.register(BLOG_LIKE_DELTA_KEY, (delta, ids) ->
+                update().setSql(CounterFlusher.incrementSql("liked", delta)).in("id", ids).update());
+        // 启动时热榜不存在则在后台重建
+        submitHotRankRebuild(true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        hotRankExecutor.shutdownNow();
+    }
+
+    @Override
+    public Result saveBlog(Blog blog) {
+        // 获取登录用户
+        UserDTO user = UserHolder.getUser();
+        blog.setUserId(user.getId());
+        // 保存探店博文
+        save(blog);
+        // 加入热榜，新博文点赞数为0，只有时间分；热榜不存在时等待重建
+        if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+            stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, blog.getId().toString(), hotScore(0, LocalDateTime.now()));
+        }
+        // 异步推送到关注流
+        feedEngine.publish(user.getId(), blog.getId(), System.currentTimeMillis());
+        // 返回id
+        return Result.ok(blog.getId());
+    }
+
+    /**
+     * 查询博文详情
+     * 博文和作者信息是不随查看者变化的部分，通过CacheClient缓存；点赞数用ZCARD、当前用户是否点赞用ZSCORE单独叠加，
+     * 缓存中的点赞数不会落后于点赞状态。评论数在发表评论时让缓存失效。
+     * 缓存读取、ZCARD和ZSCORE在一次管道中完成，缓存命中时详情页只需要一次Redis往返
+     *
+     * @param id 博文id
+     * @return 博文详情
+     */
+    @Override
+    @ReadOnly
+    public Result queryBlogById(Long id) {
+        UserDTO user = UserHolder.getUser();
+        // 1.一次管道同时读取缓存、点赞数和点赞状态
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.get(CACHE_BLOG_KEY + id);
+            conn.zCard(BLOG_LIKED_KEY + id);
+            if (user != null) {
+                conn.zScore(BLOG_LIKED_KEY + id, user.getId().toString());
+            }
+            return null;
+        });
+        String json = (String) results.get(0);
+        Blog blog;
+        if (StrUtil.isNotBlank(json)) {
+            blog = JSONUtil.toBean(json, Blog.class);
+        } else if (json != null) {
+            // 缓存的空值，博文不存在
+            return Result.fail("博文不存在！");
+        } else {
+            // 2.缓存未命中，查询博文和作者并写入缓存
+            blog = cacheClient.queryWithPassThrough(CACHE_BLOG_KEY, id, Blog.class,
+                    this::queryBlogWithUser, CACHE_BLOG_TTL, TimeUnit.MINUTES);
+            if (blog == null) {
+                return Result.fail("博文不存在！");
+            }
+        }
+        // 3.叠加实时的点赞数和当前用户的点赞状态
+        blog.setLiked(((Long) results.get(1)).intValue());
+        blog.setIsLike(user != null && results.get(2) != null);
+        // 4.记录独立访客
+        uvTracker.record(UvTracker.BLOG, id);
+        return Result.ok(blog);
+    }
+
+    /**
+     * 查询博文在日期范围内的独立访客数
+     *
+     * @param id   博文id
+     * @param from 开始日期，为空时为6天前
+     * @param to   结束日期，为空时为今天
+     * @return 近似UV
+     */
+    @Override
+    public Result queryBlogUv(Long id, LocalDate from, LocalDate to) {
+        LocalDate end = to == null ? LocalDate.now() : to;
+        LocalDate start = from == null ? end.minusDays(6) : from;
+        try {
+            return Result.ok(uvTracker.count(UvTracker.BLOG, id, start, end));
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
+        }
+    }
+
+    private Blog queryBlogWithUser(Long id) {
+        Blog blog = getById(id);
+        if (blog == null) {
+            return null;
+        }
+        // 评论数加上尚未回写的增量，包括正在回写的快照
+        String field = id.toString();
+        List<Object> pending = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hGet(BLOG_COMMENTS_DELTA_KEY, field);
+            conn.hGet(BLOG_COMMENTS_DELTA_KEY + ":flushing", field);
+            return null;
+        });
+        long comments = blog.getComments() == null ? 0 : blog.getComments();
+        for (Object delta : pending) {
+            comments += delta == null ? 0 : Long.parseLong(delta.toString());
+        }
+        blog.setComments((int) Math.max(comments, 0));
+        fillBlogUsers(Collections.singletonList(blog));
+        return blog;
+    }
+
+    /**
+     * 点赞或取消点赞
+     * 通过Lua脚本原子地切换blog:liked:{id}中的点赞记录，并把点赞数增量记入HASH，
+     * 由CounterFlusher定时批量回写tb_blog.liked，避免热门博文在数据库中形成热点行
+     *
+     * @param id 博文id
+     * @return 操作结果
+     */
+    @Override
+    public Result likeBlog(Long id) {
+        // 通过博文缓存确认博文存在，避免为不存在的id生成点赞记录、增量和热榜成员
+        Blog blog = cacheClient.queryWithPassThrough(CACHE_BLOG_KEY, id, Blog.class,
+                this::queryBlogWithUser, CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        if (blog == null) {
+            return Result.fail("博文不存在！");
+        }
+        Long userId = UserHolder.getUser().getId();
+        stringRedisTemplate.execute(LIKE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + id, BLOG_LIKE_DELTA_KEY, BLOG_HOT_KEY, BLOG_HOT_REBUILDING_KEY),
+                id.toString(), userId.toString(), String.valueOf(System.currentTimeMillis())
+        );
+        return Result.ok();
+    }
+
+    /**
+     * 查询最早点赞的前几位用户
+     *
+     * @param id 博文id
+     * @return 点赞用户列表，按点赞时间排序
+     */
+    @Override
+    public Result queryBlogLikes(Long id) {
+        Set<String> top = stringRedisTemplate.opsForZSet().range(BLOG_LIKED_KEY + id, 0, BLOG_LIKES_TOP_N - 1);
+        if (CollUtil.isEmpty(top)) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = top.stream().map(Long::valueOf).collect(Collectors.toList());
+        Map<Long, UserDTO> users = userProfileLoader.loadAll(ids);
+        List<UserDTO> userDTOS = ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return Result.ok(userDTOS);
+    }
+
+    /**
+     * 分页查询热门博文
+     * 从Redis热榜ZSET中按分数倒序取出当前页的博文id，再批量查询博文，
+     * 避免对tb_blog执行 ORDER BY liked LIMIT offset 的深分页扫描。
+     * 热榜不存在时提交后台重建，重建完成前按点赞数分页查询数据库
+     *
+     * @param current 页码
+     * @return 当前页的博文列表
+     */
+    @Override
+    @ReadOnly
+    public Result queryHotBlog(Integer current) {
+        if (current == null || current < 1) {
+            return Result.fail("无效的页码");
+        }
+        List<Blog> records;
+        if (BooleanUtil.isFalse(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+            submitHotRankRebuild(true);
+            records = query()
+                    .orderByDesc("liked")
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false))
+                    .getRecords();
+        } else {
+            records = queryHotBlogFromRank(current);
+        }
+        // 批量查询用户
+        fillBlogUsers(records);
+        // 查询当前用户是否点赞
+        fillBlogLiked(records);
+        return Result.ok(records);
+    }
+
+    private List<Blog> queryHotBlogFromRank(int current) {
+        // 计算分页范围
+        long start = (long) (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        long end = start + SystemConstants.MAX_PAGE_SIZE - 1;
+        Set<String> idSet = stringRedisTemplate.opsForZSet().reverseRange(BLOG_HOT_KEY, start, end);
+        if (CollUtil.isEmpty(idSet)) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = idSet.stream().map(Long::valueOf).collect(Collectors.toList());
+        // 批量查询博文，并按热榜顺序排列
+        Map<Long, Blog> blogMap = listByIds(ids).stream()
+                .collect(Collectors.toMap(Blog::getId, Function.identity()));
+        List<Blog> records = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Blog blog = blogMap.get(id);
+            // 热榜中残留的已删除博文直接跳过
+            if (blog != null) {
+                records.add(blog);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 滚动分页查询关注的人发布的博文
+     *
+     * @param max    上一页的最小时间戳
+     * @param offset 需要跳过的与max相同时间戳的博文数量
+     * @return 滚动分页结果
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Result queryBlogOfFollow(Long max, Integer offset) {
+        Long userId = UserHolder.getUser().getId();
+        // 1.从关注流读取博文id
+        ScrollResult r = feedEngine.read(userId, max, offset, SystemConstants.MAX_PAGE_SIZE);
+        List<Long> ids = (List<Long>) r.getList();
+        if (ids.isEmpty()) {
+            return Result.ok(r);
+        }
+        // 2.批量查询博文，按关注流顺序排列
+        Map<Long, Blog> blogMap = listByIds(ids).stream()
+                .collect(Collectors.toMap(Blog::getId, Function.identity()));
+        List<Blog> blogs = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Blog blog = blogMap.get(id);
+            if (blog != null) {
+                blogs.add(blog);
+            }
+        }
+        fillBlogUsers(blogs);
+        fillBlogLiked(blogs);
+        // 3.替换为博文并返回
+        r.setList(blogs);
+        return Result.ok(r);
+    }
+
+    /**
+     * 游标分页查询当前用户的博文，按id倒序
+     * 用 id < 上一页最后一条的id 代替OFFSET，并且不执行COUNT查询
+     *
+     * @param cursor 上一页返回的游标，第一页为空
+     * @return 博文列表和下一页游标
+     */
+    @Override
+    public Result queryMyBlogByCursor(String cursor) {
+        long[] keys;
+        try {
+            keys = PageCursor.decode(cursor, 1);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        Long userId = UserHolder.getUser().getId();
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        // 多查一条用于判断是否还有下一页
+        List<Blog> blogs = query()
+                .eq("user_id", userId)
+                .lt(keys != null, "id", keys == null ? null : keys[0])
+                .orderByDesc("id")
+                .last("LIMIT " + (size + 1))
+                .list();
+        CursorResult r = new CursorResult();
+        if (blogs.size() > size) {
+            blogs = blogs.subList(0, size);
+            r.setNextCursor(PageCursor.encode(blogs.get(size - 1).getId()));
+        }
+        r.setList(blogs);
+        return Result.ok(r);
+    }
+
+    /**
+     * 在后台从数据库重建热榜
+     *
+     * @return false表示已有重建正在排队或进行
+     */
+    @Override
+    public boolean rebuildHotRank() {
+        if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(LOCK_BLOG_HOT_KEY))) {
+            return false;
+        }
+        return submitHotRankRebuild(false);
+    }
+
+    /**
+     * 提交后台重建任务，本实例同一时间只有一个任务排队或执行
+     *
+     * @param onlyIfMissing 为true时热榜已经存在则不重建
+     * @return false表示已有任务，或线程池已经关闭
+     */
+    private boolean submitHotRankRebuild(boolean onlyIfMissing) {
+        if (!hotRankScheduled.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            hotRankExecutor.execute(() -> {
+                try {
+                    if (!onlyIfMissing || BooleanUtil.isFalse(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+                        rebuildHotRankWithLock();
+                    }
+                } catch (Exception e) {
+                    log.error("重建热门博文排行失败", e);
+                } finally {
+                    hotRankScheduled.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            hotRankScheduled.set(false);
+            log.warn("热榜重建线程已关闭，放弃重建");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 从数据库重建热榜，多个实例之间同一时间只允许一次重建
+     * 每次重建使用独立的临时key，按id分批读取博文，由Lua脚本按点赞ZSET的ZCARD计算分数，全部写完后再RENAME覆盖正式key；
+     * 重建期间的点赞通过重建标记同步到临时key，重建过程中热榜始终可读
+     */
+    private void rebuildHotRankWithLock() {
+        // 其他实例正在重建时直接放弃
+        Boolean isLock = stringRedisTemplate.opsForValue()
+                .setIfAbsent(LOCK_BLOG_HOT_KEY, "1", LOCK_BLOG_HOT_TTL, TimeUnit.SECONDS);
+        if (!BooleanUtil.isTrue(isLock)) {
+            return;
+        }
+        try {
+            doRebuildHotRank();
+        } finally {
+            stringRedisTemplate.delete(LOCK_BLOG_HOT_KEY);
+        }
+    }
+
+    private void doRebuildHotRank() {
+        String tmpKey = BLOG_HOT_KEY + ":tmp:" + UUID.randomUUID().toString(true);
+        stringRedisTemplate.opsForValue().set(BLOG_HOT_REBUILDING_KEY, tmpKey, BLOG_HOT_REBUILD_TTL, TimeUnit.MINUTES);
+        long lastId = 0;
+        boolean hasData = false;
+        try {
+            while (true) {
+                List<Blog> blogs = query()
+                        .select("id", "create_time")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + HOT_REBUILD_BATCH_SIZE)
+                        .list();
+                if (blogs.isEmpty()) {
+                    break;
+                }
+                List<String> keys = new ArrayList<>(blogs.size() + 1);
+                List<String> args = new ArrayList<>(blogs.size() * 2);
+                keys.add(tmpKey);
+                for (Blog blog : blogs) {
+                    keys.add(BLOG_LIKED_KEY + blog.getId());
+                    args.add(blog.getId().toString());
+                    args.add(String.valueOf(hotScore(0, blog.getCreateTime())));
+                }
+                stringRedisTemplate.execute(HOT_REBUILD_SCRIPT, keys, args.toArray());
+                if (!hasData) {
+                    // 重建中途退出时临时key自动过期
+                    stringRedisTemplate.expire(tmpKey, BLOG_HOT_REBUILD_TTL, TimeUnit.MINUTES);
+                    hasData = true;
+                }
+                // 博文很多时重建时间可能超过锁的有效期，每批续期
+                stringRedisTemplate.expire(LOCK_BLOG_HOT_KEY, LOCK_BLOG_HOT_TTL, TimeUnit.SECONDS);
+                lastId = blogs.get(blogs.size() - 1).getId();
+            }
+            if (hasData) {
+                // RENAME会带上临时key的有效期，先去掉
+                stringRedisTemplate.persist(tmpKey);
+                stringRedisTemplate.rename(tmpKey, BLOG_HOT_KEY);
+            }
+        } finally {
+            stringRedisTemplate.delete(BLOG_HOT_REBUILDING_KEY);
+        }
+        log.debug("热门博文排行重建完成，最大id：{}", lastId);
+    }
+
+    private void fillBlogLiked(List<Blog> blogs) {
+        UserDTO user = UserHolder.getUser();
+        if (user == null || blogs.isEmpty()) {
+            return;
+        }
+        String userId = user.getId().toString();
+        // 一次管道批量查询ZSCORE
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                conn.zScore(BLOG_LIKED_KEY + blog.getId(), userId);
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
+    }
+
+    private void fillBlogUsers(List<Blog> blogs) {
+        userProfileLoader.fill(blogs, Blog::getUserId, (blog, user) -> {
+            blog.setName(user.getNickName());
+            blog.setIcon(user.getIcon());
+        });
+    }
+
+    /**
+     * 计算热榜分数：点赞数 + 发布时间分
+     * 两部分都是线性的，所以点赞/取消点赞时可以直接对分数做ZINCRBY
+     */
+    private double hotScore(int liked, LocalDateTime createTime) {
+        if (BLOG_HOT_DECAY_SECONDS <= 0 || createTime == null) {
+            return liked;
+        }
+        long seconds = createTime.toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+        return liked + (double) seconds / BLOG_HOT_DECAY_SECONDS;
+    }
 }
@@ -1,12 +1,291 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.BooleanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Follow;
+import com.hmdp.entity.UserInfo;
 import com.hmdp.mapper.FollowMapper;
+import com.hmdp.mapper.UserInfoMapper;
 import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CounterFlusher;
+import com.hmdp.utils.FollowGraphIndex;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UserProfileLoader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
 @Service
 public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> implements IFollowService {
 
+    private static final String FANS = "fans";
+    private static final String FOLLOWEE = "followee";
+
+    /**
+     * 关注集合加载时与关注/取关发生冲突的重试次数
+     */
+    private static final int LOAD_FOLLOWS_RETRIES = 3;
+
+    private static final DefaultRedisScript<Long> FOLLOW_SCRIPT;
+    private static final DefaultRedisScript<List> FOLLOW_COUNT_SCRIPT;
+    private static final DefaultRedisScript<Long> FOLLOWS_LOAD_SCRIPT;
+
+    static {
+        FOLLOW_SCRIPT = new DefaultRedisScript<>();
+        FOLLOW_SCRIPT.setLocation(new ClassPathResource("follow.lua"));
+        FOLLOW_SCRIPT.setResultType(Long.class);
+        FOLLOW_COUNT_SCRIPT = new DefaultRedisScript<>();
+        FOLLOW_COUNT_SCRIPT.setLocation(new ClassPathResource("follow_count.lua"));
+        FOLLOW_COUNT_SCRIPT.setResultType(List.class);
+        FOLLOWS_LOAD_SCRIPT = new DefaultRedisScript<>();
+        FOLLOWS_LOAD_SCRIPT.setLocation(new ClassPathResource("follows_load.lua"));
+        FOLLOWS_LOAD_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private UserInfoMapper userInfoMapper;
+
+    @Resource
+    private UserProfileLoader userProfileLoader;
+
+    @Resource
+    private CounterFlusher counterFlusher;
+
+    /**
+     * 未开启hmdp.follow-graph.enabled时为null
+     */
+    @Autowired(required = false)
+    private FollowGraphIndex followGraphIndex;
+
+    @PostConstruct
+    public void init() {
+        // 粉丝数、关注数增量定时批量回写tb_user_info
+        counterFlusher.register(FOLLOW_FANS_DELTA_KEY, (delta, ids) ->
+                userInfoMapper.incrementCount(FANS, CounterFlusher.incrementSql(FANS, delta), ids, delta));
+        counterFlusher.register(FOLLOW_FOLLOWEE_DELTA_KEY, (delta, ids) ->
+                userInfoMapper.incrementCount(FOLLOWEE, CounterFlusher.incrementSql(FOLLOWEE, delta), ids, delta));
+    }
+
+    /**
+     * 关注或取关
+     * 数据库写入成功后，用Lua脚本原子地同步Redis中的关注集合和计数，并记录计数增量
+     *
+     * @param followUserId 被关注的用户id
+     * @param isFollow     true关注，false取关
+     * @return 操作结果
+     */
+    @Override
+    public Result follow(Long followUserId, Boolean isFollow) {
+        Long userId = UserHolder.getUser().getId();
+        if (userId.equals(followUserId)) {
+            return Result.fail("不能关注自己");
+        }
+        boolean changed;
+        if (BooleanUtil.isTrue(isFollow)) {
+            // 通过用户资料缓存确认目标用户存在，不存在的id同样有缓存
+            if (userProfileLoader.loadAll(Collections.singletonList(followUserId)).isEmpty()) {
+                return Result.fail("用户不存在");
+            }
+            Follow follow = new Follow();
+            follow.setUserId(userId);
+            follow.setFollowUserId(followUserId);
+            try {
+                changed = save(follow);
+            } catch (DuplicateKeyException e) {
+                // 已经关注过了
+                changed = false;
+            }
+        } else {
+            changed = remove(new QueryWrapper<Follow>()
+                    .eq("user_id", userId)
+                    .eq("follow_user_id", followUserId));
+        }
+        if (changed) {
+            stringRedisTemplate.execute(FOLLOW_SCRIPT,
+                    Arrays.asList(FOLLOWS_KEY + userId, FOLLOW_COUNT_KEY + userId, FOLLOW_COUNT_KEY + followUserId,
+                            FOLLOW_FOLLOWEE_DELTA_KEY, FOLLOW_FANS_DELTA_KEY, FOLLOWS_LOADING_KEY + userId),
+                    userId.toString(), followUserId.toString(), BooleanUtil.isTrue(isFollow) ? "1" : "-1"
+            );
+            if (followGraphIndex != null) {
+                if (BooleanUtil.isTrue(isFollow)) {
+                    followGraphIndex.onFollow(userId, followUserId);
+                } else {
+                    followGraphIndex.onUnfollow(userId, followUserId);
+                }
+            }
+        }
+        return Result.ok();
+    }
+
+    @Override
+    public Result isFollow(Long followUserId) {
+        Long userId = UserHolder.getUser().getId();
+        String key = loadFollows(userId);
+        if (key == null) {
+            // 关注集合加载失败，直接查询数据库
+            Integer count = query().eq("user_id", userId).eq("follow_user_id", followUserId).count();
+            return Result.ok(count != null && count > 0);
+        }
+        Boolean isMember = stringRedisTemplate.opsForSet().isMember(key, followUserId.toString());
+        return Result.ok(BooleanUtil.isTrue(isMember));
+    }
+
+    /**
+     * 查询当前用户与目标用户的共同关注，两个关注集合做一次SINTER，开启关注关系索引时在内存中求交集
+     *
+     * @param id 目标用户id
+     * @return 共同关注的用户列表
+     */
+    @Override
+    public Result followCommons(Long id) {
+        Long userId = UserHolder.getUser().getId();
+        if (followGraphIndex != null && followGraphIndex.isReady()) {
+            // 开启关注关系索引时直接在内存中求交集
+            long[] common = followGraphIndex.intersectFollowees(userId, id, Integer.MAX_VALUE);
+            List<Long> ids = new ArrayList<>(common.length);
+            for (long followId : common) {
+                ids.add(followId);
+            }
+            Map<Long, UserDTO> users = userProfileLoader.loadAll(ids);
+            return Result.ok(ids.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList()));
+        }
+        String key1 = loadFollows(userId);
+        String key2 = loadFollows(id);
+        Set<String> intersect;
+        if (key1 == null || key2 == null) {
+            // 关注集合加载失败，用数据库中的关注列表求交集
+            intersect = queryFolloweeIds(userId);
+            intersect.retainAll(queryFolloweeIds(id));
+        } else {
+            intersect = stringRedisTemplate.opsForSet().intersect(key1, key2);
+        }
+        if (CollUtil.isEmpty(intersect)) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = intersect.stream()
+                .filter(member -> !FOLLOWS_PLACEHOLDER.equals(member))
+                .map(Long::valueOf)
+                .collect(Collectors.toList());
+        Map<Long, UserDTO> users = userProfileLoader.loadAll(ids);
+        return Result.ok(ids.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList()));
+    }
+
+    /**
+     * 可能认识的人：当前用户关注的人所关注的人，按共同关注数排序
+     * 需要开启关注关系索引，未开启或尚未加载完成时返回空列表
+     *
+     * @return 推荐的用户列表
+     */
+    @Override
+    public Result queryRecommend() {
+        if (followGraphIndex == null || !followGraphIndex.isReady()) {
+            return Result.ok(Collections.emptyList());
+        }
+        Long userId = UserHolder.getUser().getId();
+        long[] candidates = followGraphIndex.recommend(userId, SystemConstants.DEFAULT_PAGE_SIZE);
+        List<Long> ids = new ArrayList<>(candidates.length);
+        for (long id : candidates) {
+            ids.add(id);
+        }
+        Map<Long, UserDTO> users = userProfileLoader.loadAll(ids);
+        return Result.ok(ids.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList()));
+    }
+
+    /**
+     * 查询用户的粉丝数和关注数
+     * 计数保存在Redis的HASH中，不存在时用tb_user_info加上尚未回写的增量初始化，不会对tb_follow执行COUNT。
+     * 增量在Lua脚本中读取并与HSETNX一起执行，期间的关注/取关要么已计入增量，要么在初始化之后HINCRBY；
+     * 读取数据库前后比较回写版本号，与批量回写重叠时只返回结果不写缓存
+     *
+     * @param userId 用户id
+     * @return fans、followee两个计数
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Integer> queryFollowCount(Long userId) {
+        String key = FOLLOW_COUNT_KEY + userId;
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(key, Arrays.asList(FANS, FOLLOWEE));
+        if (values.get(0) == null || values.get(1) == null) {
+            String fansVersionKey = CounterFlusher.versionKey(FOLLOW_FANS_DELTA_KEY);
+            String followeeVersionKey = CounterFlusher.versionKey(FOLLOW_FOLLOWEE_DELTA_KEY);
+            List<String> versions = stringRedisTemplate.opsForValue().multiGet(Arrays.asList(fansVersionKey, followeeVersionKey));
+            UserInfo info = userInfoMapper.selectById(userId);
+            long fans = info == null || info.getFans() == null ? 0 : info.getFans();
+            long followee = info == null || info.getFollowee() == null ? 0 : info.getFollowee();
+            values = stringRedisTemplate.execute(FOLLOW_COUNT_SCRIPT,
+                    Arrays.asList(key, FOLLOW_FANS_DELTA_KEY, FOLLOW_FANS_DELTA_KEY + ":flushing",
+                            FOLLOW_FOLLOWEE_DELTA_KEY, FOLLOW_FOLLOWEE_DELTA_KEY + ":flushing",
+                            fansVersionKey, followeeVersionKey),
+                    userId.toString(), String.valueOf(fans), String.valueOf(followee),
+                    versionOf(versions.get(0)), versionOf(versions.get(1)),
+                    String.valueOf(TimeUnit.MINUTES.toSeconds(FOLLOW_COUNT_TTL)));
+        }
+        Map<String, Integer> counts = new HashMap<>(4);
+        counts.put(FANS, Integer.valueOf(values.get(0).toString()));
+        counts.put(FOLLOWEE, Integer.valueOf(values.get(1).toString()));
+        return counts;
+    }
+
+    /**
+     * 确保用户的关注集合已加载到Redis
+     * 读取数据库前写入加载标记，关注/取关会删除它；写入集合时标记已不在说明数据库结果可能过时，重新读取
+     *
+     * @param userId 用户id
+     * @return 关注集合的key，集合中包含占位成员FOLLOWS_PLACEHOLDER；连续冲突未能加载时返回null，调用方改为查询数据库
+     */
+    private String loadFollows(Long userId) {
+        String key = FOLLOWS_KEY + userId;
+        if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(key))) {
+            return key;
+        }
+        String loadingKey = FOLLOWS_LOADING_KEY + userId;
+        for (int i = 0; i < LOAD_FOLLOWS_RETRIES; i++) {
+            String token = UUID.randomUUID().toString(true);
+            stringRedisTemplate.opsForValue().set(loadingKey, token, FOLLOWS_LOADING_TTL, TimeUnit.SECONDS);
+            List<String> args = new ArrayList<>();
+            args.add(token);
+            args.add(String.valueOf(TimeUnit.MINUTES.toSeconds(FOLLOWS_TTL)));
+            args.add(FOLLOWS_PLACEHOLDER);
+            args.addAll(queryFolloweeIds(userId));
+            Long loaded = stringRedisTemplate.execute(FOLLOWS_LOAD_SCRIPT, Arrays.asList(key, loadingKey), args.toArray());
+            if (loaded != null && loaded == 1) {
+                return key;
+            }
+        }
+        // 连续冲突时不写缓存，集合不存在，不能按空集合处理
+        return null;
+    }
+
+    private Set<String> queryFolloweeIds(Long userId) {
+        return query().select("follow_user_id")
+                .eq("user_id", userId)
+                .list()
+                .stream()
+                .map(follow -> follow.getFollowUserId().toString())
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private static String versionOf(String version) {
+        return version == null ? "0" : version;
+    }
 }
@@ -2,36 +2,79 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.CacheClient;
-import com.hmdp.utils.RedisData;
+import com.hmdp.utils.DataSourceRouting;
+import com.hmdp.utils.PageCursor;
+import com.hmdp.utils.ReadOnly;
+import com.hmdp.utils.ShopGrid;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.ShopSearchIndex;
+import com.hmdp.utils.ShopSpatialIndex;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UvTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.LocalDate;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
+    /**
+     * 构建GEO索引时每批查询的店铺数量
+     */
+    private static final int GEO_LOAD_BATCH_SIZE = 1000;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private UvTracker uvTracker;
+
+    /**
+     * 未开启hmdp.shop-index.enabled时为null
+     */
+    @Autowired(required = false)
+    private ShopSpatialIndex shopSpatialIndex;
+
+    /**
+     * 未开启hmdp.shop-search.enabled时为null
+     */
+    @Autowired(required = false)
+    private ShopSearchIndex shopSearchIndex;
+
     /**
      * 通过ID查询店铺信息
      *
@@ -39,6 +82,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @return 包含店铺信息的Result对象
      */
     @Override
+    @ReadOnly
     public Result queryById(Long id) {
         // 解决缓存穿透
         Shop shop = cacheClient
@@ -50,21 +94,66 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 
         // 逻辑过期解决缓存击穿
         // Shop shop = cacheClient
-        //         .queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
+        //         .queryWithLogicalExpire(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
 
         if (shop == null) {
             return Result.fail("店铺不存在！");
         }
+        // 记录独立访客
+        uvTracker.record(UvTracker.SHOP, id);
         // 7.返回
         return Result.ok(shop);
     }
 
+    /**
+     * 新增店铺，有坐标时同步写入该类型的GEO索引
+     *
+     * @param shop 店铺数据
+     * @return 店铺id
+     */
+    @Override
+    public Result saveShop(Shop shop) {
+        // 写入数据库
+        save(shop);
+        // 写入GEO索引
+        addShopGeo(shop.getTypeId(), shop.getId(), shop.getX(), shop.getY());
+        // 该类型的分页缓存失效
+        bumpTypeVersion(shop.getTypeId());
+        if (shopSpatialIndex != null) {
+            shopSpatialIndex.onShopChanged(shop);
+        }
+        if (shopSearchIndex != null) {
+            shopSearchIndex.onShopChanged(shop);
+        }
+        return Result.ok(shop.getId());
+    }
+
+    /**
+     * 查询店铺详情页在日期范围内的独立访客数
+     *
+     * @param id   店铺id
+     * @param from 开始日期，为空时为6天前
+     * @param to   结束日期，为空时为今天
+     * @return 近似UV
+     */
+    @Override
+    public Result queryShopUv(Long id, LocalDate from, LocalDate to) {
+        LocalDate end = to == null ? LocalDate.now() : to;
+        LocalDate start = from == null ? end.minusDays(6) : from;
+        try {
+            return Result.ok(uvTracker.count(UvTracker.SHOP, id, start, end));
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
+        }
+    }
+
     /**
      * 更新店铺信息
      * 当更新店铺信息时，先检查店铺ID是否为空，因为ID是进行后续操作的必要条件
      * 如果ID为空，则返回失败结果并提示错误信息
      * 如果ID不为空，则调用父类方法更新数据库中的店铺信息，并从缓存中删除该店铺的信息，
      * 这样下次请求时会从数据库中同步最新的店铺信息到缓存
+     * 类型或坐标发生变化时，同步更新GEO索引
      *
      * @param shop 需要更新的店铺对象
      * @return 更新操作的结果，包含操作是否成功的信息
@@ -79,133 +168,424 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             // 如果ID为空，返回失败结果并提示错误信息
             return Result.fail("店铺ID不能为空");
         }
+        // 查询原有的类型和坐标
+        Shop old = query().select("id", "type_id", "x", "y").eq("id", id).one();
+        if (old == null) {
+            return Result.fail("店铺不存在！");
+        }
         // 更新数据库中的店铺信息
         updateById(shop);
         // 从缓存中删除该店铺的信息，以保证数据一致性
         stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 同步GEO索引，未修改的字段沿用原值
+        Long typeId = shop.getTypeId() != null ? shop.getTypeId() : old.getTypeId();
+        Double x = shop.getX() != null ? shop.getX() : old.getX();
+        Double y = shop.getY() != null ? shop.getY() : old.getY();
+        if (old.getTypeId() != null && !old.getTypeId().equals(typeId)) {
+            stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + old.getTypeId(), id.toString());
+            // 分页缓存只保存id，类型变化时新旧类型的分页才会变化
+            bumpTypeVersion(old.getTypeId());
+            bumpTypeVersion(typeId);
+        }
+        addShopGeo(typeId, id, x, y);
+        if (shopSpatialIndex != null || shopSearchIndex != null) {
+            // 在事务内读取修改后的店铺，提交之后才更新JVM内的索引，回滚时索引保持原样
+            Shop current = getById(id);
+            afterCommit(() -> {
+                if (shopSpatialIndex != null) {
+                    shopSpatialIndex.onShopChanged(current);
+                }
+                if (shopSearchIndex != null) {
+                    shopSearchIndex.onShopChanged(current);
+                }
+            });
+        }
         // 返回成功结果
         return Result.ok();
     }
 
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
+    /**
+     * 根据类型分页查询店铺
+     * 传入坐标时，从GEO索引中按距离由近到远分页，再批量查询店铺并设置距离；
+     * 没有坐标时按类型分页查询数据库
+     *
+     * @param typeId  店铺类型
+     * @param current 页码
+     * @param x       经度，可以为空
+     * @param y       纬度，可以为空
+     * @return 店铺列表
+     */
+    @Override
+    @ReadOnly
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+        if (current == null || current < 1) {
+            return Result.fail("无效的页码");
+        }
+        // 1.没有坐标，按类型分页查询
+        if (x == null || y == null) {
+            return Result.ok(queryShopByTypePage(typeId, current));
+        }
+        // 2.开启店铺空间索引时直接在内存中查询
+        if (shopSpatialIndex != null && shopSpatialIndex.isReady()) {
+            return queryNearbyFromIndex(x, y, new ShopGrid.Filter(typeId, 0, 0, Long.MAX_VALUE), current);
+        }
+        // 3.GEO索引不存在时从数据库构建，其他线程正在构建时本次按类型分页查询
+        String key = SHOP_GEO_KEY + typeId;
+        if (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(key)) && !loadShopGeoWithLock(typeId)) {
+            return Result.ok(queryShopByTypePage(typeId, current));
+        }
+        // 4.计算分页范围
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+        // 5.GEORADIUS按距离升序取出前end条，并带上距离
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().radius(
+                key,
+                new Circle(new Point(x, y), new Distance(SystemConstants.SHOP_GEO_RADIUS, RedisGeoCommands.DistanceUnit.METERS)),
+                RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs().includeDistance().sortAscending().limit(end)
+        );
+        if (results == null || results.getContent().size() <= from) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 6.截取from ~ end的部分
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> content = results.getContent();
+        List<Long> ids = new ArrayList<>(content.size() - from);
+        Map<Long, Double> distanceMap = new HashMap<>(content.size() - from);
+        for (int i = from; i < content.size(); i++) {
+            GeoResult<RedisGeoCommands.GeoLocation<String>> result = content.get(i);
+            Long shopId = Long.valueOf(result.getContent().getName());
+            ids.add(shopId);
+            distanceMap.put(shopId, result.getDistance().getValue());
+        }
+        // 7.批量查询店铺，按距离顺序排列
+        return Result.ok(listByDistance(ids, distanceMap));
     }
 
-    private void unLock(String key) {
-        stringRedisTemplate.delete(key);
+    /**
+     * 按距离分页查询附近的店铺，支持按类型、最低评分和均价区间筛选
+     * 需要开启店铺空间索引；未开启时只支持按类型筛选，交给GEO索引查询
+     *
+     * @param x        经度
+     * @param y        纬度
+     * @param typeId   店铺类型，可以为空
+     * @param minScore 最低评分（乘10后的值），可以为空
+     * @param minPrice 最低均价，可以为空
+     * @param maxPrice 最高均价，可以为空
+     * @param current  页码
+     * @return 店铺列表
+     */
+    @Override
+    @ReadOnly
+    public Result queryNearby(Double x, Double y, Integer typeId, Integer minScore,
+                              Long minPrice, Long maxPrice, Integer current) {
+        if (current == null || current < 1) {
+            return Result.fail("无效的页码");
+        }
+        if (shopSpatialIndex == null || !shopSpatialIndex.isReady()) {
+            if (typeId == null || minScore != null || minPrice != null || maxPrice != null) {
+                return Result.fail("暂不支持该筛选条件");
+            }
+            return queryShopByType(typeId, current, x, y);
+        }
+        ShopGrid.Filter filter = new ShopGrid.Filter(
+                typeId == null ? 0 : typeId,
+                minScore == null ? 0 : minScore,
+                minPrice == null ? 0 : minPrice,
+                maxPrice == null ? Long.MAX_VALUE : maxPrice
+        );
+        return queryNearbyFromIndex(x, y, filter, current);
+    }
+
+    private Result queryNearbyFromIndex(double x, double y, ShopGrid.Filter filter, int current) {
+        // 取出前end个，按 (距离, id) 排序，翻页时结果稳定
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+        ShopGrid.Hits hits = shopSpatialIndex.nearest(x, y, SystemConstants.SHOP_GEO_RADIUS, filter, end);
+        if (hits.size() <= from) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = new ArrayList<>(hits.size() - from);
+        Map<Long, Double> distanceMap = new HashMap<>(hits.size() - from);
+        for (int i = from; i < hits.size(); i++) {
+            ids.add(hits.id(i));
+            distanceMap.put(hits.id(i), hits.distance(i));
+        }
+        return Result.ok(listByDistance(ids, distanceMap));
     }
 
     /**
-     * 根据ID查询店铺信息，使用互斥锁机制防止缓存击穿
-     * 当缓存中不存在对应ID的店铺信息时，通过加锁避免多个线程同时查询数据库
-     * 只有获取锁成功的线程会进行数据库查询，其他线程将尝试等待或直接返回错误信息
+     * 批量查询店铺，按ids的顺序排列并设置距离
+     */
+    private List<Shop> listByDistance(List<Long> ids, Map<Long, Double> distanceMap) {
+        Map<Long, Shop> shopMap = listByIds(ids).stream()
+                .collect(Collectors.toMap(Shop::getId, Function.identity()));
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Long shopId : ids) {
+            Shop shop = shopMap.get(shopId);
+            if (shop != null) {
+                shop.setDistance(distanceMap.get(shopId));
+                shops.add(shop);
+            }
+        }
+        return shops;
+    }
+
+    /**
+     * 从tb_shop按id分批读取某类型店铺的坐标，管道批量写入临时key后重命名为该类型的GEO索引
      *
-     * @param id 店铺ID
-     * @return 店铺信息，如果缓存和数据库中都不存在，则返回null
-     */
-    public Shop queryWithMutex(Long id) {
-        // 尝试从Redis缓存中获取店铺信息的JSON字符串
-        String shopJson = stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY + id);
-        // 如果缓存中存在该店铺的JSON信息且不为空，则将其转换为Shop对象并返回
-        if (StrUtil.isNotBlank(shopJson)) {
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        // 如果缓存中存在该键但值为空字符串，表示之前已检查过数据库，直接返回null
-        if (shopJson != null) {
-            return null;
-        }
-        // 构造锁的键
-        String lockKey = LOCK_SHOP_KEY + id;
-        Shop shop = null;
-        try {
-            // 尝试获取互斥锁
-            boolean isLock = tryLock(lockKey);
-            // 如果未获取到锁，线程微睡眠后重试查询方法
-            if (!isLock) {
-                try {
-                    Thread.sleep(50);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-                return queryWithMutex(id);
+     * @param typeId 店铺类型
+     */
+    public void loadShopGeo(Integer typeId) {
+        String key = SHOP_GEO_KEY + typeId;
+        String tmpKey = key + ":tmp";
+        stringRedisTemplate.delete(tmpKey);
+        long lastId = 0;
+        boolean hasData = false;
+        while (true) {
+            List<Shop> shops = query()
+                    .select("id", "x", "y")
+                    .eq("type_id", typeId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + GEO_LOAD_BATCH_SIZE)
+                    .list();
+            if (shops.isEmpty()) {
+                break;
             }
-            // 获取锁成功后，从数据库中查询店铺信息
-            shop = getById(id);
-            // 如果数据库中也不存在该店铺信息，将空值写入Redis并返回null
-            if (shop == null) {
-                stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
+            List<Shop> located = shops.stream()
+                    .filter(shop -> shop.getX() != null && shop.getY() != null)
+                    .collect(Collectors.toList());
+            if (!located.isEmpty()) {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Shop shop : located) {
+                        conn.geoAdd(tmpKey, new Point(shop.getX(), shop.getY()), shop.getId().toString());
+                    }
+                    return null;
+                });
+                hasData = true;
             }
-            // 将数据库查询到的店铺信息写入Redis缓存
-            stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(shop), CACHE_NULL_TTL, TimeUnit.MINUTES);
-        } catch (RuntimeException e) {
-            // 处理运行时异常
-            throw new RuntimeException(e);
+            lastId = shops.get(shops.size() - 1).getId();
+        }
+        if (hasData) {
+            stringRedisTemplate.rename(tmpKey, key);
+        }
+        log.debug("店铺GEO索引构建完成，typeId：{}", typeId);
+    }
+
+    private boolean loadShopGeoWithLock(Integer typeId) {
+        String lockKey = LOCK_SHOP_GEO_KEY + typeId;
+        Boolean isLock = stringRedisTemplate.opsForValue()
+                .setIfAbsent(lockKey, "1", LOCK_SHOP_GEO_TTL, TimeUnit.SECONDS);
+        if (!BooleanUtil.isTrue(isLock)) {
+            return false;
+        }
+        try {
+            loadShopGeo(typeId);
+            return true;
         } finally {
-            // 释放锁
-            unLock(lockKey);
+            stringRedisTemplate.delete(lockKey);
         }
-        return shop;
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 写入GEO索引，索引尚未构建时跳过，避免生成不完整的索引
+     */
+    private void addShopGeo(Long typeId, Long id, Double x, Double y) {
+        if (typeId == null || x == null || y == null) {
+            return;
+        }
+        String key = SHOP_GEO_KEY + typeId;
+        if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(key))) {
+            stringRedisTemplate.opsForGeo().add(key, new Point(x, y), id.toString());
+        }
+    }
 
     /**
-     * 根据逻辑过期策略查询店铺信息
-     * 当数据在Redis中存在且未过期时，直接返回店铺信息
-     * 若数据已过期，则尝试加锁，并在成功加锁后异步重建缓存
+     * 按类型分页查询店铺，前几页缓存店铺id列表
+     * 缓存key带有该类型的版本号，店铺增加或改变类型时版本号加一，不需要逐个删除分页缓存；
+     * 店铺本身通过店铺缓存批量查询，店铺信息修改不影响分页缓存
      *
-     * @param id 店铺ID
-     * @return 店铺信息，若不存在或已过期且加锁失败，则可能返回null
-     */
-    public Shop queryWithLogicalExpire(Long id) {
-        // 构造缓存键
-        String key = CACHE_SHOP_KEY + id;
-        // 尝试从Redis中获取店铺信息的JSON字符串
-        String json = stringRedisTemplate.opsForValue().get(key);
-        // 如果JSON字符串为空或空白，则说明缓存中没有对应的数据
-        if (StrUtil.isBlank(json)) {
-            return null;
-        }
-        // 将JSON字符串反序列化为RedisData对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        // 从RedisData对象中提取店铺信息
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-        // 获取数据的过期时间
-        LocalDateTime expireTime = redisData.getExpireTime();
-        // 如果数据未过期，则直接返回店铺信息
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            return shop;
-        }
-        // 构造锁的键
-        String lockKey = LOCK_SHOP_KEY + id;
-        // 尝试获取锁
-        boolean isLock = tryLock(lockKey);
-        // 如果成功获取锁，则异步重建缓存
-        if (isLock) {
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 异步任务：将店铺信息保存到Redis中，并设置过期时间
-                    this.saveShop2Redis(id, 20L);
-                } catch (Exception e) {
-                    // 异常处理：将异常包装为运行时异常抛出
-                    throw new RuntimeException(e);
-                } finally {
-                    // 无论如何，最终释放锁
-                    unLock(lockKey);
-                }
-            });
+     * @param typeId  店铺类型
+     * @param current 页码
+     * @return 店铺列表
+     */
+    private List<Shop> queryShopByTypePage(Integer typeId, Integer current) {
+        if (current > SystemConstants.SHOP_TYPE_CACHE_PAGES) {
+            return queryShopByTypeFromDb(typeId, current);
+        }
+        // 1.查询该类型当前的版本号和对应的分页缓存
+        String version = stringRedisTemplate.opsForValue().get(SHOP_TYPE_PAGE_VERSION_KEY + typeId);
+        String key = CACHE_SHOP_TYPE_PAGE_KEY + typeId + ":" + (version == null ? "0" : version) + ":" + current;
+        String cached = stringRedisTemplate.opsForValue().get(key);
+        List<Long> ids;
+        if (cached != null) {
+            // 2.命中，空字符串表示该页没有数据
+            if (cached.isEmpty()) {
+                return Collections.emptyList();
+            }
+            ids = StrUtil.split(cached, ',').stream().map(Long::valueOf).collect(Collectors.toList());
+        } else {
+            // 3.未命中，只查询id并写入缓存；从库可能还没有同步版本号递增前提交的修改，读主库
+            ids = DataSourceRouting.readPrimary(() -> query()
+                    .select("id")
+                    .eq("type_id", typeId)
+                    .orderByAsc("id")
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE, false))
+                    .getRecords()
+                    .stream().map(Shop::getId).collect(Collectors.toList()));
+            stringRedisTemplate.opsForValue().set(key, StrUtil.join(",", ids), CACHE_SHOP_TYPE_PAGE_TTL, TimeUnit.MINUTES);
+            if (ids.isEmpty()) {
+                return Collections.emptyList();
+            }
         }
-        // 返回店铺信息，即使缓存已过期，也先返回旧数据以减少用户等待时间（异步更新缓存）
-        return shop;
+        // 4.通过店铺缓存批量查询，保持分页顺序
+        return cacheClient.queryBatchWithPassThrough(CACHE_SHOP_KEY, ids, Shop.class,
+                this::listByIds, Shop::getId, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    private List<Shop> queryShopByTypeFromDb(Integer typeId, Integer current) {
+        Page<Shop> page = query()
+                .eq("type_id", typeId)
+                .orderByAsc("id")
+                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+        return page.getRecords();
     }
 
-    public void saveShop2Redis(Long id, Long expireSeconds) {
-        Shop shop = getById(id);
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+    /**
+     * 类型的版本号加一，在事务提交之后执行，避免其他请求在提交前用新版本号缓存旧数据
+     */
+    private void bumpTypeVersion(Long typeId) {
+        if (typeId == null) {
+            return;
+        }
+        String key = SHOP_TYPE_PAGE_VERSION_KEY + typeId;
+        afterCommit(() -> stringRedisTemplate.opsForValue().increment(key));
+    }
+
+    /**
+     * 在当前事务提交之后执行，不在事务中时立即执行
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * 游标分页查询某类型的店铺，按评分倒序、id倒序
+     * 使用 (score, id) < (上一页最后一条) 的条件定位，配合 (type_id, score, id) 索引，
+     * 任意页的查询代价都与第一页相同，并且不执行COUNT查询
+     *
+     * @param typeId 店铺类型
+     * @param cursor 上一页返回的游标，第一页为空
+     * @return 店铺列表和下一页游标
+     */
+    @Override
+    @ReadOnly
+    public Result queryShopByTypeCursor(Integer typeId, String cursor) {
+        long[] keys;
+        try {
+            keys = PageCursor.decode(cursor, 2);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        QueryChainWrapper<Shop> wrapper = query().eq("type_id", typeId);
+        if (keys != null) {
+            long score = keys[0];
+            long id = keys[1];
+            wrapper.and(w -> w.lt("score", score).or(o -> o.eq("score", score).lt("id", id)));
+        }
+        List<Shop> shops = wrapper
+                .orderByDesc("score", "id")
+                .last("LIMIT " + (size + 1))
+                .list();
+        CursorResult r = new CursorResult();
+        if (shops.size() > size) {
+            shops = shops.subList(0, size);
+            Shop last = shops.get(size - 1);
+            r.setNextCursor(PageCursor.encode(last.getScore(), last.getId()));
+        }
+        r.setList(shops);
+        return Result.ok(r);
+    }
+
+    /**
+     * 按名称关键字分页查询店铺
+     * 开启店铺搜索索引时在内存中按二元组倒排表检索并打分排序，只用得到的id通过缓存批量查询店铺；
+     * 未开启、关键字为空或页码超过索引可翻的深度时按LIKE分页查询数据库
+     *
+     * @param name    名称关键字
+     * @param current 页码
+     * @return 店铺列表
+     */
+    @Override
+    @ReadOnly
+    public Result queryShopByName(String name, Integer current) {
+        if (current == null || current < 1) {
+            return Result.fail("无效的页码");
+        }
+        // 索引需要保留前current*页大小个结果，限制深度避免一个请求分配过大的数组
+        if (StrUtil.isBlank(name) || shopSearchIndex == null || !shopSearchIndex.isReady()
+                || current > SystemConstants.SHOP_SEARCH_INDEX_PAGES) {
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        // 1.取出前end个，截取当前页
+        int from = (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        int end = current * SystemConstants.MAX_PAGE_SIZE;
+        ShopNameIndex.Hits hits = shopSearchIndex.search(name, end);
+        if (hits.size() <= from) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = new ArrayList<>(hits.size() - from);
+        for (int i = from; i < hits.size(); i++) {
+            ids.add(hits.id(i));
+        }
+        // 2.通过缓存批量查询店铺，保持排名顺序
+        List<Shop> shops = cacheClient.queryBatchWithPassThrough(CACHE_SHOP_KEY, ids, Shop.class,
+                this::listByIds, Shop::getId, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        return Result.ok(shops);
+    }
+
+    /**
+     * 游标分页按名称关键字查询店铺，按id正序
+     *
+     * @param name   名称关键字
+     * @param cursor 上一页返回的游标，第一页为空
+     * @return 店铺列表和下一页游标
+     */
+    @Override
+    @ReadOnly
+    public Result queryShopByNameCursor(String name, String cursor) {
+        long[] keys;
+        try {
+            keys = PageCursor.decode(cursor, 1);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        List<Shop> shops = query()
+                .like(StrUtil.isNotBlank(name), "name", name)
+                .gt(keys != null, "id", keys == null ? null : keys[0])
+                .orderByAsc("id")
+                .last("LIMIT " + (size + 1))
+                .list();
+        CursorResult r = new CursorResult();
+        if (shops.size() > size) {
+            shops = shops.subList(0, size);
+            r.setNextCursor(PageCursor.encode(shops.get(size - 1).getId()));
+        }
+        r.setList(shops);
+        return Result.ok(r);
     }
 }
@@ -1,41 +1,111 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.JsonSnapshot;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import org.springframework.data.redis.core.RedisTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_TYPE_CHECK_INTERVAL;
+import static com.hmdp.utils.RedisConstants.SHOP_TYPE_VERSION_KEY;
 
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
     @Resource
-    private RedisTemplate<String, Object> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    /**
+     * 当前的类型列表快照，整体替换
+     */
+    private volatile JsonSnapshot snapshot;
+
+    /**
+     * 定时检查版本号，随本实例一起关闭
+     */
+    private final ScheduledExecutorService checkExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    @PostConstruct
+    public void init() {
+        checkExecutor.scheduleWithFixedDelay(this::checkVersion,
+                SHOP_TYPE_CHECK_INTERVAL, SHOP_TYPE_CHECK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        checkExecutor.shutdownNow();
+    }
 
     /**
-     * 查询类型列表，优先从缓存中读取
+     * 查询类型列表
+     * 返回内存中预先序列化好的响应，版本号由后台定时检查，请求不访问Redis和数据库；
+     * 只有启动后的第一次请求需要加载
      *
-     * @return 返回查询结果的类型列表
+     * @return 类型列表的JSON快照
      */
     @Override
-    public Result queryTypeList() {
-        // 定义缓存键值
-        String key = CACHE_SHOP_KEY;
-        // 判断缓存中是否存在数据
-        if (redisTemplate.hasKey(key)) {
-            // 如果缓存中存在数据，则直接返回缓存中的数据
-            return Result.ok(redisTemplate.opsForValue().get(key));
+    public JsonSnapshot queryTypeList() {
+        JsonSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = load(stringRedisTemplate.opsForValue().get(SHOP_TYPE_VERSION_KEY));
+            }
+            return snapshot;
         }
-        // 如果缓存中不存在数据，则从数据库中查询，并存入缓存
-        redisTemplate.opsForValue().set(key, query().list());
-        // 返回从缓存中获取的数据
-        return Result.ok(redisTemplate.opsForValue().get(key));
     }
 
+    /**
+     * 比较Redis中的版本号，变化时重新加载
+     */
+    private void checkVersion() {
+        try {
+            JsonSnapshot current = snapshot;
+            if (current == null) {
+                return;
+            }
+            String version = stringRedisTemplate.opsForValue().get(SHOP_TYPE_VERSION_KEY);
+            if (!Objects.equals(version, current.getVersion())) {
+                snapshot = load(version);
+                log.debug("店铺类型已重新加载，版本：{}", version);
+            }
+        } catch (Exception e) {
+            log.error("检查店铺类型版本异常", e);
+        }
+    }
+
+    /**
+     * 按顺序查询全部类型，序列化为响应体
+     */
+    private JsonSnapshot load(String version) {
+        List<ShopType> types = query().orderByAsc("sort").list();
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(Result.ok(types));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return new JsonSnapshot(version, body, "\"" + DigestUtil.md5Hex(body) + "\"");
+    }
 }
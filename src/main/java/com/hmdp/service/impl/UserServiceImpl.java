@@ -4,21 +4,31 @@ import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.SignResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.DauTracker;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -29,9 +39,14 @@ import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 @Service
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
 
+    private static final DateTimeFormatter SIGN_MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private DauTracker dauTracker;
+
     /**
      * 发送验证码给指定的手机号
      * 此方法首先检查手机号的格式是否正确，然后生成一个随机的6位数字验证码，
@@ -99,19 +114,96 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
                         .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
 
         // 将用户信息存入Redis，以令牌为键
-        stringRedisTemplate.opsForHash().putAll(LOGIN_CODE_KEY + token, userMap);
+        stringRedisTemplate.opsForHash().putAll(LOGIN_USER_KEY + token, userMap);
         // 设置Redis中用户信息的过期时间
-        stringRedisTemplate.expire(LOGIN_CODE_KEY + token, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        stringRedisTemplate.expire(LOGIN_USER_KEY + token, LOGIN_USER_TTL, TimeUnit.MINUTES);
         // 登录成功，返回令牌
         return Result.ok(token);
     }
 
+    /**
+     * 签到，每个用户每月一个bitmap，第n天对应第n-1位
+     *
+     * @return 无
+     */
+    @Override
+    public Result sign() {
+        Long userId = UserHolder.getUser().getId();
+        LocalDate today = LocalDate.now();
+        // SETBIT是幂等的，重复签到不会改变结果
+        stringRedisTemplate.opsForValue().setBit(signKey(userId, today), today.getDayOfMonth() - 1, true);
+        return Result.ok();
+    }
+
+    /**
+     * 统计本月签到情况
+     * 一次BITFIELD GET u{今天是第几天} 0 取出本月截止今天的所有位，今天在最低位；
+     * 连续签到天数就是从最低位开始连续的1的个数，本月签到天数就是1的总数，与BITCOUNT相同
+     *
+     * @return 连续签到天数、本月签到天数、今天是否已签到
+     */
+    @Override
+    public Result signCount() {
+        Long userId = UserHolder.getUser().getId();
+        LocalDate today = LocalDate.now();
+        int dayOfMonth = today.getDayOfMonth();
+        List<Long> values = stringRedisTemplate.opsForValue().bitField(signKey(userId, today),
+                BitFieldSubCommands.create()
+                        .get(BitFieldSubCommands.BitFieldType.unsigned(dayOfMonth)).valueAt(0));
+        long bits = values == null || values.isEmpty() || values.get(0) == null ? 0 : values.get(0);
+        SignResult r = new SignResult();
+        r.setSignedToday((bits & 1) == 1);
+        // 今天还没签到时从昨天开始算，连续签到不会因为今天还没签而中断
+        long streakBits = (bits & 1) == 1 ? bits : bits >>> 1;
+        r.setStreak(Long.numberOfTrailingZeros(~streakBits));
+        r.setMonthCount(Long.bitCount(bits));
+        return Result.ok(r);
+    }
+
+    /**
+     * 查询某个月的签到天数，使用BITCOUNT
+     *
+     * @param month 月份，格式yyyyMM，为空时为本月
+     * @return 签到天数
+     */
+    @Override
+    public Result signCountOfMonth(String month) {
+        Long userId = UserHolder.getUser().getId();
+        String suffix = StrUtil.isBlank(month) ? LocalDate.now().format(SIGN_MONTH_FORMATTER) : month;
+        if (!suffix.matches("\\d{6}")) {
+            return Result.fail("月份格式错误");
+        }
+        String key = USER_SIGN_KEY + userId + ":" + suffix;
+        Long count = stringRedisTemplate.execute((RedisCallback<Long>) connection -> connection.bitCount(key.getBytes(StandardCharsets.UTF_8)));
+        return Result.ok(count == null ? 0 : count);
+    }
+
+    private static String signKey(Long userId, LocalDate date) {
+        return USER_SIGN_KEY + userId + ":" + date.format(SIGN_MONTH_FORMATTER);
+    }
+
+    /**
+     * 修改用户后删除资料缓存，修改tb_user都应该经过这里
+     *
+     * @param user 用户，id不能为空
+     * @return 是否修改成功
+     */
+    @Override
+    public boolean updateById(User user) {
+        boolean updated = super.updateById(user);
+        stringRedisTemplate.delete(CACHE_USER_KEY + user.getId());
+        return updated;
+    }
 
     private User createUserWithPhone(String phone) {
         User user = new User();
         user.setPhone(phone);
         user.setNickName(USER_NICK_NAME_PREFIX + RandomUtil.randomString(10));
         save(user);
-        return null;
+        // 注册之前查询过这个id时缓存了空值
+        stringRedisTemplate.delete(CACHE_USER_KEY + user.getId());
+        // 记录为当天的新用户，用于新用户留存统计
+        dauTracker.markNew(user.getId());
+        return user;
     }
 }
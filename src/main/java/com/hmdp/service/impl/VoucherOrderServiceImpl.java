@@ -18,6 +18,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.util.Collections;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -50,11 +51,24 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     private BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024 * 100);
 
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    /**
+     * 订单处理线程，每个实例各自创建，关闭时中断take()结束处理线程
+     */
+    private ExecutorService seckillOrderExecutor;
 
     @PostConstruct
     public void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        seckillOrderExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-order");
+            thread.setDaemon(true);
+            return thread;
+        });
+        seckillOrderExecutor.submit(new VoucherOrderHandler());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        seckillOrderExecutor.shutdownNow();
     }
 
     private class VoucherOrderHandler implements Runnable {
@@ -66,7 +80,11 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                     VoucherOrder voucherOrder = orderTasks.take();
                     handlerVoucherOrder(voucherOrder);
                 } catch (InterruptedException e) {
-                    log.error("订单处理异常");
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    // 单个订单失败不能让处理线程退出，否则之后的订单都不会落库
+                    log.error("订单处理异常", e);
                 }
             }
         }
@@ -176,9 +194,9 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         voucherOrder.setUserId(userId);
         voucherOrder.setVoucherId(voucherId);
 
-        orderTasks.add(voucherOrder);
-
+        // 先拿到代理对象再放入队列，处理线程取出订单时会用到
         proxy = (IVoucherOrderService) AopContext.currentProxy();
+        orderTasks.add(voucherOrder);
         return Result.ok(orderId);
     }
 
@@ -188,7 +206,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         Long userId = voucherOrder.getUserId();
         synchronized (userId.toString().intern()) {
             // 5.1.查询订单
-            int count = query().eq("user_id", userId).eq("voucher_id", voucherOrder).count();
+            int count = query().eq("user_id", userId).eq("voucher_id", voucherOrder.getVoucherId()).count();
             // 5.2.判断是否存在
             if (count > 0) {
                 // 用户已经购买过了
@@ -199,7 +217,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             // 6.扣减库存
             boolean success = seckillVoucherService.update()
                     .setSql("stock = stock - 1") // set stock = stock - 1
-                    .eq("voucher_id", voucherOrder).gt("stock", 0) // where id = ? and stock > 0
+                    .eq("voucher_id", voucherOrder.getVoucherId()).gt("stock", 0) // where id = ? and stock > 0
                     .update();
             if (!success) {
                 // 扣减失败
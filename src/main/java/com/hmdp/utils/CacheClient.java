@@ -2,12 +2,20 @@ package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -21,11 +29,20 @@ import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
 @Component
 public class CacheClient {
     private final StringRedisTemplate stringRedisTemplate;
+    /**
+     * 逻辑过期缓存的异步重建线程
+     */
+    private final ExecutorService rebuildExecutor = Executors.newFixedThreadPool(10);
 
     public CacheClient(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
     }
 
+    @PreDestroy
+    public void destroy() {
+        rebuildExecutor.shutdown();
+    }
+
     public void set(String key, Object value, Long time, TimeUnit unit) {
         stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
     }
@@ -68,8 +85,8 @@ public class CacheClient {
             return null;
         }
 
-        // 数据库查询的回退机制
-        R r = dbFallback.apply(id);
+        // 数据库查询的回退机制，结果要写入缓存，读主库
+        R r = DataSourceRouting.readPrimary(() -> dbFallback.apply(id));
 
         // 如果数据库中也没有数据，则将空结果缓存指定时间
         if (r == null) {
@@ -82,6 +99,69 @@ public class CacheClient {
         return r;
     }
 
+    /**
+     * 批量查询，带有穿透处理
+     * 一次MGET取出全部缓存，未命中的id一次查询数据库，再用管道写回缓存，数据库中不存在的id缓存空值
+     *
+     * @param keyPrefix  缓存键的前缀
+     * @param ids        数据的唯一标识符
+     * @param type       返回对象的类型
+     * @param dbFallback 按id批量查询数据库
+     * @param idGetter   从查询结果中取出id
+     * @param time       缓存的时间
+     * @param unit       时间单位
+     * @return 按ids顺序排列的对象，不存在的id被跳过
+     */
+    public <R, ID> List<R> queryBatchWithPassThrough(String keyPrefix, List<ID> ids, Class<R> type,
+                                                     Function<List<ID>, List<R>> dbFallback, Function<R, ID> idGetter,
+                                                     Long time, TimeUnit unit) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 1.MGET批量查询缓存
+        List<String> keys = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            keys.add(keyPrefix + id);
+        }
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(keys);
+        Map<ID, R> found = new HashMap<>(ids.size() * 2);
+        List<ID> missed = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String json = jsons == null ? null : jsons.get(i);
+            if (StrUtil.isNotBlank(json)) {
+                found.put(ids.get(i), JSONUtil.toBean(json, type));
+            } else if (json == null) {
+                missed.add(ids.get(i));
+            }
+        }
+        // 2.未命中的一次查询主库，并写回缓存
+        if (!missed.isEmpty()) {
+            Map<ID, R> loaded = new HashMap<>(missed.size() * 2);
+            for (R r : DataSourceRouting.readPrimary(() -> dbFallback.apply(missed))) {
+                loaded.put(idGetter.apply(r), r);
+            }
+            found.putAll(loaded);
+            long seconds = unit.toSeconds(time);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (ID id : missed) {
+                    R r = loaded.get(id);
+                    conn.setEx(keyPrefix + id, seconds, r == null ? "" : JSONUtil.toJsonStr(r));
+                }
+                return null;
+            });
+        }
+        // 3.按ids的顺序返回
+        List<R> result = new ArrayList<>(found.size());
+        for (ID id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
     /**
      * 带有互斥锁的查询方法
      * 本方法用于从Redis缓存中查询数据，如果缓存不存在，则通过互斥锁防止缓存击穿和雪崩效应
@@ -119,8 +199,8 @@ public class CacheClient {
                 Thread.sleep(50);
                 return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
             }
-            // 从数据库回退函数中获取数据
-            r = dbFallback.apply(id);
+            // 从数据库回退函数中获取数据，结果要写入缓存，读主库
+            r = DataSourceRouting.readPrimary(() -> dbFallback.apply(id));
             // 如果数据为空，则在Redis中设置空值标志，防止缓存穿透
             if (r == null) {
                 stringRedisTemplate.opsForValue().set(key, "", time, unit);
@@ -137,6 +217,71 @@ public class CacheClient {
         return r;
     }
 
+    /**
+     * 逻辑过期的查询方法
+     * 缓存中的数据不设置TTL，由RedisData中的过期时间判断是否需要重建；
+     * 过期后由拿到互斥锁的线程异步重建缓存，其余请求直接返回旧数据。缓存需要提前预热，未命中直接返回null
+     *
+     * @param keyPrefix     缓存键的前缀
+     * @param lockKeyPrefix 重建缓存的互斥锁键的前缀
+     * @param id            数据的唯一标识符
+     * @param type          返回对象的类型
+     * @param dbFallback    数据库查询的回退函数
+     * @param time          逻辑过期时间
+     * @param unit          时间单位
+     * @return 查询到的对象，可能是已经过期的旧数据
+     */
+    public <R, ID> R queryWithLogicalExpire(String keyPrefix, String lockKeyPrefix, ID id, Class<R> type,
+                                            Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 1.查询缓存，未命中说明不是热点数据
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (StrUtil.isBlank(json)) {
+            return null;
+        }
+        // 2.反序列化，判断是否过期
+        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
+        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+            return r;
+        }
+        // 3.已过期，获取互斥锁
+        String lockKey = lockKeyPrefix + id;
+        if (!tryLock(lockKey)) {
+            return r;
+        }
+        // 4.再次检查缓存，其他线程可能刚刚释放锁，已经重建过了
+        json = stringRedisTemplate.opsForValue().get(key);
+        if (StrUtil.isNotBlank(json)) {
+            redisData = JSONUtil.toBean(json, RedisData.class);
+            if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                unLock(lockKey);
+                return JSONUtil.toBean((JSONObject) redisData.getData(), type);
+            }
+        }
+        // 5.异步重建，数据库中已不存在时删除缓存
+        try {
+            rebuildExecutor.execute(() -> {
+                try {
+                    R fresh = dbFallback.apply(id);
+                    if (fresh == null) {
+                        stringRedisTemplate.delete(key);
+                    } else {
+                        this.setWithLogicalExpire(key, fresh, time, unit);
+                    }
+                } catch (Exception e) {
+                    log.error("重建缓存失败，{}", key, e);
+                } finally {
+                    unLock(lockKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            unLock(lockKey);
+        }
+        // 6.返回旧数据
+        return r;
+    }
+
     private boolean tryLock(String key) {
         Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
         return BooleanUtil.isTrue(flag);
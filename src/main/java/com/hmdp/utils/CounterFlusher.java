@@ -0,0 +1,159 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.BooleanUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static com.hmdp.utils.RedisConstants.COUNTER_FLUSH_INTERVAL;
+import static com.hmdp.utils.RedisConstants.LOCK_COUNTER_FLUSH_TTL;
+
+/**
+ * 计数增量的批量回写
+ * <p>
+ * 业务方把计数增量HINCRBY到一个HASH（field为数据id，value为增量），本组件定时把HASH改名为快照key，
+ * 新的增量写入新的HASH互不影响；快照中增量相同的id合并后交给业务方批量更新数据库，
+ * 这样热门数据的计数不会在数据库中形成热点行。
+ * 快照按批回写，每批提交后从快照中删除这批id，回写中途失败时下次从剩余的id继续
+ *
+ * @author RainSoul
+ */
+@Slf4j
+@Component
+public class CounterFlusher {
+    /**
+     * 每次交给业务方更新的id数量
+     */
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "counter-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final Map<String, BiConsumer<Long, List<Long>>> appliers = new ConcurrentHashMap<>();
+
+    public CounterFlusher(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        flushExecutor.scheduleWithFixedDelay(this::flushAll,
+                COUNTER_FLUSH_INTERVAL, COUNTER_FLUSH_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 注册一个需要定时回写的计数增量HASH
+     *
+     * @param deltaKey 增量HASH的key
+     * @param applier  回写函数，参数为增量和这批id
+     */
+    public void register(String deltaKey, BiConsumer<Long, List<Long>> applier) {
+        appliers.put(deltaKey, applier);
+    }
+
+    /**
+     * 回写版本号的key，每次回写开始和结束时各INCR一次，奇数表示正在回写。
+     * 用数据库的值加未回写的增量初始化缓存时，读取数据库前后版本号不变且为偶数，才说明两者没有重叠或遗漏
+     *
+     * @param deltaKey 增量HASH的key
+     * @return 版本号的key
+     */
+    public static String versionKey(String deltaKey) {
+        return deltaKey + ":version";
+    }
+
+    /**
+     * 生成对无符号计数列加上增量的SQL片段，列为NULL时按0计算，减少时不会小于0
+     *
+     * @param column 列名
+     * @param delta  增量
+     * @return 例如 liked = IFNULL(liked, 0) + 1
+     */
+    public static String incrementSql(String column, long delta) {
+        String current = "IFNULL(" + column + ", 0)";
+        if (delta >= 0) {
+            return column + " = " + current + " + " + delta;
+        }
+        return column + " = IF(" + current + " < " + (-delta) + ", 0, " + current + " - " + (-delta) + ")";
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flushExecutor.shutdown();
+        // 停机前把剩余的增量回写数据库
+        flushAll();
+    }
+
+    private void flushAll() {
+        appliers.forEach((deltaKey, applier) -> {
+            try {
+                flush(deltaKey, applier);
+            } catch (Exception e) {
+                log.error("计数回写异常，key：{}", deltaKey, e);
+            }
+        });
+    }
+
+    private void flush(String deltaKey, BiConsumer<Long, List<Long>> applier) {
+        // 多实例部署时只允许一个实例处理同一个快照；回写超过锁的有效期时，锁可能已经被其他实例持有，
+        // 释放时比较持有者标识，不能删除别人的锁
+        ILock lock = new SimpleRedisLock(deltaKey, stringRedisTemplate);
+        if (!lock.tryLock(LOCK_COUNTER_FLUSH_TTL)) {
+            return;
+        }
+        String flushingKey = deltaKey + ":flushing";
+        try {
+            // 上次回写失败残留的快照优先处理
+            if (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(flushingKey))) {
+                if (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(deltaKey))) {
+                    return;
+                }
+                stringRedisTemplate.rename(deltaKey, flushingKey);
+            }
+            String versionKey = versionKey(deltaKey);
+            Long version = stringRedisTemplate.opsForValue().increment(versionKey);
+            if (version != null && version % 2 == 0) {
+                // 上次回写结束时的INCR没有执行成功，补齐为奇数
+                stringRedisTemplate.opsForValue().increment(versionKey);
+            }
+            try {
+                apply(flushingKey, applier);
+            } finally {
+                stringRedisTemplate.opsForValue().increment(versionKey);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void apply(String flushingKey, BiConsumer<Long, List<Long>> applier) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(flushingKey);
+        Map<Long, List<Long>> idsByDelta = new HashMap<>();
+        entries.forEach((id, delta) -> {
+            long d = Long.parseLong(delta.toString());
+            if (d != 0) {
+                idsByDelta.computeIfAbsent(d, k -> new ArrayList<>()).add(Long.valueOf(id.toString()));
+            }
+        });
+        idsByDelta.forEach((delta, ids) -> {
+            for (List<Long> batch : CollUtil.split(ids, FLUSH_BATCH_SIZE)) {
+                applier.accept(delta, batch);
+                // 每批成功后立即从快照中删除，某一批失败时下次只重试剩余的id，已提交的批次不会重复累加
+                stringRedisTemplate.opsForHash().delete(flushingKey, batch.stream().map(String::valueOf).toArray());
+            }
+        });
+        // 剩余的只有增量为0的id
+        stringRedisTemplate.delete(flushingKey);
+        log.debug("计数回写完成，key：{}，数量：{}", flushingKey, entries.size());
+    }
+}
@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import java.util.function.Supplier;
+
+/**
+ * 读写分离的线程上下文，决定当前线程的下一次取连接是否可以走从库
+ * <p>
+ * 只读标记由ReadOnlyAspect设置，写标记由ReadWriteInterceptor设置，
+ * 登录token与粘主库截止时间由RefreshTokenInterceptor在请求开始时设置，请求结束时清除
+ */
+public class DataSourceRouting {
+    private static class Context {
+        private int readOnlyDepth;
+        private int writeDepth;
+        private int primaryDepth;
+        private String tokenKey;
+        private long primaryUntil;
+        private boolean marked;
+    }
+
+    private static final ThreadLocal<Context> CONTEXT = ThreadLocal.withInitial(Context::new);
+
+    public static void enterReadOnly() {
+        CONTEXT.get().readOnlyDepth++;
+    }
+
+    public static void exitReadOnly() {
+        CONTEXT.get().readOnlyDepth--;
+    }
+
+    public static void enterWrite() {
+        CONTEXT.get().writeDepth++;
+    }
+
+    public static void exitWrite() {
+        CONTEXT.get().writeDepth--;
+    }
+
+    /**
+     * 在主库上执行查询，用于查库后回填缓存的场景：
+     * 从库可能还没有同步刚提交的修改，读到的旧数据写进缓存后会一直保留到TTL过期，
+     * 即使处于@ReadOnly方法中也不走从库
+     *
+     * @param loader 查询
+     * @return 查询结果
+     */
+    public static <T> T readPrimary(Supplier<T> loader) {
+        Context context = CONTEXT.get();
+        context.primaryDepth++;
+        try {
+            return loader.get();
+        } finally {
+            context.primaryDepth--;
+        }
+    }
+
+    /**
+     * 请求开始时记录登录token对应的Redis键，以及该用户需要读主库的截止时间
+     */
+    public static void beginRequest(String tokenKey, long primaryUntil) {
+        Context context = CONTEXT.get();
+        context.tokenKey = tokenKey;
+        context.primaryUntil = primaryUntil;
+        context.marked = false;
+    }
+
+    public static String getTokenKey() {
+        return CONTEXT.get().tokenKey;
+    }
+
+    /**
+     * 本次请求是否已经写过粘主库标记，每个请求只写一次Redis
+     */
+    public static boolean isMarked() {
+        return CONTEXT.get().marked;
+    }
+
+    /**
+     * 当前用户写入数据后，本次请求剩余的读和之后一段时间内的读都走主库
+     */
+    public static void markWritten(long primaryUntil) {
+        Context context = CONTEXT.get();
+        context.primaryUntil = primaryUntil;
+        context.marked = true;
+    }
+
+    /**
+     * 只读范围内、没有在执行写语句、不在回填缓存的查询中、且不在粘主库窗口内时可以读从库；事务的判断由数据源负责
+     */
+    public static boolean isReplicaAllowed() {
+        Context context = CONTEXT.get();
+        return context.readOnlyDepth > 0 && context.writeDepth == 0 && context.primaryDepth == 0
+                && System.currentTimeMillis() >= context.primaryUntil;
+    }
+
+    public static void clear() {
+        CONTEXT.remove();
+    }
+}
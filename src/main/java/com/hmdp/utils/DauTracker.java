@@ -0,0 +1,163 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 日活跃用户记录
+ * <p>
+ * 每天一个bitmap：dau:{yyyyMMdd}，第userId位表示该用户当天活跃。
+ * 本地用同样按userId寻址的位图去重，每个用户每天在每个实例上只写一次SETBIT，之后的请求只读本地位图
+ *
+ * @author RainSoul
+ */
+@Slf4j
+@Component
+public class DauTracker {
+    public static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 当天的本地去重位图，跨天时整体替换
+     */
+    private volatile DaySeen today = new DaySeen(LocalDate.now());
+
+    public DauTracker(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 记录用户今天活跃，已记录过时不访问Redis
+     *
+     * @param userId 用户id
+     */
+    public void markActive(Long userId) {
+        if (userId == null || userId < 0 || userId > Integer.MAX_VALUE) {
+            return;
+        }
+        DaySeen seen = today;
+        LocalDate now = LocalDate.now();
+        if (!seen.day.equals(now)) {
+            seen = rollover(now);
+        }
+        if (!seen.add(userId.intValue())) {
+            return;
+        }
+        try {
+            String key = DAU_KEY + now.format(DAY_FORMATTER);
+            stringRedisTemplate.opsForValue().setBit(key, userId, true);
+            // 每个实例每天只设置一次过期时间
+            if (seen.markExpireSet()) {
+                stringRedisTemplate.expire(key, DAU_TTL, TimeUnit.DAYS);
+            }
+        } catch (Exception e) {
+            // 统计失败不影响业务请求，清除本地标记以便下次重试
+            seen.remove(userId.intValue());
+            log.warn("记录日活失败，userId：{}", userId, e);
+        }
+    }
+
+    /**
+     * 记录当天新注册的用户，用于新用户留存统计；Redis异常只记录日志，不会抛出
+     *
+     * @param userId 用户id
+     */
+    public void markNew(Long userId) {
+        if (userId == null || userId < 0) {
+            return;
+        }
+        try {
+            String key = DAU_NEW_KEY + LocalDate.now().format(DAY_FORMATTER);
+            stringRedisTemplate.opsForValue().setBit(key, userId, true);
+            stringRedisTemplate.expire(key, DAU_TTL, TimeUnit.DAYS);
+        } catch (Exception e) {
+            // 统计失败不影响注册登录，用户已经写入数据库
+            log.warn("记录新用户失败，userId：{}", userId, e);
+        }
+    }
+
+    private synchronized DaySeen rollover(LocalDate now) {
+        if (!today.day.equals(now)) {
+            today = new DaySeen(now);
+        }
+        return today;
+    }
+
+    /**
+     * 按userId寻址的并发位图，容量不够时加锁扩容；
+     * 扩容期间写入旧数组的位可能丢失，只会导致多写一次幂等的SETBIT
+     */
+    private static final class DaySeen {
+        private final LocalDate day;
+        private volatile AtomicLongArray words = new AtomicLongArray(1024);
+        private volatile boolean expireSet;
+
+        DaySeen(LocalDate day) {
+            this.day = day;
+        }
+
+        /**
+         * @return 之前没有记录过时返回true
+         */
+        boolean add(int id) {
+            int index = id >>> 6;
+            long mask = 1L << (id & 63);
+            AtomicLongArray w = words;
+            if (index >= w.length()) {
+                w = grow(index);
+            }
+            while (true) {
+                long old = w.get(index);
+                if ((old & mask) != 0) {
+                    return false;
+                }
+                if (w.compareAndSet(index, old, old | mask)) {
+                    return true;
+                }
+            }
+        }
+
+        void remove(int id) {
+            int index = id >>> 6;
+            AtomicLongArray w = words;
+            if (index < w.length()) {
+                long mask = ~(1L << (id & 63));
+                long old;
+                do {
+                    old = w.get(index);
+                } while (!w.compareAndSet(index, old, old & mask));
+            }
+        }
+
+        synchronized boolean markExpireSet() {
+            if (expireSet) {
+                return false;
+            }
+            expireSet = true;
+            return true;
+        }
+
+        private synchronized AtomicLongArray grow(int index) {
+            AtomicLongArray w = words;
+            if (index < w.length()) {
+                return w;
+            }
+            int length = Math.max(index + 1, w.length() * 2);
+            AtomicLongArray bigger = new AtomicLongArray(length);
+            for (int i = 0; i < w.length(); i++) {
+                bigger.set(i, w.get(i));
+            }
+            words = bigger;
+            return bigger;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.EndpointStats;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按接口累计的耗时统计，自应用启动起累计
+ * <p>
+ * 接口按请求方法和路径模板区分，数量有限；计数使用LongAdder，记录时不加锁
+ */
+@Component
+public class EndpointMetrics {
+
+    private static class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder redisNanos = new LongAdder();
+        private final LongAdder redisCalls = new LongAdder();
+        private final LongAdder sqlNanos = new LongAdder();
+        private final LongAdder sqlCalls = new LongAdder();
+    }
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, RequestTiming timing, long totalNanos, int status) {
+        Stats s = stats.computeIfAbsent(endpoint, k -> new Stats());
+        s.count.increment();
+        if (status >= 500) {
+            s.errors.increment();
+        }
+        s.totalNanos.add(totalNanos);
+        s.maxNanos.accumulate(totalNanos);
+        s.redisNanos.add(timing.getRedisNanos());
+        s.redisCalls.add(timing.getRedisCalls());
+        s.sqlNanos.add(timing.getSqlNanos());
+        s.sqlCalls.add(timing.getSqlCalls());
+    }
+
+    /**
+     * 按总耗时从高到低排列的统计
+     */
+    public List<EndpointStats> snapshot() {
+        List<EndpointStats> list = new ArrayList<>(stats.size());
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            long count = s.count.sum();
+            if (count == 0) {
+                continue;
+            }
+            long total = s.totalNanos.sum();
+            long redis = s.redisNanos.sum();
+            long sql = s.sqlNanos.sum();
+            EndpointStats e = new EndpointStats();
+            e.setEndpoint(entry.getKey());
+            e.setCount(count);
+            e.setErrors(s.errors.sum());
+            e.setAvgMs(total / 1e6 / count);
+            e.setMaxMs(s.maxNanos.get() / 1e6);
+            e.setAvgRedisMs(redis / 1e6 / count);
+            e.setAvgRedisCalls((double) s.redisCalls.sum() / count);
+            e.setAvgSqlMs(sql / 1e6 / count);
+            e.setAvgSqlCalls((double) s.sqlCalls.sum() / count);
+            e.setAvgHandlerMs(Math.max(0, total - redis - sql) / 1e6 / count);
+            list.add(e);
+        }
+        list.sort(Comparator.comparingDouble((EndpointStats e) -> e.getAvgMs() * e.getCount()).reversed());
+        return list;
+    }
+}
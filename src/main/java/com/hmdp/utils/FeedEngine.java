@@ -0,0 +1,459 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.BooleanUtil;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.entity.Follow;
+import com.hmdp.service.IFollowService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 推拉结合的关注流
+ * <p>
+ * 每篇博文都会写入作者的发件箱feed:out:{authorId}；
+ * 粉丝数不超过阈值的作者再推送到活跃粉丝的收件箱feed:{userId}，不活跃的粉丝跳过，回来时再从发件箱拉取补齐；
+ * 粉丝数超过阈值的大V只写发件箱，读者读取时把收件箱与关注的大V发件箱做多路归并，
+ * 活跃读者的归并结果会短暂缓存为feed:merged:{userId}。
+ * 不活跃的读者回来时收件箱在后台补齐，补齐之前的读取从最近关注的人的发件箱归并出当前页
+ *
+ * @author RainSoul
+ */
+@Slf4j
+@Component
+public class FeedEngine {
+    /**
+     * 每批查询的粉丝/关注数量
+     */
+    private static final int FEED_BATCH_SIZE = 500;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final IFollowService followService;
+    private final ObjectProvider<FollowGraphIndex> followGraphIndex;
+    /**
+     * 推送、缓存归并结果和补齐收件箱的线程池，队列满或已关闭时丢弃任务并记录日志：
+     * 推送丢失的博文仍在作者发件箱中，粉丝补齐收件箱时会写入；未缓存的归并结果下次读取时重新提交；
+     * 丢弃的补齐任务留下的标记在FEED_REBUILDING_TTL后过期，期间按有限归并读取
+     */
+    private final ThreadPoolExecutor feedExecutor;
+
+    /**
+     * 粉丝数超过该值的作者不再推送，改为读者拉取
+     */
+    @Value("${hmdp.feed.push-threshold:5000}")
+    private long pushThreshold;
+
+    public FeedEngine(StringRedisTemplate stringRedisTemplate, IFollowService followService,
+                      ObjectProvider<FollowGraphIndex> followGraphIndex,
+                      @Value("${hmdp.feed.threads:2}") int threads,
+                      @Value("${hmdp.feed.queue:1000}") int queue) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.followService = followService;
+        this.followGraphIndex = followGraphIndex;
+        AtomicInteger threadId = new AtomicInteger();
+        this.feedExecutor = new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue), r -> {
+            Thread thread = new Thread(r, "feed-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (task, executor) -> log.warn("关注流任务队列已满或已关闭，放弃任务"));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        feedExecutor.shutdown();
+    }
+
+    /**
+     * 发布博文到关注流，发件箱同步写入，推送到粉丝收件箱异步执行
+     *
+     * @param authorId  作者id
+     * @param blogId    博文id
+     * @param timestamp 发布时间戳，作为关注流中的分数
+     */
+    public void publish(Long authorId, Long blogId, long timestamp) {
+        // 先写入作者发件箱，推送任务被丢弃时粉丝补齐收件箱和大V拉取仍能读到
+        String outboxKey = FEED_OUTBOX_KEY + authorId;
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.zAdd(outboxKey, timestamp, blogId.toString());
+                conn.zRemRange(outboxKey, 0, -FEED_MAX_SIZE - 1);
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("写入发件箱异常，blogId：{}", blogId, e);
+        }
+        feedExecutor.execute(() -> {
+            try {
+                doPublish(authorId, blogId, timestamp);
+            } catch (Exception e) {
+                log.error("博文推送关注流异常，blogId：{}", blogId, e);
+            }
+        });
+    }
+
+    /**
+     * 滚动分页读取关注流
+     *
+     * @param userId 读者id
+     * @param max    上一页的最小时间戳
+     * @param offset 需要跳过的与max相同时间戳的博文数量
+     * @param count  每页数量
+     * @return 滚动分页结果，list中是博文id
+     */
+    public ScrollResult read(Long userId, long max, int offset, int count) {
+        // 1.记录读者活跃时间，同时查询上次读取时间和收件箱是否正在补齐
+        long now = System.currentTimeMillis();
+        String member = userId.toString();
+        List<Object> states = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.zScore(FEED_ACTIVE_KEY, member);
+            conn.exists(FEED_REBUILDING_KEY + userId);
+            conn.zAdd(FEED_ACTIVE_KEY, now, member);
+            return null;
+        });
+        Double lastRead = (Double) states.get(0);
+        boolean active = lastRead != null && lastRead >= now - activeWindowMillis();
+        String inboxKey = FEED_KEY + userId;
+        // 2.不活跃的读者在后台补齐收件箱，补齐之前从最近关注的人的发件箱归并当前页
+        if (!active || BooleanUtil.isTrue((Boolean) states.get(1))) {
+            if (!active) {
+                rebuildInboxAsync(userId);
+            }
+            return toScrollResult(readCold(userId, inboxKey, max, offset, count), max, offset);
+        }
+        // 3.已有缓存的归并结果，直接分页
+        String mergedKey = FEED_MERGED_KEY + userId;
+        if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(mergedKey))) {
+            return toScrollResult(stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(mergedKey, 0, max, offset, count), max, offset);
+        }
+        // 4.没有关注大V，只读收件箱
+        List<String> bigAuthors = bigFolloweesOf(userId);
+        if (bigAuthors.isEmpty()) {
+            return toScrollResult(stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(inboxKey, 0, max, offset, count), max, offset);
+        }
+        // 5.收件箱与大V发件箱多路归并
+        List<String> sourceKeys = new ArrayList<>(bigAuthors.size() + 1);
+        sourceKeys.add(inboxKey);
+        for (String authorId : bigAuthors) {
+            sourceKeys.add(FEED_OUTBOX_KEY + authorId);
+        }
+        List<ZSetOperations.TypedTuple<String>> current = mergePage(sourceKeys, max, offset, count);
+        // 6.活跃读者会继续翻页，预先把完整的归并结果缓存起来
+        feedExecutor.execute(() -> cacheMerged(mergedKey, sourceKeys));
+        return toScrollResult(current, max, offset);
+    }
+
+    /**
+     * 收件箱补齐之前的读取：收件箱、关注的大V和最近关注的若干人的发件箱一起归并，
+     * 关注的人数再多也只读取FEED_COLD_READ_FOLLOWEES个发件箱，每个只取当前页需要的条数
+     */
+    private List<ZSetOperations.TypedTuple<String>> readCold(Long userId, String inboxKey,
+                                                             long max, int offset, int count) {
+        Set<String> authors = new LinkedHashSet<>(bigFolloweesOf(userId));
+        for (Long authorId : recentFollowees(userId, FEED_COLD_READ_FOLLOWEES)) {
+            authors.add(authorId.toString());
+        }
+        List<String> sourceKeys = new ArrayList<>(authors.size() + 1);
+        sourceKeys.add(inboxKey);
+        for (String authorId : authors) {
+            sourceKeys.add(FEED_OUTBOX_KEY + authorId);
+        }
+        return mergePage(sourceKeys, max, offset, count);
+    }
+
+    /**
+     * 各来源取前offset+count条，多路归并后截取当前页
+     */
+    private List<ZSetOperations.TypedTuple<String>> mergePage(List<String> sourceKeys, long max, int offset, int count) {
+        int limit = offset + count;
+        List<Object> pages = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : sourceKeys) {
+                conn.zRevRangeByScoreWithScores(key, 0, max, 0, limit);
+            }
+            return null;
+        });
+        List<List<ZSetOperations.TypedTuple<String>>> sources = new ArrayList<>(pages.size());
+        for (Object page : pages) {
+            sources.add(toTuples(page));
+        }
+        List<ZSetOperations.TypedTuple<String>> merged = mergeDesc(sources, limit);
+        return offset >= merged.size()
+                ? Collections.emptyList()
+                : merged.subList(offset, merged.size());
+    }
+
+    private void doPublish(Long authorId, Long blogId, long timestamp) {
+        String blog = blogId.toString();
+        String author = authorId.toString();
+        // 1.发件箱已由publish写入，大V只写发件箱，由读者拉取
+        int fans = followService.queryFollowCount(authorId).get("fans");
+        if (fans > pushThreshold) {
+            stringRedisTemplate.opsForSet().add(FEED_BIG_AUTHOR_KEY, author);
+            return;
+        }
+        stringRedisTemplate.opsForSet().remove(FEED_BIG_AUTHOR_KEY, author);
+        // 2.按批推送给活跃粉丝，开启关注关系索引时直接遍历内存中的粉丝
+        long activeSince = System.currentTimeMillis() - activeWindowMillis();
+        FollowGraphIndex graphIndex = followGraphIndex.getIfAvailable();
+        if (graphIndex != null && graphIndex.isReady()) {
+            // 推送模式下粉丝数不超过阈值，先收集再推送，避免在索引的读锁内访问Redis
+            List<Long> fanIds = new ArrayList<>();
+            graphIndex.forEachFollower(authorId, fanIds::add);
+            for (int i = 0; i < fanIds.size(); i += FEED_BATCH_SIZE) {
+                pushToActiveFans(fanIds.subList(i, Math.min(i + FEED_BATCH_SIZE, fanIds.size())),
+                        blog, timestamp, activeSince);
+            }
+            return;
+        }
+        long lastId = 0;
+        while (true) {
+            List<Follow> follows = followService.query()
+                    .select("id", "user_id")
+                    .eq("follow_user_id", authorId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + FEED_BATCH_SIZE)
+                    .list();
+            if (follows.isEmpty()) {
+                return;
+            }
+            pushToActiveFans(follows.stream().map(Follow::getUserId).collect(Collectors.toList()),
+                    blog, timestamp, activeSince);
+            lastId = follows.get(follows.size() - 1).getId();
+        }
+    }
+
+    /**
+     * 推送一批粉丝中的活跃粉丝
+     */
+    private void pushToActiveFans(List<Long> fanIds, String blog, long timestamp, long activeSince) {
+        // 1.一次管道查询这批粉丝的最近活跃时间
+        List<Object> lastReads = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long fanId : fanIds) {
+                conn.zScore(FEED_ACTIVE_KEY, fanId.toString());
+            }
+            return null;
+        });
+        List<Long> activeFans = new ArrayList<>(fanIds.size());
+        for (int i = 0; i < fanIds.size(); i++) {
+            Object lastRead = lastReads.get(i);
+            if (lastRead != null && ((Double) lastRead) >= activeSince) {
+                activeFans.add(fanIds.get(i));
+            }
+        }
+        // 2.一次管道写入活跃粉丝的收件箱并裁剪长度
+        if (!activeFans.isEmpty()) {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long fanId : activeFans) {
+                    String key = FEED_KEY + fanId;
+                    conn.zAdd(key, timestamp, blog);
+                    conn.zRemRange(key, 0, -FEED_MAX_SIZE - 1);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 在后台补齐收件箱，同一读者同时只有一个任务
+     */
+    void rebuildInboxAsync(Long userId) {
+        String key = FEED_REBUILDING_KEY + userId;
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", FEED_REBUILDING_TTL, TimeUnit.SECONDS);
+        if (!BooleanUtil.isTrue(locked)) {
+            return;
+        }
+        feedExecutor.execute(() -> {
+            try {
+                rebuildInbox(userId);
+            } catch (Exception e) {
+                log.error("补齐收件箱异常，userId：{}", userId, e);
+            } finally {
+                stringRedisTemplate.delete(key);
+            }
+        });
+    }
+
+    /**
+     * 从最近关注的人（大V除外）的发件箱补齐收件箱，最多扫描FEED_REBUILD_MAX_FOLLOWEES人，
+     * 每批只把归并后最新的FEED_MAX_SIZE条写入收件箱
+     */
+    void rebuildInbox(Long userId) {
+        Set<String> bigAuthors = stringRedisTemplate.opsForSet().members(FEED_BIG_AUTHOR_KEY);
+        List<String> outboxKeys = recentFollowees(userId, FEED_REBUILD_MAX_FOLLOWEES).stream()
+                .map(String::valueOf)
+                .filter(author -> bigAuthors == null || !bigAuthors.contains(author))
+                .map(author -> FEED_OUTBOX_KEY + author)
+                .collect(Collectors.toList());
+        String inboxKey = FEED_KEY + userId;
+        for (int i = 0; i < outboxKeys.size(); i += FEED_BATCH_SIZE) {
+            List<String> batch = outboxKeys.subList(i, Math.min(i + FEED_BATCH_SIZE, outboxKeys.size()));
+            List<Object> pages = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String key : batch) {
+                    conn.zRevRangeWithScores(key, 0, FEED_MAX_SIZE - 1);
+                }
+                return null;
+            });
+            List<List<ZSetOperations.TypedTuple<String>>> sources = new ArrayList<>(pages.size());
+            for (Object page : pages) {
+                sources.add(toTuples(page));
+            }
+            List<ZSetOperations.TypedTuple<String>> merged = mergeDesc(sources, FEED_MAX_SIZE.intValue());
+            if (!merged.isEmpty()) {
+                stringRedisTemplate.opsForZSet().add(inboxKey, new HashSet<>(merged));
+            }
+        }
+        stringRedisTemplate.opsForZSet().removeRange(inboxKey, 0, -FEED_MAX_SIZE - 1);
+    }
+
+    /**
+     * 查询读者最近关注的人，按关注时间从新到旧
+     */
+    List<Long> recentFollowees(Long userId, int limit) {
+        return followService.query()
+                .select("id", "follow_user_id")
+                .eq("user_id", userId)
+                .orderByDesc("id")
+                .last("LIMIT " + limit)
+                .list()
+                .stream()
+                .map(Follow::getFollowUserId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 查询读者关注的大V
+     */
+    List<String> bigFolloweesOf(Long userId) {
+        Set<String> bigAuthors = stringRedisTemplate.opsForSet().members(FEED_BIG_AUTHOR_KEY);
+        if (CollUtil.isEmpty(bigAuthors)) {
+            return Collections.emptyList();
+        }
+        return followService.query()
+                .select("follow_user_id")
+                .eq("user_id", userId)
+                .in("follow_user_id", bigAuthors)
+                .list()
+                .stream()
+                .map(follow -> follow.getFollowUserId().toString())
+                .collect(Collectors.toList());
+    }
+
+    private void cacheMerged(String mergedKey, List<String> sourceKeys) {
+        try {
+            stringRedisTemplate.opsForZSet().unionAndStore(sourceKeys.get(0), sourceKeys.subList(1, sourceKeys.size()),
+                    mergedKey, RedisZSetCommands.Aggregate.MAX);
+            stringRedisTemplate.opsForZSet().removeRange(mergedKey, 0, -FEED_MAX_SIZE - 1);
+            stringRedisTemplate.expire(mergedKey, FEED_MERGED_TTL, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.error("缓存关注流归并结果异常，key：{}", mergedKey, e);
+        }
+    }
+
+    private long activeWindowMillis() {
+        return TimeUnit.DAYS.toMillis(FEED_ACTIVE_DAYS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ZSetOperations.TypedTuple<String>> toTuples(Object page) {
+        if (page == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>((Collection<ZSetOperations.TypedTuple<String>>) page);
+    }
+
+    /**
+     * 多路归并多个按分数倒序排列的列表，按博文id去重
+     * 分数相同时按成员倒序，与Redis ZREVRANGEBYSCORE的顺序一致
+     *
+     * @param sources 各来源的列表，每个都按分数倒序
+     * @param limit   最多返回的数量
+     * @return 归并后的列表
+     */
+    static List<ZSetOperations.TypedTuple<String>> mergeDesc(List<List<ZSetOperations.TypedTuple<String>>> sources, int limit) {
+        // 堆中保存 [来源下标, 来源内位置]
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+            ZSetOperations.TypedTuple<String> x = sources.get(a[0]).get(a[1]);
+            ZSetOperations.TypedTuple<String> y = sources.get(b[0]).get(b[1]);
+            int c = Double.compare(y.getScore(), x.getScore());
+            return c != 0 ? c : y.getValue().compareTo(x.getValue());
+        });
+        for (int i = 0; i < sources.size(); i++) {
+            if (!sources.get(i).isEmpty()) {
+                heap.add(new int[]{i, 0});
+            }
+        }
+        List<ZSetOperations.TypedTuple<String>> merged = new ArrayList<>(limit);
+        Set<String> seen = new HashSet<>(limit * 2);
+        while (!heap.isEmpty() && merged.size() < limit) {
+            int[] top = heap.poll();
+            List<ZSetOperations.TypedTuple<String>> source = sources.get(top[0]);
+            ZSetOperations.TypedTuple<String> tuple = source.get(top[1]);
+            if (seen.add(tuple.getValue())) {
+                merged.add(new DefaultTypedTuple<>(tuple.getValue(), tuple.getScore()));
+            }
+            if (top[1] + 1 < source.size()) {
+                heap.add(new int[]{top[0], top[1] + 1});
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 把一页数据转换为滚动分页结果
+     * offset为本页中与最小时间戳相同的数量；整页都等于上一页最小时间戳时需要累加上一页的offset
+     */
+    private static ScrollResult toScrollResult(Collection<ZSetOperations.TypedTuple<String>> tuples, long max, int offset) {
+        ScrollResult r = new ScrollResult();
+        if (CollUtil.isEmpty(tuples)) {
+            r.setList(Collections.emptyList());
+            return r;
+        }
+        List<Long> ids = new ArrayList<>(tuples.size());
+        long minTime = 0;
+        int os = 1;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            ids.add(Long.valueOf(tuple.getValue()));
+            long time = tuple.getScore().longValue();
+            if (time == minTime) {
+                os++;
+            } else {
+                minTime = time;
+                os = 1;
+            }
+        }
+        if (minTime == max) {
+            os += offset;
+        }
+        r.setList(ids);
+        r.setMinTime(minTime);
+        r.setOffset(os);
+        return r;
+    }
+}
@@ -0,0 +1,436 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * 不可变的关注关系图，使用CSR（压缩稀疏行）结构保存邻接表
+ * <p>
+ * 用户id映射为连续的下标，关注和粉丝两个方向各用一个 offsets + targets 的int数组保存，
+ * 每行按下标升序排列，查询时不会为每条边创建对象
+ *
+ * @author RainSoul
+ */
+public final class FollowGraph {
+
+    private static final FollowGraph EMPTY = build(new long[0], new long[0], 0);
+    /**
+     * 二度推荐计数表的初始容量上限，候选更多时按需扩容
+     */
+    private static final int MAX_INITIAL_CANDIDATES = 1 << 16;
+
+    /**
+     * 用户id到下标的映射
+     */
+    private final LongIntMap index;
+    /**
+     * 下标到用户id
+     */
+    private final long[] userIds;
+    /**
+     * 关注方向：用户i关注的人为 outTargets[outOffsets[i] .. outOffsets[i+1])
+     */
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    /**
+     * 粉丝方向：用户i的粉丝为 inTargets[inOffsets[i] .. inOffsets[i+1])
+     */
+    private final int[] inOffsets;
+    private final int[] inTargets;
+
+    private FollowGraph(LongIntMap index, long[] userIds, int[] outOffsets, int[] outTargets,
+                        int[] inOffsets, int[] inTargets) {
+        this.index = index;
+        this.userIds = userIds;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.inOffsets = inOffsets;
+        this.inTargets = inTargets;
+    }
+
+    public static FollowGraph empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 由边列表构建关注图，重复的边只保留一条
+     *
+     * @param userIds       每条边的关注者
+     * @param followUserIds 每条边的被关注者
+     * @param size          边的数量
+     * @return 关注图
+     */
+    public static FollowGraph build(long[] userIds, long[] followUserIds, int size) {
+        // 1.分配连续下标
+        LongIntMap index = new LongIntMap(Math.max(16, size / 4));
+        long[] ids = new long[16];
+        int n = 0;
+        int[] src = new int[size];
+        int[] dst = new int[size];
+        for (int i = 0; i < size; i++) {
+            for (int k = 0; k < 2; k++) {
+                long id = k == 0 ? userIds[i] : followUserIds[i];
+                int idx = index.get(id);
+                if (idx < 0) {
+                    idx = n++;
+                    index.put(id, idx);
+                    if (idx == ids.length) {
+                        ids = Arrays.copyOf(ids, ids.length * 2);
+                    }
+                    ids[idx] = id;
+                }
+                if (k == 0) {
+                    src[i] = idx;
+                } else {
+                    dst[i] = idx;
+                }
+            }
+        }
+        ids = Arrays.copyOf(ids, n);
+        // 2.构建关注方向并去重
+        int[] outOffsets = new int[n + 1];
+        int[] outTargets = fill(src, dst, size, n, outOffsets);
+        int edges = dedupe(outOffsets, outTargets, n);
+        outTargets = Arrays.copyOf(outTargets, edges);
+        // 3.由去重后的关注方向构建粉丝方向
+        int[] revSrc = new int[edges];
+        for (int u = 0; u < n; u++) {
+            for (int e = outOffsets[u]; e < outOffsets[u + 1]; e++) {
+                revSrc[e] = u;
+            }
+        }
+        int[] inOffsets = new int[n + 1];
+        int[] inTargets = fill(outTargets, revSrc, edges, n, inOffsets);
+        return new FollowGraph(index, ids, outOffsets, outTargets, inOffsets, inTargets);
+    }
+
+    /**
+     * 计数排序方式填充CSR，并对每行排序
+     */
+    private static int[] fill(int[] from, int[] to, int size, int n, int[] offsets) {
+        for (int i = 0; i < size; i++) {
+            offsets[from[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] cursor = Arrays.copyOf(offsets, n);
+        int[] targets = new int[size];
+        for (int i = 0; i < size; i++) {
+            targets[cursor[from[i]]++] = to[i];
+        }
+        for (int i = 0; i < n; i++) {
+            Arrays.sort(targets, offsets[i], offsets[i + 1]);
+        }
+        return targets;
+    }
+
+    /**
+     * 原地去掉每行中重复的目标，返回去重后的边数
+     */
+    private static int dedupe(int[] offsets, int[] targets, int n) {
+        int write = 0;
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            int end = offsets[i + 1];
+            offsets[i] = write;
+            for (int e = start; e < end; e++) {
+                if (e == start || targets[e] != targets[e - 1]) {
+                    targets[write++] = targets[e];
+                }
+            }
+            start = end;
+        }
+        offsets[n] = write;
+        return write;
+    }
+
+    public int nodeCount() {
+        return userIds.length;
+    }
+
+    public int edgeCount() {
+        return outTargets.length;
+    }
+
+    public int followerCount(long userId) {
+        int u = index.get(userId);
+        return u < 0 ? 0 : inOffsets[u + 1] - inOffsets[u];
+    }
+
+    public int followeeCount(long userId) {
+        int u = index.get(userId);
+        return u < 0 ? 0 : outOffsets[u + 1] - outOffsets[u];
+    }
+
+    public void forEachFollower(long userId, LongConsumer action) {
+        forEach(userId, inOffsets, inTargets, action);
+    }
+
+    public void forEachFollowee(long userId, LongConsumer action) {
+        forEach(userId, outOffsets, outTargets, action);
+    }
+
+    private void forEach(long userId, int[] offsets, int[] targets, LongConsumer action) {
+        int u = index.get(userId);
+        if (u < 0) {
+            return;
+        }
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            action.accept(userIds[targets[e]]);
+        }
+    }
+
+    /**
+     * 遍历全部边，用于增量重建
+     */
+    public void forEachEdge(EdgeConsumer action) {
+        for (int u = 0; u < userIds.length; u++) {
+            for (int e = outOffsets[u]; e < outOffsets[u + 1]; e++) {
+                action.accept(userIds[u], userIds[outTargets[e]]);
+            }
+        }
+    }
+
+    public boolean isFollowing(long userId, long followUserId) {
+        int u = index.get(userId);
+        int f = index.get(followUserId);
+        if (u < 0 || f < 0) {
+            return false;
+        }
+        return Arrays.binarySearch(outTargets, outOffsets[u], outOffsets[u + 1], f) >= 0;
+    }
+
+    /**
+     * 共同关注：两行有序数组做归并求交集
+     *
+     * @param a   用户a
+     * @param b   用户b
+     * @param out 结果缓冲区，最多写入out.length个
+     * @return 写入的数量
+     */
+    public int intersectFollowees(long a, long b, long[] out) {
+        int u = index.get(a);
+        int v = index.get(b);
+        if (u < 0 || v < 0) {
+            return 0;
+        }
+        int i = outOffsets[u];
+        int iEnd = outOffsets[u + 1];
+        int j = outOffsets[v];
+        int jEnd = outOffsets[v + 1];
+        int count = 0;
+        while (i < iEnd && j < jEnd && count < out.length) {
+            int x = outTargets[i];
+            int y = outTargets[j];
+            if (x == y) {
+                out[count++] = userIds[x];
+                i++;
+                j++;
+            } else if (x < y) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 二度关系推荐：统计“我关注的人所关注的人”出现的次数，排除自己和已关注的人，取出现次数最多的前limit个
+     * 计数使用按本次候选规模分配的开放寻址表，请求结束即可回收，不会为每个线程常驻一个按用户数分配的数组；
+     * 已关注的人在有序的行内二分查找排除
+     *
+     * @param userId 用户id
+     * @param limit  最多返回的数量
+     * @return 推荐的用户id，按共同关注数倒序
+     */
+    public long[] recommend(long userId, int limit) {
+        int u = index.get(userId);
+        if (u < 0 || limit <= 0) {
+            return new long[0];
+        }
+        int from = outOffsets[u];
+        int to = outOffsets[u + 1];
+        // 候选数不超过二度边数
+        long frontier = 0;
+        for (int e = from; e < to; e++) {
+            int f = outTargets[e];
+            frontier += outOffsets[f + 1] - outOffsets[f];
+        }
+        LongIntMap counts = new LongIntMap((int) Math.min(frontier, MAX_INITIAL_CANDIDATES));
+        for (int e = from; e < to; e++) {
+            int f = outTargets[e];
+            for (int e2 = outOffsets[f]; e2 < outOffsets[f + 1]; e2++) {
+                int c = outTargets[e2];
+                if (c != u && Arrays.binarySearch(outTargets, from, to, c) < 0) {
+                    counts.increment(c);
+                }
+            }
+        }
+        // 取出候选和计数，小顶堆选出前limit个
+        int[] candidates = new int[counts.size];
+        int[] scores = new int[counts.size];
+        int n = 0;
+        for (int i = 0; i < counts.keys.length; i++) {
+            if (counts.keys[i] != LongIntMap.EMPTY_KEY) {
+                candidates[n] = (int) counts.keys[i];
+                scores[n++] = counts.values[i];
+            }
+        }
+        int k = Math.min(limit, n);
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for (int t = 0; t < n; t++) {
+            if (heapSize < k) {
+                heap[heapSize++] = t;
+                siftUp(heap, heapSize - 1, scores);
+            } else if (scores[t] > scores[heap[0]]) {
+                heap[0] = t;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+        long[] result = new long[heapSize];
+        for (int r = heapSize - 1; r >= 0; r--) {
+            result[r] = userIds[candidates[heap[0]]];
+            heap[0] = heap[r];
+            siftDown(heap, r, scores);
+        }
+        return result;
+    }
+
+    private static void siftUp(int[] heap, int i, int[] counts) {
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (counts[heap[p]] <= counts[heap[i]]) {
+                return;
+            }
+            swap(heap, p, i);
+            i = p;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, int[] counts) {
+        int i = 0;
+        while (true) {
+            int l = 2 * i + 1;
+            if (l >= size) {
+                return;
+            }
+            int m = l + 1 < size && counts[heap[l + 1]] < counts[heap[l]] ? l + 1 : l;
+            if (counts[heap[i]] <= counts[heap[m]]) {
+                return;
+            }
+            swap(heap, i, m);
+            i = m;
+        }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    /**
+     * 估算占用的堆内存（字节）
+     */
+    public long estimatedBytes() {
+        return 8L * userIds.length
+                + 4L * (outOffsets.length + outTargets.length + inOffsets.length + inTargets.length)
+                + index.estimatedBytes();
+    }
+
+    @FunctionalInterface
+    public interface EdgeConsumer {
+        void accept(long userId, long followUserId);
+    }
+
+    /**
+     * long到int的开放寻址哈希表，不存在时返回-1
+     */
+    static final class LongIntMap {
+        private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+        private long[] keys;
+        private int[] values;
+        private int size;
+        private int mask;
+
+        LongIntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 2) - 1) << 1;
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY_KEY);
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        int get(long key) {
+            int i = mix(key) & mask;
+            while (true) {
+                long k = keys[i];
+                if (k == key) {
+                    return values[i];
+                }
+                if (k == EMPTY_KEY) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                allocate(keys.length * 2);
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != EMPTY_KEY) {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            int i = mix(key) & mask;
+            while (keys[i] != EMPTY_KEY && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == EMPTY_KEY) {
+                size++;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        /**
+         * 计数加一，不存在时从0开始，返回加一后的值
+         */
+        int increment(long key) {
+            int i = mix(key) & mask;
+            while (true) {
+                long k = keys[i];
+                if (k == key) {
+                    return ++values[i];
+                }
+                if (k == EMPTY_KEY) {
+                    put(key, 1);
+                    return 1;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        long estimatedBytes() {
+            return 12L * keys.length;
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Follow;
+import com.hmdp.mapper.FollowMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * JVM内的关注关系索引，开启hmdp.follow-graph.enabled后生效
+ * <p>
+ * 基础数据是不可变的{@link FollowGraph}快照，从tb_follow按id增量加载；
+ * 本实例的关注、取关事件先记在增量层里，查询时叠加在快照之上，定时合并进新快照。
+ * 合并期间冻结旧增量层，新事件写入新的增量层，查询依次叠加两层。
+ * 其他实例的新增关注靠按id增量加载补齐，取关则等待定时全量重建
+ *
+ * @author RainSoul
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "hmdp.follow-graph", name = "enabled", havingValue = "true")
+public class FollowGraphIndex {
+    /**
+     * 每批从tb_follow加载的行数
+     */
+    private static final int LOAD_BATCH_SIZE = 10000;
+
+    private final FollowMapper followMapper;
+    private final ScheduledExecutorService refreshExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile FollowGraph graph = FollowGraph.empty();
+    /**
+     * 正在合并进新快照的增量层，没有合并时为null
+     */
+    private Delta frozen;
+    /**
+     * 接收新事件的增量层
+     */
+    private Delta current = new Delta();
+    /**
+     * 快照已加载到的tb_follow最大id
+     */
+    private long loadedId;
+    private long lastFullLoad;
+
+    /**
+     * 增量合并的间隔
+     */
+    @Value("${hmdp.follow-graph.refresh-seconds:60}")
+    private long refreshSeconds;
+
+    /**
+     * 全量重建的间隔，用于同步其他实例的取关
+     */
+    @Value("${hmdp.follow-graph.full-reload-minutes:360}")
+    private long fullReloadMinutes;
+
+    /**
+     * 首次加载完成前为false，调用方应回退到数据库
+     */
+    private volatile boolean ready;
+
+    public FollowGraphIndex(FollowMapper followMapper) {
+        this.followMapper = followMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        refreshExecutor.schedule(this::refresh, 0, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 关注事件，数据库写入成功后调用
+     */
+    public void onFollow(long userId, long followUserId) {
+        lock.writeLock().lock();
+        try {
+            if (!present(userId, followUserId, 2)) {
+                current.add(userId, followUserId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 取关事件，数据库删除成功后调用
+     */
+    public void onUnfollow(long userId, long followUserId) {
+        lock.writeLock().lock();
+        try {
+            if (present(userId, followUserId, 2)) {
+                current.remove(userId, followUserId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 遍历用户的粉丝，快照部分不创建对象
+     */
+    public void forEachFollower(long userId, LongConsumer action) {
+        forEach(userId, true, action);
+    }
+
+    /**
+     * 遍历用户关注的人
+     */
+    public void forEachFollowee(long userId, LongConsumer action) {
+        forEach(userId, false, action);
+    }
+
+    public boolean isFollowing(long userId, long followUserId) {
+        lock.readLock().lock();
+        try {
+            return present(userId, followUserId, 2);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 共同关注，两人都没有未合并的增量时直接在快照上做有序归并
+     *
+     * @param a     用户a
+     * @param b     用户b
+     * @param limit 最多返回的数量
+     * @return 共同关注的用户id
+     */
+    public long[] intersectFollowees(long a, long b, int limit) {
+        lock.readLock().lock();
+        try {
+            if (!touched(a, false) && !touched(b, false)) {
+                long[] out = new long[Math.min(limit, Math.min(graph.followeeCount(a), graph.followeeCount(b)))];
+                int n = graph.intersectFollowees(a, b, out);
+                return n == out.length ? out : Arrays.copyOf(out, n);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // 有增量时退化为集合求交，增量只涉及少数用户
+        Set<Long> followees = new HashSet<>();
+        forEachFollowee(a, followees::add);
+        long[] out = new long[Math.min(limit, followees.size())];
+        int[] n = {0};
+        forEachFollowee(b, id -> {
+            if (n[0] < out.length && followees.contains(id)) {
+                out[n[0]++] = id;
+            }
+        });
+        return n[0] == out.length ? out : Arrays.copyOf(out, n[0]);
+    }
+
+    /**
+     * 二度关系推荐，在快照上计算后剔除增量中已关注的人
+     *
+     * @param userId 用户id
+     * @param limit  最多返回的数量
+     * @return 推荐的用户id，按共同关注数倒序
+     */
+    public long[] recommend(long userId, int limit) {
+        // 多取一些，给增量中新关注的人留出余量
+        long[] candidates = graph.recommend(userId, limit * 2);
+        long[] out = new long[Math.min(limit, candidates.length)];
+        int n = 0;
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < candidates.length && n < out.length; i++) {
+                if (!present(userId, candidates[i], 2)) {
+                    out[n++] = candidates[i];
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    public int followerCount(long userId) {
+        lock.readLock().lock();
+        try {
+            if (!touched(userId, true)) {
+                return graph.followerCount(userId);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        int[] count = {0};
+        forEachFollower(userId, id -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * 把增量合并进新快照，并加载tb_follow中的新行
+     */
+    private void refresh() {
+        long start = System.currentTimeMillis();
+        try {
+            boolean full = start - lastFullLoad >= TimeUnit.MINUTES.toMillis(fullReloadMinutes);
+            FollowGraph base;
+            Delta delta;
+            long fromId;
+            lock.writeLock().lock();
+            try {
+                frozen = current;
+                current = new Delta();
+                base = graph;
+                delta = frozen;
+                fromId = loadedId;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            EdgeBuffer edges = new EdgeBuffer(full ? 1024 : base.edgeCount() + delta.size() + 1024);
+            long toId = maxFollowId();
+            if (full) {
+                fromId = 0;
+            } else {
+                // 快照中的边减去取关的边
+                base.forEachEdge((u, f) -> {
+                    if (!delta.removed(u, f, false)) {
+                        edges.add(u, f);
+                    }
+                });
+                delta.forEachAdded(edges::add);
+            }
+            loadRange(fromId, toId, delta, edges);
+            FollowGraph next = FollowGraph.build(edges.users, edges.followUsers, edges.size);
+            lock.writeLock().lock();
+            try {
+                graph = next;
+                frozen = null;
+                loadedId = toId;
+                if (full) {
+                    lastFullLoad = start;
+                }
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.debug("关注关系索引已刷新，节点数：{}，边数：{}，内存约{}MB，耗时{}ms，全量：{}",
+                    next.nodeCount(), next.edgeCount(), next.estimatedBytes() >> 20,
+                    System.currentTimeMillis() - start, full);
+        } catch (Exception e) {
+            log.error("刷新关注关系索引异常", e);
+            // 合并失败时把冻结的增量放回去，下次再合并
+            lock.writeLock().lock();
+            try {
+                if (frozen != null) {
+                    frozen.addAll(current);
+                    current = frozen;
+                    frozen = null;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            if (!refreshExecutor.isShutdown()) {
+                refreshExecutor.schedule(this::refresh, refreshSeconds, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * 按id分批加载 (fromId, toId] 范围内的关注关系
+     */
+    private void loadRange(long fromId, long toId, Delta delta, EdgeBuffer edges) {
+        long lastId = fromId;
+        while (lastId < toId) {
+            List<Follow> follows = followMapper.selectList(new QueryWrapper<Follow>()
+                    .select("id", "user_id", "follow_user_id")
+                    .gt("id", lastId)
+                    .le("id", toId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + LOAD_BATCH_SIZE));
+            if (follows.isEmpty()) {
+                return;
+            }
+            for (Follow follow : follows) {
+                long u = follow.getUserId();
+                long f = follow.getFollowUserId();
+                if (!delta.removed(u, f, false)) {
+                    edges.add(u, f);
+                }
+            }
+            lastId = follows.get(follows.size() - 1).getId();
+        }
+    }
+
+    private long maxFollowId() {
+        List<Follow> follows = followMapper.selectList(new QueryWrapper<Follow>()
+                .select("id")
+                .orderByDesc("id")
+                .last("LIMIT 1"));
+        return follows.isEmpty() ? 0 : follows.get(0).getId();
+    }
+
+    /**
+     * 依次叠加快照和增量层遍历邻居
+     * 每个邻居只在最后一次引入它的层输出一次，保证不重复
+     */
+    private void forEach(long userId, boolean followers, LongConsumer action) {
+        lock.readLock().lock();
+        try {
+            Delta[] layers = layers();
+            if (layers.length == 0 || !touched(userId, followers)) {
+                if (followers) {
+                    graph.forEachFollower(userId, action);
+                } else {
+                    graph.forEachFollowee(userId, action);
+                }
+                return;
+            }
+            LongConsumer fromBase = id -> {
+                if (lastAddedLayer(layers, userId, id, followers) < 0 && visibleAfter(layers, 0, userId, id, followers)) {
+                    action.accept(id);
+                }
+            };
+            if (followers) {
+                graph.forEachFollower(userId, fromBase);
+            } else {
+                graph.forEachFollowee(userId, fromBase);
+            }
+            for (int i = 0; i < layers.length; i++) {
+                for (Long id : layers[i].added(userId, followers)) {
+                    if (lastAddedLayer(layers, userId, id, followers) == i
+                            && visibleAfter(layers, i + 1, userId, id, followers)) {
+                        action.accept(id);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 叠加快照和前upTo个增量层后，关注关系是否存在，调用方需持有锁
+     */
+    private boolean present(long userId, long followUserId, int upTo) {
+        boolean p = graph.isFollowing(userId, followUserId);
+        Delta[] layers = layers();
+        for (int i = 0; i < Math.min(upTo, layers.length); i++) {
+            if (layers[i].removed(userId, followUserId, false)) {
+                p = false;
+            }
+            if (layers[i].added(userId, false).contains(followUserId)) {
+                p = true;
+            }
+        }
+        return p;
+    }
+
+    private static boolean visibleAfter(Delta[] layers, int from, long userId, long other, boolean followers) {
+        for (int i = from; i < layers.length; i++) {
+            if (layers[i].removed(userId, other, followers)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lastAddedLayer(Delta[] layers, long userId, long other, boolean followers) {
+        for (int i = layers.length - 1; i >= 0; i--) {
+            if (layers[i].added(userId, followers).contains(other)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean touched(long userId, boolean followers) {
+        return (frozen != null && frozen.touched(userId, followers)) || current.touched(userId, followers);
+    }
+
+    private Delta[] layers() {
+        return frozen == null ? new Delta[]{current} : new Delta[]{frozen, current};
+    }
+
+    /**
+     * 一层关注关系增量，同一层内的关注和取关互相抵消，只由持有写锁的线程修改
+     */
+    private static final class Delta {
+        private final Map<Long, Set<Long>> addedOut = new HashMap<>();
+        private final Map<Long, Set<Long>> addedIn = new HashMap<>();
+        private final Map<Long, Set<Long>> removedOut = new HashMap<>();
+        private final Map<Long, Set<Long>> removedIn = new HashMap<>();
+
+        void add(long u, long f) {
+            if (unlink(removedOut, u, f)) {
+                unlink(removedIn, f, u);
+                return;
+            }
+            link(addedOut, u, f);
+            link(addedIn, f, u);
+        }
+
+        void remove(long u, long f) {
+            if (unlink(addedOut, u, f)) {
+                unlink(addedIn, f, u);
+                return;
+            }
+            link(removedOut, u, f);
+            link(removedIn, f, u);
+        }
+
+        void addAll(Delta later) {
+            later.addedOut.forEach((u, fs) -> fs.forEach(f -> add(u, f)));
+            later.removedOut.forEach((u, fs) -> fs.forEach(f -> remove(u, f)));
+        }
+
+        Set<Long> added(long userId, boolean followers) {
+            return (followers ? addedIn : addedOut).getOrDefault(userId, Collections.emptySet());
+        }
+
+        boolean removed(long userId, long other, boolean followers) {
+            Set<Long> set = (followers ? removedIn : removedOut).get(userId);
+            return set != null && set.contains(other);
+        }
+
+        boolean touched(long userId, boolean followers) {
+            return followers
+                    ? addedIn.containsKey(userId) || removedIn.containsKey(userId)
+                    : addedOut.containsKey(userId) || removedOut.containsKey(userId);
+        }
+
+        void forEachAdded(FollowGraph.EdgeConsumer action) {
+            addedOut.forEach((u, fs) -> fs.forEach(f -> action.accept(u, f)));
+        }
+
+        int size() {
+            int n = 0;
+            for (Set<Long> fs : addedOut.values()) {
+                n += fs.size();
+            }
+            return n;
+        }
+
+        private static void link(Map<Long, Set<Long>> map, long from, long to) {
+            map.computeIfAbsent(from, k -> new HashSet<>()).add(to);
+        }
+
+        private static boolean unlink(Map<Long, Set<Long>> map, long from, long to) {
+            Set<Long> set = map.get(from);
+            if (set == null || !set.remove(to)) {
+                return false;
+            }
+            if (set.isEmpty()) {
+                map.remove(from);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 可扩容的边数组
+     */
+    private static final class EdgeBuffer {
+        private long[] users;
+        private long[] followUsers;
+        private int size;
+
+        EdgeBuffer(int capacity) {
+            users = new long[capacity];
+            followUsers = new long[capacity];
+        }
+
+        void add(long userId, long followUserId) {
+            if (size == users.length) {
+                users = Arrays.copyOf(users, size * 2);
+                followUsers = Arrays.copyOf(followUsers, size * 2);
+            }
+            users[size] = userId;
+            followUsers[size++] = followUserId;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 按内容寻址的图片存储
+ * <p>
+ * 上传的数据边读边写入存储根目录下的临时文件，同时计算SHA-256；
+ * 写完后原子移动到 /blogs/{前2位}/{3~4位}/{sha256}.{后缀}，相同内容的图片只保存一份。
+ * 缩略图由有界线程池异步生成，保存在 /thumbs 下相同的相对路径，jpg以外的格式输出为png，队列满时放弃生成
+ *
+ * @author RainSoul
+ */
+@Slf4j
+@Component
+public class ImageStore {
+    private static final Set<String> ALLOWED_SUFFIXES = new HashSet<>(Arrays.asList(
+            "jpg", "jpeg", "png", "gif", "bmp", "webp"));
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern CONTENT_NAME = Pattern.compile("[0-9a-f]{64}");
+    private static final String TMP_DIR = ".tmp";
+    public static final String THUMB_DIR = "thumbs";
+
+    private final Path root;
+    private final Path tmpDir;
+    private final int thumbnailWidth;
+    private final ThreadPoolExecutor thumbnailExecutor;
+
+    public ImageStore(@Value("${hmdp.upload.root:" + SystemConstants.IMAGE_UPLOAD_DIR + "}") String root,
+                      @Value("${hmdp.upload.thumbnail-width:200}") int thumbnailWidth,
+                      @Value("${hmdp.upload.thumbnail-threads:2}") int thumbnailThreads,
+                      @Value("${hmdp.upload.thumbnail-queue:200}") int thumbnailQueue) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.tmpDir = this.root.resolve(TMP_DIR);
+        this.thumbnailWidth = thumbnailWidth;
+        this.thumbnailExecutor = new ThreadPoolExecutor(thumbnailThreads, thumbnailThreads,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(thumbnailQueue),
+                (task, executor) -> log.warn("缩略图队列已满，放弃生成"));
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        // 临时目录与存储目录在同一个文件系统上，才能原子移动
+        Files.createDirectories(tmpDir);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        thumbnailExecutor.shutdown();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * 保存上传的图片
+     *
+     * @param in               上传的数据，由调用方关闭
+     * @param originalFilename 原始文件名，用于取得后缀
+     * @return 相对存储根目录的路径，如 /blogs/ab/cd/{sha256}.jpg
+     * @throws IllegalArgumentException 后缀不是支持的图片格式
+     */
+    public String store(InputStream in, String originalFilename) throws IOException {
+        String suffix = StrUtil.subAfter(originalFilename, ".", true).toLowerCase();
+        if (!ALLOWED_SUFFIXES.contains(suffix)) {
+            throw new IllegalArgumentException("不支持的图片格式");
+        }
+        // 1.边写临时文件边计算SHA-256
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".tmp");
+        String hash;
+        try {
+            hash = copyAndHash(in, tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        // 2.相同内容已经存在时直接使用
+        String name = StrUtil.format("/blogs/{}/{}/{}.{}", hash.substring(0, 2), hash.substring(2, 4), hash, suffix);
+        Path target = resolve(name);
+        if (Files.exists(target)) {
+            Files.deleteIfExists(tmp);
+            log.debug("图片已存在，{}", name);
+            return name;
+        }
+        // 3.原子移动到内容地址，目录只在第一次用到时创建
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // 相同内容被同时上传
+            Files.deleteIfExists(tmp);
+        }
+        // 4.异步生成缩略图，jpg不支持透明通道，其余格式统一输出为png
+        boolean jpg = "jpg".equals(suffix) || "jpeg".equals(suffix);
+        String thumbName = "/" + THUMB_DIR + StrUtil.subBefore(name, ".", true) + (jpg ? ".jpg" : ".png");
+        thumbnailExecutor.execute(() -> createThumbnail(target, resolve(thumbName), jpg));
+        return name;
+    }
+
+    /**
+     * 把相对路径解析为存储根目录下的文件，只用于内部生成的路径
+     */
+    public Path resolve(String name) {
+        return root.resolve(StrUtil.removePrefix(name, "/")).normalize();
+    }
+
+    /**
+     * 把请求中传入的相对路径解析为存储根目录下的文件
+     *
+     * @return 路径非法、越出存储根目录或指向临时目录时返回null
+     */
+    public Path resolveSafely(String name) {
+        if (StrUtil.isBlank(name) || name.indexOf('\0') >= 0) {
+            return null;
+        }
+        Path path;
+        try {
+            path = resolve(name);
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        // normalize之后仍然以根目录开头，说明没有通过 .. 或绝对路径跳出
+        if (!path.startsWith(root) || path.equals(root) || path.startsWith(tmpDir)) {
+            return null;
+        }
+        return path;
+    }
+
+    /**
+     * 文件名是否为内容的SHA-256，这样的文件内容不会变化
+     */
+    public static boolean isContentAddressed(Path path) {
+        String name = StrUtil.subBefore(path.getFileName().toString(), ".", true);
+        return CONTENT_NAME.matcher(name).matches();
+    }
+
+    private String copyAndHash(InputStream in, Path tmp) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        ReadableByteChannel source = Channels.newChannel(in);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer.array(), 0, buffer.limit());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+        return HexUtil.encodeHexStr(digest.digest());
+    }
+
+    /**
+     * 按宽度等比缩小，原图不超过该宽度时不生成；同样先写临时文件再原子移动
+     */
+    private void createThumbnail(Path source, Path target, boolean jpg) {
+        Path tmp = null;
+        try {
+            if (Files.exists(target)) {
+                return;
+            }
+            BufferedImage image = ImageIO.read(source.toFile());
+            if (image == null || image.getWidth() <= thumbnailWidth) {
+                return;
+            }
+            int height = Math.max(1, image.getHeight() * thumbnailWidth / image.getWidth());
+            BufferedImage thumb = new BufferedImage(thumbnailWidth, height,
+                    jpg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = thumb.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(image, 0, 0, thumbnailWidth, height, null);
+            } finally {
+                g.dispose();
+            }
+            tmp = Files.createTempFile(tmpDir, "thumb-", ".tmp");
+            ImageIO.write(thumb, jpg ? "jpg" : "png", tmp.toFile());
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            log.debug("缩略图已存在，{}", target);
+        } catch (Exception e) {
+            log.warn("生成缩略图失败，{}", source, e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    log.warn("删除临时文件失败，{}", tmp, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页的游标编解码
+ * 游标由上一页最后一条数据的排序键和id组成，对客户端不透明
+ *
+ * @author RainSoul
+ */
+public class PageCursor {
+
+    private static final String SEPARATOR = ":";
+
+    private PageCursor() {
+    }
+
+    /**
+     * 编码游标
+     *
+     * @param keys 排序键，最后一个一般是id
+     * @return 不透明的游标字符串
+     */
+    public static String encode(long... keys) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                sb.append(SEPARATOR);
+            }
+            sb.append(keys[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标
+     *
+     * @param cursor 游标字符串
+     * @param size   排序键的数量
+     * @return 排序键，游标为空返回null
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    public static long[] decode(String cursor, int size) {
+        if (StrUtil.isBlank(cursor)) {
+            return null;
+        }
+        String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR);
+        if (parts.length != size) {
+            throw new IllegalArgumentException("无效的游标：" + cursor);
+        }
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = Long.parseLong(parts[i]);
+        }
+        return keys;
+    }
+}
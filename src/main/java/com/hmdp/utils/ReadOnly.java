@@ -0,0 +1,20 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记只读的业务方法，开启读写分离后其中的查询发往从库
+ * <p>
+ * 以下情况仍然读主库：处于读写事务中、执行写语句、当前用户刚写过数据、没有健康的从库、
+ * 在DataSourceRouting.readPrimary中执行（查库后回填缓存的查询必须使用，否则从库的旧数据会在缓存中保留整个TTL）。
+ * 通过代理生效，同一个类内部的this调用不会切换
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ReadOnly {
+}
@@ -0,0 +1,30 @@
+package com.hmdp.utils;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * 进入@ReadOnly方法时标记当前线程为只读
+ * 优先级最高，保证在@Transactional开启事务之前设置，只读事务取连接时就能路由到从库
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(prefix = "hmdp.datasource", name = "read-write-split", havingValue = "true")
+public class ReadOnlyAspect {
+
+    @Around("@annotation(com.hmdp.utils.ReadOnly) || @within(com.hmdp.utils.ReadOnly)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        DataSourceRouting.enterReadOnly();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            DataSourceRouting.exitReadOnly();
+        }
+    }
+}
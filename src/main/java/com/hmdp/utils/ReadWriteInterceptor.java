@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_PRIMARY_UNTIL;
+
+/**
+ * 写语句强制走主库，并给当前登录用户打上粘主库标记
+ * <p>
+ * 标记写在登录token的Hash里，RefreshTokenInterceptor每个请求本来就会读取这个Hash，读请求不增加Redis往返；
+ * 标记在执行写语句之前写入，客户端收到响应后立刻发起的读请求一定能看到
+ */
+@Slf4j
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class ReadWriteInterceptor implements Interceptor {
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long stickyMillis;
+
+    public ReadWriteInterceptor(StringRedisTemplate stringRedisTemplate, long stickyMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.stickyMillis = stickyMillis;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        markSticky();
+        DataSourceRouting.enterWrite();
+        try {
+            return invocation.proceed();
+        } finally {
+            DataSourceRouting.exitWrite();
+        }
+    }
+
+    private void markSticky() {
+        String tokenKey = DataSourceRouting.getTokenKey();
+        // 后台线程、未登录请求没有token；同一个请求只标记一次
+        if (tokenKey == null || DataSourceRouting.isMarked()) {
+            return;
+        }
+        long primaryUntil = System.currentTimeMillis() + stickyMillis;
+        DataSourceRouting.markWritten(primaryUntil);
+        try {
+            stringRedisTemplate.opsForHash().put(tokenKey, LOGIN_USER_PRIMARY_UNTIL, String.valueOf(primaryUntil));
+        } catch (Exception e) {
+            // 标记失败只影响之后的请求可能读到旧数据，不影响本次写入
+            log.warn("写入粘主库标记失败：{}", tokenKey, e);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 主从路由数据源，需要包在LazyConnectionDataSourceProxy里使用
+ * <p>
+ * 延迟到第一条语句执行时才取真实连接，这时事务同步已经就绪，读写事务中的语句都走主库；
+ * 其余情况由DataSourceRouting判断是否可以读从库，多个从库之间轮询。
+ * 后台定时检查每个从库的复制延迟，连接失败、复制中断或延迟超过阈值的从库暂停使用，恢复后自动加回
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+    public static final String PRIMARY = "primary";
+    private static final String[] LAG_QUERIES = {"SHOW REPLICA STATUS", "SHOW SLAVE STATUS"};
+    private static final String[] LAG_COLUMNS = {"Seconds_Behind_Source", "Seconds_Behind_Master"};
+
+    private final DataSource primary;
+    private final Map<String, DataSource> replicas;
+    private final long maxLagSeconds;
+    private final long checkIntervalSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    /**
+     * 当前健康的从库，检查线程整体替换；启动后第一次检查完成之前为空，读请求全部走主库
+     */
+    private volatile List<String> healthy = new ArrayList<>();
+    /**
+     * 每个从库上次检查的结果，状态变化时才输出日志，只由检查线程访问
+     */
+    private final Map<String, ReplicaState> states = new HashMap<>();
+    private ScheduledExecutorService checker;
+
+    public ReadWriteRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                      long maxLagSeconds, long checkIntervalSeconds) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.maxLagSeconds = maxLagSeconds;
+        this.checkIntervalSeconds = checkIntervalSeconds;
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        if (replicas.isEmpty()) {
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkReplicas, 0, checkIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!DataSourceRouting.isReplicaAllowed()) {
+            return PRIMARY;
+        }
+        // 读写事务中的读也走主库，保证读到本事务的写入
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        List<String> list = healthy;
+        if (list.isEmpty()) {
+            return PRIMARY;
+        }
+        return list.get(Math.floorMod(next.getAndIncrement(), list.size()));
+    }
+
+    private void checkReplicas() {
+        List<String> list = new ArrayList<>(replicas.size());
+        for (Map.Entry<String, DataSource> entry : replicas.entrySet()) {
+            String name = entry.getKey();
+            ReplicaState last = states.getOrDefault(name, ReplicaState.UNKNOWN);
+            ReplicaState state;
+            try {
+                long lag = lagSeconds(entry.getValue());
+                if (lag < 0) {
+                    state = ReplicaState.STOPPED;
+                    if (last != state) {
+                        log.warn("从库 {} 复制已中断，暂停读取", name);
+                    }
+                } else if (lag > maxLagSeconds) {
+                    state = ReplicaState.LAGGING;
+                    if (last != state) {
+                        log.warn("从库 {} 复制延迟 {} 秒，超过 {} 秒，暂停读取", name, lag, maxLagSeconds);
+                    }
+                } else {
+                    state = ReplicaState.HEALTHY;
+                    if (last != state) {
+                        log.info("从库 {} 可用，复制延迟 {} 秒", name, lag);
+                    }
+                    list.add(name);
+                }
+            } catch (Exception e) {
+                // 包括启动后从未可用的从库，至少输出一次原因
+                state = ReplicaState.FAILED;
+                if (last != state) {
+                    log.warn("从库 {} 检查失败，暂停读取", name, e);
+                }
+            }
+            states.put(name, state);
+        }
+        healthy = list;
+    }
+
+    /**
+     * 查询从库复制延迟，秒；复制中断时返回-1。
+     * 新版本MySQL使用SHOW REPLICA STATUS，旧版本只支持SHOW SLAVE STATUS；
+     * 没有复制状态说明不是从库（如本地直接指向主库），视为没有延迟
+     */
+    private static long lagSeconds(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            SQLException last = null;
+            for (String query : LAG_QUERIES) {
+                try (ResultSet rs = statement.executeQuery(query)) {
+                    if (!rs.next()) {
+                        return 0;
+                    }
+                    for (String column : LAG_COLUMNS) {
+                        try {
+                            long lag = rs.getLong(column);
+                            return rs.wasNull() ? -1 : lag;
+                        } catch (SQLException ignored) {
+                            // 列名随版本不同，换下一个
+                        }
+                    }
+                    return -1;
+                } catch (SQLException e) {
+                    last = e;
+                }
+            }
+            throw last;
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+        close(primary);
+        for (DataSource dataSource : replicas.values()) {
+            close(dataSource);
+        }
+    }
+
+    private static void close(DataSource dataSource) throws Exception {
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    private enum ReplicaState {
+        UNKNOWN, HEALTHY, STOPPED, LAGGING, FAILED
+    }
+}
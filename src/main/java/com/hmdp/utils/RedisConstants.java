@@ -11,12 +11,121 @@ public class RedisConstants {
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+
+    /**
+     * 用户资料缓存，由UserServiceImpl.updateById和注册时删除；直接用update(wrapper)修改tb_user时不会删除，
+     * 昵称、头像最多滞后这么久（分钟）
+     */
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
+    public static final Long COUNTER_FLUSH_INTERVAL = 5L;
+    public static final Long LOCK_COUNTER_FLUSH_TTL = 30L;
+
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKE_DELTA_KEY = "blog:like:delta";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String LOCK_BLOG_HOT_KEY = "lock:blog:hot";
+    public static final Long LOCK_BLOG_HOT_TTL = 30L;
+    /**
+     * 正在重建的临时热榜的key，点赞时同步更新其中已写入的博文
+     */
+    public static final String BLOG_HOT_REBUILDING_KEY = "blog:hot:rebuilding";
+    /**
+     * 临时热榜和重建标记的有效期，重建中途退出时自动清理
+     */
+    public static final Long BLOG_HOT_REBUILD_TTL = 10L;
+    /**
+     * 热榜时间衰减：每经过多少秒新发布的博文多得1分，0表示只按点赞数排序
+     */
+    public static final Long BLOG_HOT_DECAY_SECONDS = 0L;
+    public static final String BLOG_COMMENTS_DELTA_KEY = "blog:comments:delta";
+    public static final String CACHE_BLOG_COMMENTS_KEY = "cache:blog:comments:";
+    public static final Long CACHE_BLOG_COMMENTS_TTL = 10L;
+    /**
+     * 评论第一页缓存的加载标记，查询数据库前写入，期间发表评论会删除它，加载结果因此不写入缓存
+     */
+    public static final String CACHE_BLOG_COMMENTS_LOADING_KEY = "cache:blog:comments:loading:";
+    public static final Long CACHE_BLOG_COMMENTS_LOADING_TTL = 10L;
     public static final String FEED_KEY = "feed:";
+    /**
+     * 每个收件箱最多保留的博文数量，超出部分按时间从旧到新裁剪
+     */
+    public static final Long FEED_MAX_SIZE = 1000L;
+    public static final String FEED_OUTBOX_KEY = "feed:out:";
+    public static final String FEED_BIG_AUTHOR_KEY = "feed:big";
+    public static final String FEED_ACTIVE_KEY = "feed:active";
+    /**
+     * 超过该天数没有读取关注流的用户不再接收推送
+     */
+    public static final Long FEED_ACTIVE_DAYS = 7L;
+    public static final String FEED_MERGED_KEY = "feed:merged:";
+    public static final Long FEED_MERGED_TTL = 30L;
+    /**
+     * 收件箱正在后台补齐的标记，期间的读取仍然从发件箱归并
+     */
+    public static final String FEED_REBUILDING_KEY = "feed:rebuilding:";
+    public static final Long FEED_REBUILDING_TTL = 60L;
+    /**
+     * 收件箱补齐之前，一次读取最多归并的最近关注的人数
+     */
+    public static final Integer FEED_COLD_READ_FOLLOWEES = 200;
+    /**
+     * 补齐收件箱时最多扫描的最近关注的人数
+     */
+    public static final Integer FEED_REBUILD_MAX_FOLLOWEES = 2000;
+    public static final String FOLLOWS_KEY = "follows:";
+    public static final Long FOLLOWS_TTL = 30L;
+    /**
+     * 关注集合中的占位成员，没有关注任何人的用户也缓存一个集合，避免每次都查询数据库
+     */
+    public static final String FOLLOWS_PLACEHOLDER = "0";
+    /**
+     * 关注集合的加载标记，读取数据库前写入，期间关注/取关会删除它，加载结果因此作废
+     */
+    public static final String FOLLOWS_LOADING_KEY = "follows:loading:";
+    public static final Long FOLLOWS_LOADING_TTL = 10L;
+    public static final String FOLLOW_COUNT_KEY = "follow:count:";
+    public static final Long FOLLOW_COUNT_TTL = 30L;
+    public static final String FOLLOW_FANS_DELTA_KEY = "follow:fans:delta";
+    public static final String FOLLOW_FOLLOWEE_DELTA_KEY = "follow:followee:delta";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    /**
+     * 每个类型的版本号，类型下的店铺增加或减少时INCR，旧版本的分页缓存不再被读取，等待过期
+     */
+    public static final String SHOP_TYPE_PAGE_VERSION_KEY = "shop:type:version:";
+    public static final String CACHE_SHOP_TYPE_PAGE_KEY = "cache:shop:type:";
+    public static final Long CACHE_SHOP_TYPE_PAGE_TTL = 30L;
+    public static final String LOCK_SHOP_GEO_KEY = "lock:shop:geo:";
+    public static final Long LOCK_SHOP_GEO_TTL = 30L;
     public static final String USER_SIGN_KEY = "sign:";
+    public static final String UV_KEY = "uv:";
+    public static final Long UV_TTL = 400L;
+    public static final Long UV_FLUSH_INTERVAL = 2L;
+    public static final String DAU_KEY = "dau:";
+    public static final String DAU_NEW_KEY = "dau:new:";
+    public static final Long DAU_TTL = 400L;
+    public static final String CACHE_ANALYTICS_KEY = "cache:analytics:";
+    public static final String ANALYTICS_TMP_KEY = "analytics:tmp:";
+    /**
+     * 包含今天的统计结果还在变化，只缓存几分钟；完全是历史日期的结果缓存一天
+     */
+    public static final Long CACHE_ANALYTICS_TODAY_TTL = 5L;
+    public static final Long CACHE_ANALYTICS_TTL = 1440L;
+    /**
+     * 店铺类型的版本号，修改tb_shop_type后INCR，各实例发现变化后重新加载
+     */
+    public static final String SHOP_TYPE_VERSION_KEY = "shop-type:version";
+    public static final Long SHOP_TYPE_CHECK_INTERVAL = 10L;
+    /**
+     * 登录用户Hash中的字段，值为该用户读主库的截止时间戳，用户写入数据后设置
+     */
+    public static final String LOGIN_USER_PRIMARY_UNTIL = "primaryUntil";
 }
@@ -11,6 +11,7 @@ import javax.servlet.http.HttpServletResponse;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_PRIMARY_UNTIL;
 import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 
 /**
@@ -19,9 +20,11 @@ import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
  */
 public class RefreshTokenInterceptor implements HandlerInterceptor {
     private StringRedisTemplate stringRedisTemplate;
+    private DauTracker dauTracker;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
+    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate, DauTracker dauTracker) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.dauTracker = dauTracker;
     }
 
     /**
@@ -55,6 +58,11 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
         // 保存UserDTO对象到线程本地存储
         UserHolder.saveUser(userDTO);
+        // 读写分离：刚写过数据的用户在截止时间前读主库
+        Object primaryUntil = userMap.get(LOGIN_USER_PRIMARY_UNTIL);
+        DataSourceRouting.beginRequest(key, primaryUntil == null ? 0 : Long.parseLong(primaryUntil.toString()));
+        // 记录日活，每个用户每天只有第一次请求会写Redis
+        dauTracker.markActive(userDTO.getId());
         // 设置Redis中用户信息键的过期时间
         stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
         // 继续执行下一个拦截器或处理器
@@ -66,5 +74,6 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         // 移除用户
         UserHolder.removeUser();
+        DataSourceRouting.clear();
     }
 }
@@ -0,0 +1,98 @@
+package com.hmdp.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单个请求在Redis和SQL上花费的时间与调用次数
+ * <p>
+ * 由RequestTimingFilter在每个请求开始时创建并保存在线程本地（与hmdp.timing.enabled无关），TimedStringRedisTemplate与SqlMetricsInterceptor累加；
+ * 不在请求线程中的调用（定时任务、异步线程）取不到实例，不做统计。
+ * 测试中直接调用service时，可以用start()和clear()包住被测代码，同样会检查N+1
+ */
+public class RequestTiming {
+    private static final ThreadLocal<RequestTiming> tl = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private long redisNanos;
+    private int redisCalls;
+    private int redisDepth;
+    private long sqlNanos;
+    private int sqlCalls;
+    private Map<String, Integer> sqlCounts;
+
+    public static RequestTiming start() {
+        RequestTiming timing = new RequestTiming();
+        tl.set(timing);
+        return timing;
+    }
+
+    public static RequestTiming current() {
+        return tl.get();
+    }
+
+    public static void clear() {
+        tl.remove();
+    }
+
+    /**
+     * 进入一次Redis调用，嵌套的调用（如管道、脚本内部再次经过模板）只按最外层计时
+     */
+    public void enterRedis() {
+        redisDepth++;
+    }
+
+    public void exitRedis(long startNanos) {
+        if (--redisDepth == 0) {
+            redisNanos += System.nanoTime() - startNanos;
+            redisCalls++;
+        }
+    }
+
+    public void addSql(long nanos) {
+        sqlNanos += nanos;
+        sqlCalls++;
+    }
+
+    /**
+     * 记录一次SQL指纹的执行
+     *
+     * @return 本次请求中该指纹已经执行的次数，包括这一次
+     */
+    public int countSql(String fingerprint) {
+        if (sqlCounts == null) {
+            sqlCounts = new HashMap<>();
+        }
+        return sqlCounts.merge(fingerprint, 1, Integer::sum);
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getRedisNanos() {
+        return redisNanos;
+    }
+
+    public int getRedisCalls() {
+        return redisCalls;
+    }
+
+    public long getSqlNanos() {
+        return sqlNanos;
+    }
+
+    public int getSqlCalls() {
+        return sqlCalls;
+    }
+
+    /**
+     * Server-Timing响应头，处理耗时为到目前为止的总耗时减去Redis和SQL
+     */
+    public String toServerTiming() {
+        long total = System.nanoTime() - startNanos;
+        return String.format("redis;dur=%.2f;desc=\"%d\", sql;dur=%.2f;desc=\"%d\", handler;dur=%.2f, total;dur=%.2f",
+                redisNanos / 1e6, redisCalls, sqlNanos / 1e6, sqlCalls,
+                Math.max(0, total - redisNanos - sqlNanos) / 1e6, total / 1e6);
+    }
+}
@@ -0,0 +1,145 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求耗时分解
+ * <p>
+ * 最外层的过滤器，请求开始时创建RequestTiming，结束后按接口记录到EndpointMetrics，超过阈值时输出慢请求日志；
+ * Server-Timing响应头必须在响应提交之前写入，因此在开始写响应体或sendError时添加，没有响应体的请求在结束时添加。
+ * SqlMetricsInterceptor的N+1检查依赖请求内的RequestTiming，所以过滤器总是注册；
+ * 关闭hmdp.timing.enabled时只创建和清理RequestTiming，不统计接口耗时也不输出响应头
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestTimingFilter extends OncePerRequestFilter {
+    private static final String SERVER_TIMING = "Server-Timing";
+
+    private final EndpointMetrics endpointMetrics;
+    private final boolean enabled;
+    private final long slowNanos;
+    private final boolean serverTimingHeader;
+
+    public RequestTimingFilter(EndpointMetrics endpointMetrics,
+                               @Value("${hmdp.timing.enabled:false}") boolean enabled,
+                               @Value("${hmdp.timing.slow-threshold-ms:500}") long slowThresholdMs,
+                               @Value("${hmdp.timing.server-timing-header:true}") boolean serverTimingHeader) {
+        this.endpointMetrics = endpointMetrics;
+        this.enabled = enabled;
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+        this.serverTimingHeader = serverTimingHeader;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RequestTiming timing = RequestTiming.start();
+        if (!enabled) {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                RequestTiming.clear();
+            }
+            return;
+        }
+        TimingResponse timingResponse = new TimingResponse(response, serverTimingHeader ? timing : null);
+        try {
+            chain.doFilter(request, timingResponse);
+        } finally {
+            timingResponse.addServerTiming();
+            RequestTiming.clear();
+            long total = System.nanoTime() - timing.getStartNanos();
+            String endpoint = endpoint(request);
+            endpointMetrics.record(endpoint, timing, total, response.getStatus());
+            if (total >= slowNanos) {
+                log.warn("慢请求 {} {}，状态 {}，总耗时 {} ms，Redis {} 次 {} ms，SQL {} 次 {} ms，其余 {} ms",
+                        endpoint, request.getRequestURI(), response.getStatus(), millis(total),
+                        timing.getRedisCalls(), millis(timing.getRedisNanos()),
+                        timing.getSqlCalls(), millis(timing.getSqlNanos()),
+                        millis(Math.max(0, total - timing.getRedisNanos() - timing.getSqlNanos())));
+            }
+        }
+    }
+
+    /**
+     * 按路径模板归类，避免 /shop/1、/shop/2 各占一项；没有匹配到处理器的请求归为一类
+     */
+    private static String endpoint(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern == null ? "[unmatched]" : pattern);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    private static class TimingResponse extends HttpServletResponseWrapper {
+        private final RequestTiming timing;
+        private boolean added;
+
+        private TimingResponse(HttpServletResponse response, RequestTiming timing) {
+            super(response);
+            this.timing = timing;
+        }
+
+        private void addServerTiming() {
+            if (timing != null && !added && !isCommitted()) {
+                setHeader(SERVER_TIMING, timing.toServerTiming());
+            }
+            added = true;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addServerTiming();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addServerTiming();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addServerTiming();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addServerTiming();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addServerTiming();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            addServerTiming();
+            super.sendRedirect(location);
+        }
+    }
+}
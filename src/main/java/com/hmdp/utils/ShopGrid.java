@@ -0,0 +1,386 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * 不可变的店铺网格空间索引
+ * <p>
+ * 经纬度按固定大小的网格分桶，店铺按网格编号排序后保存在并列的基本类型数组中，
+ * 每个网格对应数组中的一段连续区间。查询时从所在网格开始一圈圈向外扩展，
+ * 扫描过程中用定长的最大堆保留距离最近的k个，排序规则为 (距离, 店铺id)，保证分页稳定
+ *
+ * @author RainSoul
+ */
+public final class ShopGrid {
+
+    /**
+     * 网格边长，单位度，约1.1公里
+     */
+    static final double CELL_DEGREES = 0.01;
+
+    private static final double EARTH_RADIUS = 6_371_000;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS / 180;
+
+    private static final ShopGrid EMPTY = build(new long[0], new double[0], new double[0],
+            new long[0], new int[0], new long[0], 0);
+
+    /**
+     * 排好序的非空网格编号，以及每个网格在店铺数组中的起始位置
+     */
+    private final long[] cellKeys;
+    private final int[] cellStarts;
+
+    private final long[] ids;
+    private final double[] xs;
+    private final double[] ys;
+    private final long[] typeIds;
+    private final int[] scores;
+    private final long[] prices;
+
+    private ShopGrid(long[] cellKeys, int[] cellStarts, long[] ids, double[] xs, double[] ys,
+                     long[] typeIds, int[] scores, long[] prices) {
+        this.cellKeys = cellKeys;
+        this.cellStarts = cellStarts;
+        this.ids = ids;
+        this.xs = xs;
+        this.ys = ys;
+        this.typeIds = typeIds;
+        this.scores = scores;
+        this.prices = prices;
+    }
+
+    public static ShopGrid empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 由并列数组构建网格，均价为空时传-1
+     */
+    public static ShopGrid build(long[] ids, double[] xs, double[] ys, long[] typeIds, int[] scores,
+                                 long[] prices, int size) {
+        // 1.计算每个店铺的网格编号，并按网格编号、店铺id排序
+        long[] keys = new long[size];
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = cellKey(cell(xs[i]), cell(ys[i]));
+            order[i] = i;
+        }
+        sort(order, 0, size, keys, ids);
+        // 2.按排序后的顺序复制到新数组
+        long[] sIds = new long[size];
+        double[] sXs = new double[size];
+        double[] sYs = new double[size];
+        long[] sTypes = new long[size];
+        int[] sScores = new int[size];
+        long[] sPrices = new long[size];
+        long[] cellKeys = new long[size];
+        int[] cellStarts = new int[size + 1];
+        int cells = 0;
+        for (int i = 0; i < size; i++) {
+            int j = order[i];
+            sIds[i] = ids[j];
+            sXs[i] = xs[j];
+            sYs[i] = ys[j];
+            sTypes[i] = typeIds[j];
+            sScores[i] = scores[j];
+            sPrices[i] = prices[j];
+            if (cells == 0 || cellKeys[cells - 1] != keys[j]) {
+                cellKeys[cells] = keys[j];
+                cellStarts[cells++] = i;
+            }
+        }
+        cellStarts[cells] = size;
+        return new ShopGrid(Arrays.copyOf(cellKeys, cells), Arrays.copyOf(cellStarts, cells + 1),
+                sIds, sXs, sYs, sTypes, sScores, sPrices);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * 遍历全部店铺，用于增量重建
+     */
+    public void forEach(ShopConsumer action) {
+        for (int i = 0; i < ids.length; i++) {
+            action.accept(ids[i], xs[i], ys[i], typeIds[i], scores[i], prices[i]);
+        }
+    }
+
+    /**
+     * 查询半径范围内满足条件的最近k个店铺
+     *
+     * @param x       经度
+     * @param y       纬度
+     * @param radius  半径，单位米
+     * @param filter  属性过滤条件
+     * @param exclude 需要跳过的店铺id，可以为空
+     * @param k       最多返回的数量
+     * @return 按 (距离, id) 升序排列的结果
+     */
+    public Hits nearest(double x, double y, double radius, Filter filter, LongPredicate exclude, int k) {
+        Hits hits = new Hits(k);
+        if (k <= 0 || ids.length == 0) {
+            return hits.sorted();
+        }
+        int cx = cell(x);
+        int cy = cell(y);
+        double cosLat = Math.cos(Math.toRadians(Math.min(89.9, Math.abs(y) + radius / METERS_PER_DEGREE)));
+        int maxRing = (int) Math.ceil(radius / (METERS_PER_DEGREE * CELL_DEGREES * Math.max(cosLat, 0.01))) + 1;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // 1.扫描第ring圈的网格
+            for (int dx = -ring; dx <= ring; dx++) {
+                boolean edge = dx == -ring || dx == ring;
+                int step = edge ? 1 : 2 * ring;
+                for (int dy = -ring; dy <= ring; dy += Math.max(step, 1)) {
+                    scanCell(cellKey(cx + dx, cy + dy), x, y, radius, filter, exclude, hits);
+                }
+            }
+            // 2.圈外的点至少比这个距离远，已经凑够k个且第k个更近时停止
+            double bound = ringBound(x, y, cx, cy, ring, cosLat);
+            if (bound > radius || (hits.size == k && hits.worstDistance() <= bound)) {
+                break;
+            }
+        }
+        return hits.sorted();
+    }
+
+    private void scanCell(long key, double x, double y, double radius, Filter filter, LongPredicate exclude, Hits hits) {
+        int c = Arrays.binarySearch(cellKeys, key);
+        if (c < 0) {
+            return;
+        }
+        for (int i = cellStarts[c]; i < cellStarts[c + 1]; i++) {
+            if (!filter.test(typeIds[i], scores[i], prices[i])) {
+                continue;
+            }
+            if (exclude != null && exclude.test(ids[i])) {
+                continue;
+            }
+            double d = distance(x, y, xs[i], ys[i]);
+            if (d <= radius) {
+                hits.offer(ids[i], d);
+            }
+        }
+    }
+
+    /**
+     * 查询点到第ring圈网格外边界的最短距离
+     */
+    private static double ringBound(double x, double y, int cx, int cy, int ring, double cosLat) {
+        double west = x - (cx - ring) * CELL_DEGREES;
+        double east = (cx + ring + 1) * CELL_DEGREES - x;
+        double south = y - (cy - ring) * CELL_DEGREES;
+        double north = (cy + ring + 1) * CELL_DEGREES - y;
+        double lon = Math.min(west, east) * cosLat;
+        double lat = Math.min(south, north);
+        return Math.min(lon, lat) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * 两点间的球面距离，单位米
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(x2 - x1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static int cell(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 按 (网格编号, 店铺id) 对下标做快速排序，避免装箱
+     */
+    private static void sort(int[] order, int from, int to, long[] keys, long[] ids) {
+        while (to - from > 16) {
+            int mid = order[(from + to) >>> 1];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (compare(order[i], mid, keys, ids) < 0) {
+                    i++;
+                }
+                while (compare(order[j], mid, keys, ids) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+            // 先递归较短的一侧，控制栈深度
+            if (j - from < to - i) {
+                sort(order, from, j + 1, keys, ids);
+                from = i;
+            } else {
+                sort(order, i, to, keys, ids);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            int v = order[i];
+            int j = i - 1;
+            while (j >= from && compare(order[j], v, keys, ids) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = v;
+        }
+    }
+
+    private static int compare(int a, int b, long[] keys, long[] ids) {
+        int c = Long.compare(keys[a], keys[b]);
+        return c != 0 ? c : Long.compare(ids[a], ids[b]);
+    }
+
+    @FunctionalInterface
+    public interface ShopConsumer {
+        void accept(long id, double x, double y, long typeId, int score, long price);
+    }
+
+    /**
+     * 属性过滤条件，字段取默认值时表示不限制
+     */
+    public static final class Filter {
+        public static final Filter ANY = new Filter(0, 0, 0, Long.MAX_VALUE);
+
+        private final long typeId;
+        private final int minScore;
+        private final long minPrice;
+        private final long maxPrice;
+
+        /**
+         * @param typeId   店铺类型，0表示不限
+         * @param minScore 最低评分（乘10后的值），0表示不限
+         * @param minPrice 最低均价，0表示不限
+         * @param maxPrice 最高均价，Long.MAX_VALUE表示不限
+         */
+        public Filter(long typeId, int minScore, long minPrice, long maxPrice) {
+            this.typeId = typeId;
+            this.minScore = minScore;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+        }
+
+        public boolean test(long typeId, int score, long price) {
+            if (this.typeId != 0 && this.typeId != typeId) {
+                return false;
+            }
+            if (score < minScore) {
+                return false;
+            }
+            if (minPrice == 0 && maxPrice == Long.MAX_VALUE) {
+                return true;
+            }
+            // 没有均价的店铺不参与价格区间筛选
+            return price >= 0 && price >= minPrice && price <= maxPrice;
+        }
+    }
+
+    /**
+     * 查询结果，内部是以 (距离, id) 排序的定长最大堆，sorted之后变为升序
+     */
+    public static final class Hits {
+        private final long[] ids;
+        private final double[] distances;
+        private int size;
+
+        Hits(int capacity) {
+            ids = new long[Math.max(capacity, 0)];
+            distances = new double[Math.max(capacity, 0)];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long id(int i) {
+            return ids[i];
+        }
+
+        public double distance(int i) {
+            return distances[i];
+        }
+
+        double worstDistance() {
+            return distances[0];
+        }
+
+        /**
+         * 合并另一组候选，保留最近的capacity个
+         */
+        public void offer(long id, double distance) {
+            if (size < ids.length) {
+                ids[size] = id;
+                distances[size] = distance;
+                siftUp(size++);
+            } else if (ids.length > 0 && less(id, distance, ids[0], distances[0])) {
+                ids[0] = id;
+                distances[0] = distance;
+                siftDown(0, size);
+            }
+        }
+
+        /**
+         * 堆排序为升序，之后不能再offer
+         */
+        public Hits sorted() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            return this;
+        }
+
+        private static boolean less(long id1, double d1, long id2, double d2) {
+            return d1 < d2 || (d1 == d2 && id1 < id2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int p = (i - 1) >>> 1;
+                if (!less(ids[p], distances[p], ids[i], distances[i])) {
+                    return;
+                }
+                swap(p, i);
+                i = p;
+            }
+        }
+
+        private void siftDown(int i, int n) {
+            while (true) {
+                int l = 2 * i + 1;
+                if (l >= n) {
+                    return;
+                }
+                int m = l + 1 < n && less(ids[l], distances[l], ids[l + 1], distances[l + 1]) ? l + 1 : l;
+                if (!less(ids[i], distances[i], ids[m], distances[m])) {
+                    return;
+                }
+                swap(i, m);
+                i = m;
+            }
+        }
+
+        private void swap(int i, int j) {
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double d = distances[i];
+            distances[i] = distances[j];
+            distances[j] = d;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 店铺内存索引的增量加载
+ * <p>
+ * 子类持有不可变的快照；本实例的新增、修改先记在覆盖表里，由子类在查询时与快照合并。
+ * 定时按 (update_time, id) 增量加载其他实例的修改，与覆盖表一起交给子类合并进新快照，并定期全量重建
+ *
+ * @param <T> 覆盖表中的店铺
+ * @author RainSoul
+ */
+@Slf4j
+public abstract class ShopIndexLoader<T> {
+    /**
+     * 每批从tb_shop加载的行数
+     */
+    private static final int LOAD_BATCH_SIZE = 5000;
+
+    private final ShopMapper shopMapper;
+    private final String name;
+    private final String[] columns;
+    private final long refreshSeconds;
+    private final long fullReloadMinutes;
+    private final ScheduledExecutorService refreshExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * 尚未合并进快照的店铺
+     */
+    protected final Map<Long, T> overrides = new ConcurrentHashMap<>();
+    /**
+     * 已加载到的 (update_time, id)，下次从这里开始增量加载
+     */
+    private LocalDateTime loadedTime;
+    private long loadedId;
+    private long lastFullLoad;
+    private volatile boolean ready;
+
+    /**
+     * @param shopMapper        店铺mapper
+     * @param name              索引名称，用于日志
+     * @param columns           需要加载的列，必须包含id和update_time
+     * @param refreshSeconds    增量加载的间隔
+     * @param fullReloadMinutes 全量重建的间隔
+     */
+    protected ShopIndexLoader(ShopMapper shopMapper, String name, String[] columns,
+                              long refreshSeconds, long fullReloadMinutes) {
+        this.shopMapper = shopMapper;
+        this.name = name;
+        this.columns = columns;
+        this.refreshSeconds = refreshSeconds;
+        this.fullReloadMinutes = fullReloadMinutes;
+    }
+
+    @PostConstruct
+    public void init() {
+        refreshExecutor.schedule(this::refresh, 0, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 把数据库中的一行转换为覆盖表中的店铺
+     *
+     * @return null表示该店铺不参与索引
+     */
+    protected abstract T convert(Shop shop);
+
+    /**
+     * 用旧快照中未修改的店铺加上修改过的店铺构建新快照并替换
+     *
+     * @param full    是否全量重建，为true时忽略旧快照
+     * @param changed 修改过的店铺
+     * @return 新快照中的店铺数
+     */
+    protected abstract int rebuild(boolean full, Map<Long, T> changed);
+
+    /**
+     * 增量加载数据库中的修改，并把覆盖表合并进新快照
+     */
+    private void refresh() {
+        long start = System.currentTimeMillis();
+        try {
+            // 1.读取上次之后修改过的店铺，首次和到达全量间隔时重新加载全部
+            boolean full = loadedTime == null
+                    || start - lastFullLoad >= TimeUnit.MINUTES.toMillis(fullReloadMinutes);
+            Map<Long, T> changed = new HashMap<>();
+            LoadCursor cursor = full
+                    ? loadAll(changed)
+                    : loadChanged(loadedTime, loadedId, changed);
+            // 2.覆盖表中的修改优先，合并后只移除期间没有再次修改的
+            Map<Long, T> merged = new HashMap<>(overrides);
+            changed.putAll(merged);
+            if (!full && changed.isEmpty()) {
+                return;
+            }
+            // 3.由子类构建新快照
+            int size = rebuild(full, changed);
+            merged.forEach(overrides::remove);
+            if (cursor.time != null) {
+                loadedTime = cursor.time;
+                loadedId = cursor.id;
+            }
+            if (full) {
+                lastFullLoad = start;
+            }
+            ready = true;
+            log.debug("{}已刷新，店铺数：{}，本次修改：{}，耗时{}ms，全量：{}",
+                    name, size, changed.size(), System.currentTimeMillis() - start, full);
+        } catch (Exception e) {
+            log.error("刷新{}异常", name, e);
+        } finally {
+            if (!refreshExecutor.isShutdown()) {
+                refreshExecutor.schedule(this::refresh, refreshSeconds, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * 按id分批加载全部店铺
+     *
+     * @return 最大的 (update_time, id)，作为下次增量加载的起点
+     */
+    private LoadCursor loadAll(Map<Long, T> changed) {
+        LoadCursor max = new LoadCursor();
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select(columns)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + LOAD_BATCH_SIZE));
+            if (shops.isEmpty()) {
+                return max;
+            }
+            for (Shop shop : shops) {
+                put(changed, shop);
+                LocalDateTime time = shop.getUpdateTime();
+                if (time != null && (max.time == null || !time.isBefore(max.time))) {
+                    max.time = time;
+                    max.id = shop.getId();
+                }
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+        }
+    }
+
+    /**
+     * 按 (update_time, id) 分批加载在游标之后修改的店铺
+     * update_time精确到秒，同一秒内晚提交的较小id可能被跳过，由定时全量加载兜底
+     *
+     * @return 最后一条的 (update_time, id)，没有修改时time为空
+     */
+    private LoadCursor loadChanged(LocalDateTime sinceTime, long sinceId, Map<Long, T> changed) {
+        LoadCursor last = new LoadCursor();
+        LocalDateTime lastTime = sinceTime;
+        long lastId = sinceId;
+        while (true) {
+            LocalDateTime time = lastTime;
+            long id = lastId;
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select(columns)
+                    .and(w -> w.gt("update_time", time).or(o -> o.eq("update_time", time).gt("id", id)))
+                    .orderByAsc("update_time", "id")
+                    .last("LIMIT " + LOAD_BATCH_SIZE));
+            if (shops.isEmpty()) {
+                return last;
+            }
+            shops.forEach(shop -> put(changed, shop));
+            Shop tail = shops.get(shops.size() - 1);
+            lastTime = tail.getUpdateTime();
+            lastId = tail.getId();
+            last.time = lastTime;
+            last.id = lastId;
+        }
+    }
+
+    private void put(Map<Long, T> changed, Shop shop) {
+        T value = convert(shop);
+        if (value != null) {
+            changed.put(shop.getId(), value);
+        }
+    }
+
+    /**
+     * 增量加载的游标 (update_time, id)
+     */
+    private static final class LoadCursor {
+        private LocalDateTime time;
+        private long id;
+    }
+}
@@ -0,0 +1,690 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * 不可变的店铺名称倒排索引
+ * <p>
+ * 文本先归一化（全角转半角、转小写、去掉标点和空白），再切分为相邻两个字符的二元组作为词项，
+ * 中文不需要分词即可支持任意位置的子串匹配；名称额外索引单个字符，用于单字查询。
+ * 每类词项的倒排表按词项连续保存在一个int数组中（CSR）：名称、名称开头、商圈和地址各一份，名称完全相同用哈希表查找。
+ * <p>
+ * 店铺在索引内按 (评分 降序, id 升序) 排列，倒排表的顺序就是同一匹配档次内的排名顺序。
+ * 查询按 完全相同 > 名称前缀 > 名称包含 > 商圈或地址包含 的档次依次求交集并校验子串，
+ * 凑够需要的数量就停止，常见关键字也只需要扫描倒排表的开头
+ *
+ * @author RainSoul
+ */
+public final class ShopNameIndex {
+
+    /**
+     * 匹配档次，越大排名越靠前
+     */
+    static final int SCORE_EXACT = 3;
+    static final int SCORE_PREFIX = 2;
+    static final int SCORE_NAME = 1;
+    static final int SCORE_OTHER = 0;
+
+    private static final ShopNameIndex EMPTY = build(new long[0], new String[0], new String[0],
+            null, new int[0], 0);
+
+    private final long[] ids;
+    private final String[] names;
+    private final String[] areas;
+    private final String[] addresses;
+    private final int[] scores;
+
+    /**
+     * 名称的单字和二元组、名称开头的单字和二元组、商圈和地址的二元组
+     */
+    private final Postings nameIndex;
+    private final Postings headIndex;
+    private final Postings otherIndex;
+
+    /**
+     * 名称完全相同的哈希表：exactTable[hash]为链表头（店铺下标+1），exactNext为链表的下一个，链表按店铺下标升序
+     */
+    private final int[] exactTable;
+    private final int[] exactNext;
+
+    private ShopNameIndex(long[] ids, String[] names, String[] areas, String[] addresses, int[] scores,
+                          Postings nameIndex, Postings headIndex, Postings otherIndex,
+                          int[] exactTable, int[] exactNext) {
+        this.ids = ids;
+        this.names = names;
+        this.areas = areas;
+        this.addresses = addresses;
+        this.scores = scores;
+        this.nameIndex = nameIndex;
+        this.headIndex = headIndex;
+        this.otherIndex = otherIndex;
+        this.exactTable = exactTable;
+        this.exactNext = exactNext;
+    }
+
+    public static ShopNameIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 由并列数组构建索引，只使用前size个元素
+     *
+     * @param ids       店铺id
+     * @param names     名称
+     * @param areas     商圈
+     * @param addresses 地址，为null时不索引地址
+     * @param scores    店铺评分，用于同一档次内排序
+     */
+    public static ShopNameIndex build(long[] ids, String[] names, String[] areas, String[] addresses,
+                                      int[] scores, int size) {
+        // 1.按 (评分 降序, id 升序) 排列
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> scores[a] != scores[b]
+                ? Integer.compare(scores[b], scores[a])
+                : Long.compare(ids[a], ids[b]));
+        long[] docIds = new long[size];
+        String[] docNames = new String[size];
+        String[] docAreas = new String[size];
+        String[] docAddresses = addresses == null ? null : new String[size];
+        int[] docScores = new int[size];
+        int maxTerms = 2;
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            docIds[i] = ids[from];
+            docNames[i] = normalize(names[from]);
+            docAreas[i] = normalize(areas[from]);
+            if (docAddresses != null) {
+                docAddresses[i] = normalize(addresses[from]);
+            }
+            docScores[i] = scores[from];
+            int other = docAreas[i].length() + (docAddresses == null ? 0 : docAddresses[i].length());
+            maxTerms = Math.max(maxTerms, Math.max(2 * docNames[i].length(), other));
+        }
+        // 2.三类倒排表
+        Postings nameIndex = Postings.build(size, maxTerms, (doc, buffer) -> {
+            String name = docNames[doc];
+            int n = 0;
+            for (int i = 0; i < name.length(); i++) {
+                buffer[n++] = unigram(name.charAt(i));
+                if (i + 1 < name.length()) {
+                    buffer[n++] = bigram(name.charAt(i), name.charAt(i + 1));
+                }
+            }
+            return n;
+        });
+        Postings headIndex = Postings.build(size, 2, (doc, buffer) -> {
+            String name = docNames[doc];
+            if (name.isEmpty()) {
+                return 0;
+            }
+            buffer[0] = unigram(name.charAt(0));
+            if (name.length() == 1) {
+                return 1;
+            }
+            buffer[1] = bigram(name.charAt(0), name.charAt(1));
+            return 2;
+        });
+        Postings otherIndex = Postings.build(size, maxTerms, (doc, buffer) -> {
+            int n = appendBigrams(docAreas[doc], buffer, 0);
+            return docAddresses == null ? n : appendBigrams(docAddresses[doc], buffer, n);
+        });
+        // 3.名称哈希表，倒序插入到链表头，链表就是升序
+        int[] exactTable = new int[Integer.highestOneBit(Math.max(size, 8)) << 1];
+        int[] exactNext = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            int slot = docNames[i].hashCode() & (exactTable.length - 1);
+            exactNext[i] = exactTable[slot];
+            exactTable[slot] = i + 1;
+        }
+        return new ShopNameIndex(docIds, docNames, docAreas, docAddresses, docScores,
+                nameIndex, headIndex, otherIndex, exactTable, exactNext);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int termCount() {
+        return nameIndex.terms.length + headIndex.terms.length + otherIndex.terms.length;
+    }
+
+    /**
+     * 估算的堆内存占用，单位字节
+     */
+    public long estimatedBytes() {
+        long bytes = nameIndex.bytes() + headIndex.bytes() + otherIndex.bytes()
+                + 4L * (scores.length + exactTable.length + exactNext.length) + 8L * ids.length;
+        for (int i = 0; i < ids.length; i++) {
+            bytes += 2L * (names[i].length() + areas[i].length()) + 96;
+            if (addresses != null) {
+                bytes += 2L * addresses[i].length() + 48;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 依次回调索引中的每个店铺，文本为归一化后的值
+     */
+    public void forEach(DocConsumer consumer) {
+        for (int i = 0; i < ids.length; i++) {
+            consumer.accept(ids[i], names[i], areas[i], addresses == null ? "" : addresses[i], scores[i]);
+        }
+    }
+
+    /**
+     * 查询包含关键字的店铺，结果合并进hits；hits装满后停止，所以需要在合并其他来源之前调用
+     *
+     * @param query   归一化后的关键字，见{@link #normalize(String)}
+     * @param exclude 需要跳过的店铺id，可以为空
+     * @param hits    保留排名最高的若干个
+     */
+    public void search(String query, LongPredicate exclude, Hits hits) {
+        if (query.isEmpty() || ids.length == 0 || hits.isFull()) {
+            return;
+        }
+        int[] queryTerms = queryTerms(query);
+        // 1.名称完全相同
+        for (int i = exactTable[query.hashCode() & (exactTable.length - 1)]; i != 0; i = exactNext[i - 1]) {
+            int doc = i - 1;
+            if (names[doc].equals(query) && !excluded(exclude, doc)) {
+                hits.offer(ids[doc], SCORE_EXACT, scores[doc]);
+                if (hits.isFull()) {
+                    return;
+                }
+            }
+        }
+        // 2.名称前缀：开头的词项取自名称开头的倒排表，再与名称的倒排表求交集
+        int head = query.length() == 1 ? unigram(query.charAt(0)) : bigram(query.charAt(0), query.charAt(1));
+        boolean full = tier(headIndex, head, nameIndex, queryTerms, doc -> {
+            String name = names[doc];
+            return name.length() == query.length() || !name.startsWith(query) || excluded(exclude, doc)
+                    || offer(hits, doc, SCORE_PREFIX);
+        });
+        // 3.名称包含
+        full = full || tier(null, 0, nameIndex, queryTerms, doc -> {
+            String name = names[doc];
+            return name.startsWith(query) || !name.contains(query) || excluded(exclude, doc)
+                    || offer(hits, doc, SCORE_NAME);
+        });
+        if (full || query.length() == 1) {
+            return;
+        }
+        // 4.商圈或地址包含
+        tier(null, 0, otherIndex, queryTerms, doc -> names[doc].contains(query)
+                || !(areas[doc].contains(query) || (addresses != null && addresses[doc].contains(query)))
+                || excluded(exclude, doc)
+                || offer(hits, doc, SCORE_OTHER));
+    }
+
+    /**
+     * 给一个店铺计算匹配档次，不匹配时返回-1；文本都需要已经归一化，不索引地址时address传空串
+     */
+    public static int score(String query, String name, String area, String address) {
+        if (query.isEmpty()) {
+            return -1;
+        }
+        int i = name.indexOf(query);
+        if (i == 0) {
+            return name.length() == query.length() ? SCORE_EXACT : SCORE_PREFIX;
+        }
+        if (i > 0) {
+            return SCORE_NAME;
+        }
+        // 单字只索引了名称
+        if (query.length() > 1 && (area.contains(query) || address.contains(query))) {
+            return SCORE_OTHER;
+        }
+        return -1;
+    }
+
+    /**
+     * 全角转半角、转小写，去掉标点和空白
+     */
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '！' && c <= '～') {
+                c = (char) (c - 0xFEE0);
+            }
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 遍历一个档次的候选：first中的firstTerm（first为null时没有）与rest中全部词项的交集
+     *
+     * @return visitor返回false（hits已装满）时返回true
+     */
+    private static boolean tier(Postings first, int firstTerm, Postings rest, int[] restTerms, DocVisitor visitor) {
+        int count = restTerms.length + (first == null ? 0 : 1);
+        int[][] lists = new int[count][];
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        int slot = 0;
+        if (first != null && !first.locate(firstTerm, lists, starts, ends, slot++)) {
+            return false;
+        }
+        for (int term : restTerms) {
+            if (!rest.locate(term, lists, starts, ends, slot++)) {
+                return false;
+            }
+        }
+        return intersect(lists, starts, ends, count, visitor);
+    }
+
+    private boolean excluded(LongPredicate exclude, int doc) {
+        return exclude != null && exclude.test(ids[doc]);
+    }
+
+    /**
+     * @return hits是否还没装满
+     */
+    private boolean offer(Hits hits, int doc, int matchScore) {
+        hits.offer(ids[doc], matchScore, scores[doc]);
+        return !hits.isFull();
+    }
+
+    /**
+     * 按店铺下标升序遍历多个倒排表的交集，从最短的开始，其余的先倍增再二分定位
+     *
+     * @return visitor返回false时停止，并返回true
+     */
+    private static boolean intersect(int[][] lists, int[] starts, int[] ends, int count, DocVisitor visitor) {
+        int shortest = 0;
+        for (int t = 1; t < count; t++) {
+            if (ends[t] - starts[t] < ends[shortest] - starts[shortest]) {
+                shortest = t;
+            }
+        }
+        int[] positions = Arrays.copyOf(starts, count);
+        int[] first = lists[shortest];
+        outer:
+        for (int p = starts[shortest]; p < ends[shortest]; p++) {
+            int doc = first[p];
+            for (int t = 0; t < count; t++) {
+                if (t == shortest) {
+                    continue;
+                }
+                int pos = seek(lists[t], positions[t], ends[t], doc);
+                positions[t] = pos;
+                if (pos == ends[t]) {
+                    return false;
+                }
+                if (lists[t][pos] != doc) {
+                    continue outer;
+                }
+            }
+            if (!visitor.visit(doc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在list[from, to)中找第一个不小于doc的位置
+     */
+    private static int seek(int[] list, int from, int to, int doc) {
+        if (from >= to || list[from] >= doc) {
+            return from;
+        }
+        int step = 1;
+        int lo = from;
+        int hi = from + 1;
+        while (hi < to && list[hi] < doc) {
+            lo = hi;
+            step <<= 1;
+            hi = from + step;
+        }
+        hi = Math.min(hi, to);
+        // list[lo] < doc，结果在 (lo, hi]
+        while (lo + 1 < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (list[mid] < doc) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+    /**
+     * 查询的词项：单个字符时为单字，否则为去重后的全部二元组
+     */
+    private static int[] queryTerms(String query) {
+        if (query.length() == 1) {
+            return new int[]{unigram(query.charAt(0))};
+        }
+        int[] result = new int[query.length() - 1];
+        for (int i = 0; i + 1 < query.length(); i++) {
+            result[i] = bigram(query.charAt(i), query.charAt(i + 1));
+        }
+        return distinct(result, result.length);
+    }
+
+    private static int appendBigrams(String text, int[] buffer, int n) {
+        for (int i = 0; i + 1 < text.length(); i++) {
+            buffer[n++] = bigram(text.charAt(i), text.charAt(i + 1));
+        }
+        return n;
+    }
+
+    /**
+     * 排序去重，返回新数组
+     */
+    private static int[] distinct(int[] values, int length) {
+        int[] sorted = Arrays.copyOf(values, length);
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, size);
+    }
+
+    /**
+     * 二元组编码为两个char拼成的int，单字编码为低16位为0；归一化后不会出现'\0'，所以词项不会为0
+     */
+    private static int bigram(char a, char b) {
+        return (a << 16) | b;
+    }
+
+    private static int unigram(char c) {
+        return c << 16;
+    }
+
+    @FunctionalInterface
+    public interface DocConsumer {
+        void accept(long id, String name, String area, String address, int score);
+    }
+
+    @FunctionalInterface
+    private interface DocVisitor {
+        /**
+         * @return false时停止遍历
+         */
+        boolean visit(int doc);
+    }
+
+    @FunctionalInterface
+    private interface TermSource {
+        /**
+         * 把一个店铺的词项写入buffer，可以重复
+         *
+         * @return 写入的数量
+         */
+        int collect(int doc, int[] buffer);
+    }
+
+    /**
+     * 一类词项的倒排表：排好序的词项、每个词项在postings中的起始位置、按词项连续保存的店铺下标
+     */
+    private static final class Postings {
+        private final int[] terms;
+        private final int[] offsets;
+        private final int[] postings;
+
+        private Postings(int[] terms, int[] offsets, int[] postings) {
+            this.terms = terms;
+            this.offsets = offsets;
+            this.postings = postings;
+        }
+
+        /**
+         * 两遍构建：第一遍统计每个词项的店铺数，第二遍按店铺下标顺序填充，每个倒排表天然有序
+         *
+         * @param maxTerms 一个店铺最多的词项数（去重前）
+         */
+        static Postings build(int size, int maxTerms, TermSource source) {
+            TermCounter counter = new TermCounter(Math.max(16, size));
+            int[] buffer = new int[maxTerms];
+            for (int doc = 0; doc < size; doc++) {
+                int n = distinctInPlace(buffer, source.collect(doc, buffer));
+                for (int j = 0; j < n; j++) {
+                    counter.increment(buffer[j]);
+                }
+            }
+            int[] terms = counter.keys();
+            Arrays.sort(terms);
+            int[] offsets = new int[terms.length + 1];
+            for (int t = 0; t < terms.length; t++) {
+                offsets[t + 1] = offsets[t] + counter.get(terms[t]);
+                // 统计完成后改为记录词项的序号
+                counter.put(terms[t], t);
+            }
+            int[] postings = new int[offsets[terms.length]];
+            int[] cursor = Arrays.copyOf(offsets, terms.length);
+            for (int doc = 0; doc < size; doc++) {
+                int n = distinctInPlace(buffer, source.collect(doc, buffer));
+                for (int j = 0; j < n; j++) {
+                    postings[cursor[counter.get(buffer[j])]++] = doc;
+                }
+            }
+            return new Postings(terms, offsets, postings);
+        }
+
+        /**
+         * 把词项的倒排表区间写入第slot个位置
+         *
+         * @return 词项不存在时返回false
+         */
+        boolean locate(int term, int[][] lists, int[] starts, int[] ends, int slot) {
+            int i = Arrays.binarySearch(terms, term);
+            if (i < 0) {
+                return false;
+            }
+            lists[slot] = postings;
+            starts[slot] = offsets[i];
+            ends[slot] = offsets[i + 1];
+            return true;
+        }
+
+        long bytes() {
+            return 4L * (terms.length + offsets.length + postings.length);
+        }
+
+        private static int distinctInPlace(int[] buffer, int length) {
+            Arrays.sort(buffer, 0, length);
+            int size = 0;
+            for (int i = 0; i < length; i++) {
+                if (size == 0 || buffer[size - 1] != buffer[i]) {
+                    buffer[size++] = buffer[i];
+                }
+            }
+            return size;
+        }
+    }
+
+    /**
+     * 按 (匹配档次 降序, 店铺评分 降序, id 升序) 保留前capacity个，堆顶为当前最差的结果
+     */
+    public static final class Hits {
+        private final long[] ids;
+        private final long[] ranks;
+        private int size;
+
+        public Hits(int capacity) {
+            ids = new long[Math.max(capacity, 0)];
+            ranks = new long[Math.max(capacity, 0)];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long id(int i) {
+            return ids[i];
+        }
+
+        public boolean isFull() {
+            return size == ids.length;
+        }
+
+        public void offer(long id, int matchScore, int shopScore) {
+            long rank = ((long) matchScore << 32) | (shopScore & 0xFFFFFFFFL);
+            if (size < ids.length) {
+                ids[size] = id;
+                ranks[size] = rank;
+                siftUp(size++);
+            } else if (ids.length > 0 && better(id, rank, ids[0], ranks[0])) {
+                ids[0] = id;
+                ranks[0] = rank;
+                siftDown(0, size);
+            }
+        }
+
+        /**
+         * 堆排序为从好到差，之后不能再offer
+         */
+        public Hits sorted() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            return this;
+        }
+
+        private static boolean better(long id1, long rank1, long id2, long rank2) {
+            return rank1 > rank2 || (rank1 == rank2 && id1 < id2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int p = (i - 1) >>> 1;
+                if (!better(ids[p], ranks[p], ids[i], ranks[i])) {
+                    return;
+                }
+                swap(p, i);
+                i = p;
+            }
+        }
+
+        private void siftDown(int i, int n) {
+            while (true) {
+                int l = 2 * i + 1;
+                if (l >= n) {
+                    return;
+                }
+                int m = l + 1 < n && better(ids[l], ranks[l], ids[l + 1], ranks[l + 1]) ? l + 1 : l;
+                if (!better(ids[i], ranks[i], ids[m], ranks[m])) {
+                    return;
+                }
+                swap(i, m);
+                i = m;
+            }
+        }
+
+        private void swap(int i, int j) {
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            long rank = ranks[i];
+            ranks[i] = ranks[j];
+            ranks[j] = rank;
+        }
+    }
+
+    /**
+     * 词项到int的开放寻址哈希表，词项不会为0，0作为空槽
+     */
+    private static final class TermCounter {
+        private int[] keys;
+        private int[] counts;
+        private int size;
+
+        TermCounter(int expected) {
+            keys = new int[Integer.highestOneBit(Math.max(expected, 8)) << 1];
+            counts = new int[keys.length];
+        }
+
+        void increment(int key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    counts[i]++;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            counts[i] = 1;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+        }
+
+        /**
+         * 修改已存在的词项
+         */
+        void put(int key, int value) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            counts[i] = value;
+        }
+
+        int get(int key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    return counts[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return 0;
+        }
+
+        int[] keys() {
+            int[] result = new int[size];
+            int n = 0;
+            for (int key : keys) {
+                if (key != 0) {
+                    result[n++] = key;
+                }
+            }
+            return result;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != 0) {
+                    int i = mix(oldKeys[j]) & mask;
+                    while (keys[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    counts[i] = oldCounts[j];
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
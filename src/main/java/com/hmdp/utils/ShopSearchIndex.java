@@ -0,0 +1,139 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM内的店铺名称搜索索引，开启hmdp.shop-search.enabled后生效
+ * <p>
+ * 基础数据是不可变的{@link ShopNameIndex}快照；本实例的新增、修改先记在覆盖表里，
+ * 查询时跳过快照中被覆盖的店铺，并逐个校验覆盖表中的店铺。
+ * 增量加载与刷新由{@link ShopIndexLoader}负责
+ *
+ * @author RainSoul
+ */
+@Component
+@ConditionalOnProperty(prefix = "hmdp.shop-search", name = "enabled", havingValue = "true")
+public class ShopSearchIndex extends ShopIndexLoader<ShopSearchIndex.ShopDoc> {
+    private static final String[] COLUMNS = {"id", "name", "area", "address", "score", "update_time"};
+
+    private volatile ShopNameIndex index = ShopNameIndex.empty();
+
+    /**
+     * 是否索引地址，地址较长，开启后内存占用约翻倍
+     */
+    private final boolean includeAddress;
+
+    public ShopSearchIndex(ShopMapper shopMapper,
+                           @Value("${hmdp.shop-search.include-address:false}") boolean includeAddress,
+                           @Value("${hmdp.shop-search.refresh-seconds:30}") long refreshSeconds,
+                           @Value("${hmdp.shop-search.full-reload-minutes:360}") long fullReloadMinutes) {
+        super(shopMapper, "店铺搜索索引", COLUMNS, refreshSeconds, fullReloadMinutes);
+        this.includeAddress = includeAddress;
+    }
+
+    /**
+     * 店铺新增或修改后调用，shop需要包含完整的名称、商圈、地址和评分
+     */
+    public void onShopChanged(Shop shop) {
+        if (shop == null || shop.getId() == null) {
+            return;
+        }
+        overrides.put(shop.getId(), ShopDoc.of(shop, includeAddress));
+    }
+
+    /**
+     * 按关键字查询排名最高的k个店铺
+     *
+     * @param keyword 关键字，未归一化
+     * @param k       最多返回的数量
+     * @return 按 (匹配分, 评分, id) 排列的结果
+     */
+    public ShopNameIndex.Hits search(String keyword, int k) {
+        String query = ShopNameIndex.normalize(keyword);
+        ShopNameIndex.Hits hits = new ShopNameIndex.Hits(k);
+        if (overrides.isEmpty()) {
+            index.search(query, null, hits);
+            return hits.sorted();
+        }
+        // 快照中跳过被覆盖的店铺，再逐个校验覆盖表
+        Map<Long, ShopDoc> pending = new HashMap<>(overrides);
+        index.search(query, pending::containsKey, hits);
+        pending.forEach((id, doc) -> {
+            int score = ShopNameIndex.score(query, doc.name, doc.area, doc.address);
+            if (score >= 0) {
+                hits.offer(id, score, doc.score);
+            }
+        });
+        return hits.sorted();
+    }
+
+    @Override
+    protected ShopDoc convert(Shop shop) {
+        return ShopDoc.of(shop, includeAddress);
+    }
+
+    @Override
+    protected int rebuild(boolean full, Map<Long, ShopDoc> changed) {
+        // 快照中未修改的店铺加上修改过的店铺，构建新快照
+        ShopNameIndex base = full ? ShopNameIndex.empty() : index;
+        int capacity = base.size() + changed.size();
+        long[] ids = new long[capacity];
+        String[] names = new String[capacity];
+        String[] areas = new String[capacity];
+        String[] addresses = includeAddress ? new String[capacity] : null;
+        int[] scores = new int[capacity];
+        int[] size = {0};
+        base.forEach((id, name, area, address, score) -> {
+            if (!changed.containsKey(id)) {
+                int i = size[0]++;
+                ids[i] = id;
+                names[i] = name;
+                areas[i] = area;
+                if (addresses != null) {
+                    addresses[i] = address;
+                }
+                scores[i] = score;
+            }
+        });
+        for (ShopDoc doc : changed.values()) {
+            int i = size[0]++;
+            ids[i] = doc.id;
+            names[i] = doc.name;
+            areas[i] = doc.area;
+            if (addresses != null) {
+                addresses[i] = doc.address;
+            }
+            scores[i] = doc.score;
+        }
+        index = ShopNameIndex.build(ids, names, areas, addresses, scores, size[0]);
+        return size[0];
+    }
+
+    /**
+     * 覆盖表中的一个店铺，文本已归一化
+     */
+    static final class ShopDoc {
+        private long id;
+        private String name;
+        private String area;
+        private String address;
+        private int score;
+
+        static ShopDoc of(Shop shop, boolean includeAddress) {
+            ShopDoc doc = new ShopDoc();
+            doc.id = shop.getId();
+            doc.name = ShopNameIndex.normalize(shop.getName());
+            doc.area = ShopNameIndex.normalize(shop.getArea());
+            doc.address = includeAddress ? ShopNameIndex.normalize(shop.getAddress()) : "";
+            doc.score = shop.getScore() == null ? 0 : shop.getScore();
+            return doc;
+        }
+    }
+}
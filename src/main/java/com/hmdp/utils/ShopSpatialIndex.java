@@ -0,0 +1,139 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM内的店铺空间索引，开启hmdp.shop-index.enabled后生效
+ * <p>
+ * 基础数据是不可变的{@link ShopGrid}快照；本实例的新增、修改先记在覆盖表里，
+ * 查询时跳过快照中被覆盖的店铺并把覆盖表中的店铺一起参与排序。
+ * 增量加载与刷新由{@link ShopIndexLoader}负责
+ *
+ * @author RainSoul
+ */
+@Component
+@ConditionalOnProperty(prefix = "hmdp.shop-index", name = "enabled", havingValue = "true")
+public class ShopSpatialIndex extends ShopIndexLoader<ShopSpatialIndex.ShopPoint> {
+    private static final String[] COLUMNS = {"id", "type_id", "x", "y", "score", "avg_price", "update_time"};
+
+    private volatile ShopGrid grid = ShopGrid.empty();
+
+    public ShopSpatialIndex(ShopMapper shopMapper,
+                            @Value("${hmdp.shop-index.refresh-seconds:30}") long refreshSeconds,
+                            @Value("${hmdp.shop-index.full-reload-minutes:360}") long fullReloadMinutes) {
+        super(shopMapper, "店铺空间索引", COLUMNS, refreshSeconds, fullReloadMinutes);
+    }
+
+    /**
+     * 店铺新增或修改后调用，shop需要包含完整的类型、坐标、评分和均价
+     */
+    public void onShopChanged(Shop shop) {
+        if (shop == null || shop.getId() == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        overrides.put(shop.getId(), ShopPoint.of(shop));
+    }
+
+    /**
+     * 查询半径范围内满足条件的最近k个店铺
+     *
+     * @param x      经度
+     * @param y      纬度
+     * @param radius 半径，单位米
+     * @param filter 属性过滤条件
+     * @param k      最多返回的数量
+     * @return 按 (距离, id) 升序排列的结果
+     */
+    public ShopGrid.Hits nearest(double x, double y, double radius, ShopGrid.Filter filter, int k) {
+        if (overrides.isEmpty()) {
+            return grid.nearest(x, y, radius, filter, null, k);
+        }
+        // 快照中跳过被覆盖的店铺，再与覆盖表中的候选合并
+        Map<Long, ShopPoint> pending = new HashMap<>(overrides);
+        ShopGrid.Hits fromGrid = grid.nearest(x, y, radius, filter, pending::containsKey, k);
+        ShopGrid.Hits hits = new ShopGrid.Hits(k);
+        for (int i = 0; i < fromGrid.size(); i++) {
+            hits.offer(fromGrid.id(i), fromGrid.distance(i));
+        }
+        pending.forEach((id, p) -> {
+            if (filter.test(p.typeId, p.score, p.price)) {
+                double d = ShopGrid.distance(x, y, p.x, p.y);
+                if (d <= radius) {
+                    hits.offer(id, d);
+                }
+            }
+        });
+        return hits.sorted();
+    }
+
+    @Override
+    protected ShopPoint convert(Shop shop) {
+        return shop.getX() == null || shop.getY() == null ? null : ShopPoint.of(shop);
+    }
+
+    @Override
+    protected int rebuild(boolean full, Map<Long, ShopPoint> changed) {
+        // 快照中未修改的店铺加上修改过的店铺，构建新快照
+        ShopGrid base = full ? ShopGrid.empty() : grid;
+        int capacity = base.size() + changed.size();
+        long[] ids = new long[capacity];
+        double[] xs = new double[capacity];
+        double[] ys = new double[capacity];
+        long[] typeIds = new long[capacity];
+        int[] scores = new int[capacity];
+        long[] prices = new long[capacity];
+        int[] size = {0};
+        base.forEach((id, x, y, typeId, score, price) -> {
+            if (!changed.containsKey(id)) {
+                int i = size[0]++;
+                ids[i] = id;
+                xs[i] = x;
+                ys[i] = y;
+                typeIds[i] = typeId;
+                scores[i] = score;
+                prices[i] = price;
+            }
+        });
+        for (ShopPoint p : changed.values()) {
+            int i = size[0]++;
+            ids[i] = p.id;
+            xs[i] = p.x;
+            ys[i] = p.y;
+            typeIds[i] = p.typeId;
+            scores[i] = p.score;
+            prices[i] = p.price;
+        }
+        grid = ShopGrid.build(ids, xs, ys, typeIds, scores, prices, size[0]);
+        return size[0];
+    }
+
+    /**
+     * 覆盖表中的一个店铺
+     */
+    static final class ShopPoint {
+        private long id;
+        private double x;
+        private double y;
+        private long typeId;
+        private int score;
+        private long price;
+
+        static ShopPoint of(Shop shop) {
+            ShopPoint p = new ShopPoint();
+            p.id = shop.getId();
+            p.x = shop.getX();
+            p.y = shop.getY();
+            p.typeId = shop.getTypeId() == null ? 0 : shop.getTypeId();
+            p.score = shop.getScore() == null ? 0 : shop.getScore();
+            p.price = shop.getAvgPrice() == null ? -1 : shop.getAvgPrice();
+            return p;
+        }
+    }
+}
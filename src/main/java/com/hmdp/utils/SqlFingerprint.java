@@ -0,0 +1,89 @@
+package com.hmdp.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * SQL指纹：去掉字面量和参数个数差异后的语句，用于把同一类查询归为一组
+ * <p>
+ * 字符串和数字字面量替换为?，空白合并，关键字转为小写，IN列表和VALUES中的 (?,?,...) 合并为 (?+)，
+ * 多行VALUES合并为一组。mapper生成的SQL种类有限，结果按原始SQL缓存
+ */
+public class SqlFingerprint {
+    private static final int CACHE_LIMIT = 4096;
+    private static final Pattern SPACE_AROUND = Pattern.compile(" ?([,()=<>]) ?");
+    private static final Pattern PARAM_LIST = Pattern.compile("\\b(in|values)\\(\\?(,\\?)*\\)");
+    private static final Pattern MULTI_ROW = Pattern.compile("values\\(\\?\\+\\)(,\\((\\?\\+|\\?(,\\?)*)\\))+");
+
+    private static final Map<String, String> CACHE = new ConcurrentHashMap<>();
+
+    private SqlFingerprint() {
+    }
+
+    public static String of(String sql) {
+        String fingerprint = CACHE.get(sql);
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+        fingerprint = normalize(sql);
+        // IN列表长度不同会产生不同的原始SQL，缓存满了之后不再加入
+        if (CACHE.size() < CACHE_LIMIT) {
+            CACHE.put(sql, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int n = sql.length();
+        for (int i = 0; i < n; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                // 字符串字面量，引号重复两次表示转义
+                int j = i + 1;
+                while (j < n) {
+                    if (sql.charAt(j) == c) {
+                        if (j + 1 < n && sql.charAt(j + 1) == c) {
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    if (sql.charAt(j) == '\\') {
+                        j++;
+                    }
+                    j++;
+                }
+                sb.append('?');
+                i = j;
+            } else if (c == '`') {
+                // 反引号中的标识符原样保留
+                int j = sql.indexOf('`', i + 1);
+                j = j < 0 ? n - 1 : j;
+                sb.append(sql, i, j + 1);
+                i = j;
+            } else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb.length() - 1)))) {
+                int j = i;
+                while (j + 1 < n && (Character.isLetterOrDigit(sql.charAt(j + 1)) || sql.charAt(j + 1) == '.')) {
+                    j++;
+                }
+                sb.append('?');
+                i = j;
+            } else if (Character.isWhitespace(c)) {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        String s = SPACE_AROUND.matcher(sb.toString().trim()).replaceAll("$1");
+        s = PARAM_LIST.matcher(s).replaceAll("$1(?+)");
+        return MULTI_ROW.matcher(s).replaceAll("values(?+)");
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
@@ -0,0 +1,162 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.SqlFingerprintStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按SQL指纹统计耗时，并检查N+1查询
+ * <p>
+ * 每个指纹一个对数直方图：每个2的幂次区间再分4档，分位数误差不超过25%，记录时不加锁。
+ * 同一个请求中同一指纹执行超过阈值次时判定为疑似N+1，默认输出警告日志；
+ * 开启fail-on-n-plus-one后抛出AssertionError，不会被业务代码和WebExceptionAdvice当作普通异常吞掉，测试中用于让用例失败
+ */
+@Slf4j
+@Component
+public class SqlFingerprintMetrics {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+    /**
+     * 指纹数量上限，超出后归入同一项，避免拼接SQL造成无限增长
+     */
+    private static final int MAX_FINGERPRINTS = 2000;
+    private static final String OTHER = "[other]";
+
+    private static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder nPlusOne = new LongAdder();
+
+        private void record(long nanos) {
+            buckets.incrementAndGet(bucket(nanos / 1000));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        /**
+         * 估算分位数，返回所在区间的上界，毫秒
+         */
+        private double percentileMs(double p, long total) {
+            long target = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= target && seen > 0) {
+                    return upperBoundMicros(i) / 1e3;
+                }
+            }
+            return maxNanos.get() / 1e6;
+        }
+    }
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final int threshold;
+    private final boolean failOnNPlusOne;
+
+    public SqlFingerprintMetrics(@Value("${hmdp.sql-fingerprint.n-plus-one-threshold:10}") int threshold,
+                                 @Value("${hmdp.sql-fingerprint.fail-on-n-plus-one:false}") boolean failOnNPlusOne) {
+        this.threshold = threshold;
+        this.failOnNPlusOne = failOnNPlusOne;
+    }
+
+    public void record(String fingerprint, long nanos) {
+        histogram(fingerprint).record(nanos);
+    }
+
+    /**
+     * 在执行SQL之前检查当前请求中该指纹的执行次数，每个请求每个指纹只报告一次
+     */
+    public void check(RequestTiming timing, String fingerprint) {
+        int count = timing.countSql(fingerprint);
+        if (count != threshold + 1) {
+            return;
+        }
+        histogram(fingerprint).nPlusOne.increment();
+        String message = String.format("疑似N+1查询：%s 中同一语句执行超过 %d 次，%s", currentUri(), threshold, fingerprint);
+        if (failOnNPlusOne) {
+            throw new AssertionError(message);
+        }
+        log.warn(message);
+    }
+
+    /**
+     * 按总耗时从高到低排列的统计
+     */
+    public List<SqlFingerprintStats> snapshot() {
+        List<SqlFingerprintStats> list = new ArrayList<>(histograms.size());
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram h = entry.getValue();
+            long count = h.count.sum();
+            if (count == 0) {
+                continue;
+            }
+            SqlFingerprintStats s = new SqlFingerprintStats();
+            s.setFingerprint(entry.getKey());
+            s.setCount(count);
+            s.setAvgMs(h.totalNanos.sum() / 1e6 / count);
+            s.setP50Ms(h.percentileMs(0.5, count));
+            s.setP99Ms(h.percentileMs(0.99, count));
+            s.setMaxMs(h.maxNanos.get() / 1e6);
+            s.setFlaggedRequests(h.nPlusOne.sum());
+            list.add(s);
+        }
+        list.sort(Comparator.comparingDouble((SqlFingerprintStats s) -> s.getAvgMs() * s.getCount()).reversed());
+        return list;
+    }
+
+    private Histogram histogram(String fingerprint) {
+        Histogram h = histograms.get(fingerprint);
+        if (h != null) {
+            return h;
+        }
+        if (histograms.size() >= MAX_FINGERPRINTS) {
+            return histograms.computeIfAbsent(OTHER, k -> new Histogram());
+        }
+        return histograms.computeIfAbsent(fingerprint, k -> new Histogram());
+    }
+
+    /**
+     * 小于4微秒时每微秒一档；否则按最高位所在的幂次，再取其后两位分为4档
+     */
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int mantissa = (int) (micros >> (exp - 2)) & (SUB_BUCKETS - 1);
+        return exp * SUB_BUCKETS + mantissa;
+    }
+
+    static long upperBoundMicros(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int exp = bucket / SUB_BUCKETS;
+        int mantissa = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + mantissa + 1) << (exp - 2);
+    }
+
+    private static String currentUri() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            return ((ServletRequestAttributes) attributes).getRequest().getRequestURI();
+        }
+        return "[非请求线程]";
+    }
+}
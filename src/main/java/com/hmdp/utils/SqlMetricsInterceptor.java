@@ -0,0 +1,75 @@
+package com.hmdp.utils;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * SQL耗时统计的MyBatis拦截器
+ * <p>
+ * 拦截StatementHandler的执行方法，耗时包含数据库执行和结果集映射，不包含从连接池获取连接；
+ * 批量写入时StatementHandler只是addBatch，真正执行在Executor.flushStatements，按一次调用计时。
+ * 每条语句按指纹记录到SqlFingerprintMetrics；在请求线程中还会累加到RequestTiming，并在执行前检查N+1
+ */
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class}),
+        @Signature(type = Executor.class, method = "flushStatements", args = {})
+})
+public class SqlMetricsInterceptor implements Interceptor {
+
+    private final SqlFingerprintMetrics sqlFingerprintMetrics;
+
+    public SqlMetricsInterceptor(SqlFingerprintMetrics sqlFingerprintMetrics) {
+        this.sqlFingerprintMetrics = sqlFingerprintMetrics;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (invocation.getTarget() instanceof Executor) {
+            return flushStatements(invocation);
+        }
+        RequestTiming timing = RequestTiming.current();
+        String fingerprint = SqlFingerprint.of(((StatementHandler) invocation.getTarget()).getBoundSql().getSql());
+        if (timing != null) {
+            sqlFingerprintMetrics.check(timing, fingerprint);
+        }
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            long nanos = System.nanoTime() - start;
+            sqlFingerprintMetrics.record(fingerprint, nanos);
+            if (timing != null) {
+                timing.addSql(nanos);
+            }
+        }
+    }
+
+    private Object flushStatements(Invocation invocation) throws Throwable {
+        long start = System.nanoTime();
+        Object result = invocation.proceed();
+        List<?> batches = (List<?>) result;
+        // 非批量的Executor提交时也会调用flushStatements，没有执行任何语句时不计入
+        if (batches.isEmpty()) {
+            return result;
+        }
+        long nanos = System.nanoTime() - start;
+        for (Object batch : batches) {
+            sqlFingerprintMetrics.record(SqlFingerprint.of(((BatchResult) batch).getSql()), nanos / batches.size());
+        }
+        RequestTiming timing = RequestTiming.current();
+        if (timing != null) {
+            timing.addSql(nanos);
+        }
+        return result;
+    }
+}
@@ -5,4 +5,16 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    /**
+     * 附近店铺的搜索半径，单位米
+     */
+    public static final double SHOP_GEO_RADIUS = 5000;
+    /**
+     * 按类型分页查询时缓存的页数，之后的页直接查询数据库
+     */
+    public static final int SHOP_TYPE_CACHE_PAGES = 10;
+    /**
+     * 按名称搜索时通过内存索引可翻的页数，之后的页直接查询数据库
+     */
+    public static final int SHOP_SEARCH_INDEX_PAGES = 50;
 }
@@ -0,0 +1,33 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 统计请求内Redis耗时的StringRedisTemplate
+ * <p>
+ * opsForXxx、管道和Lua脚本最终都经过 execute(RedisCallback, boolean, boolean)，在这里计时即可覆盖全部命令，
+ * 耗时包含客户端的序列化和网络往返
+ */
+public class TimedStringRedisTemplate extends StringRedisTemplate {
+
+    public TimedStringRedisTemplate(RedisConnectionFactory connectionFactory) {
+        super(connectionFactory);
+    }
+
+    @Override
+    public <T> T execute(RedisCallback<T> action, boolean exposeConnection, boolean pipeline) {
+        RequestTiming timing = RequestTiming.current();
+        if (timing == null) {
+            return super.execute(action, exposeConnection, pipeline);
+        }
+        long start = System.nanoTime();
+        timing.enterRedis();
+        try {
+            return super.execute(action, exposeConnection, pipeline);
+        } finally {
+            timing.exitRedis(start);
+        }
+    }
+}
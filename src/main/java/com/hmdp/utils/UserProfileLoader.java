@@ -0,0 +1,121 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.User;
+import com.hmdp.service.IUserService;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 批量加载用户资料（昵称、头像）
+ * 先收集一页数据需要的全部用户id，再用一次MGET读缓存，未命中的部分用一次listByIds查库并回写缓存，
+ * 避免列表接口逐条调用getById产生N+1查询
+ */
+@Component
+public class UserProfileLoader {
+    private final StringRedisTemplate stringRedisTemplate;
+    private final IUserService userService;
+
+    public UserProfileLoader(StringRedisTemplate stringRedisTemplate, IUserService userService) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.userService = userService;
+    }
+
+    /**
+     * 为列表中的每个元素填充用户资料
+     *
+     * @param items     列表数据
+     * @param userIdOf  获取元素关联的用户id
+     * @param setter    将用户资料写回元素，用户不存在时不会调用
+     */
+    public <T> void fill(Collection<T> items, Function<T, Long> userIdOf, BiConsumer<T, UserDTO> setter) {
+        if (CollUtil.isEmpty(items)) {
+            return;
+        }
+        Set<Long> ids = new LinkedHashSet<>();
+        for (T item : items) {
+            Long id = userIdOf.apply(item);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        Map<Long, UserDTO> users = loadAll(ids);
+        for (T item : items) {
+            UserDTO user = users.get(userIdOf.apply(item));
+            if (user != null) {
+                setter.accept(item, user);
+            }
+        }
+    }
+
+    /**
+     * 批量查询用户资料
+     *
+     * @param ids 用户id
+     * @return 用户id到用户资料的映射，不存在的用户不在结果中
+     */
+    public Map<Long, UserDTO> loadAll(Collection<Long> ids) {
+        if (CollUtil.isEmpty(ids)) {
+            return Collections.emptyMap();
+        }
+        List<Long> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<String> keys = new ArrayList<>(idList.size());
+        for (Long id : idList) {
+            keys.add(CACHE_USER_KEY + id);
+        }
+        // 1.一次MGET读取缓存
+        List<String> cached = stringRedisTemplate.opsForValue().multiGet(keys);
+        Map<Long, UserDTO> result = new HashMap<>(idList.size() * 2);
+        List<Long> missIds = new ArrayList<>();
+        for (int i = 0; i < idList.size(); i++) {
+            String json = cached == null ? null : cached.get(i);
+            if (StrUtil.isNotBlank(json)) {
+                result.put(idList.get(i), JSONUtil.toBean(json, UserDTO.class));
+            } else if (json == null) {
+                // 空字符串表示用户不存在，不再查库
+                missIds.add(idList.get(i));
+            }
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        // 2.未命中的用户一次listByIds查库，结果要写入缓存，读主库
+        Map<String, String> toCache = new HashMap<>(missIds.size() * 2);
+        for (User user : DataSourceRouting.readPrimary(() -> userService.listByIds(missIds))) {
+            UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+            result.put(user.getId(), userDTO);
+            toCache.put(CACHE_USER_KEY + user.getId(), JSONUtil.toJsonStr(userDTO));
+        }
+        // 3.回写缓存，数据库中也不存在的用户写入空值防止穿透
+        for (Long id : missIds) {
+            if (!result.containsKey(id)) {
+                toCache.put(CACHE_USER_KEY + id, "");
+            }
+        }
+        writeCache(toCache);
+        return result;
+    }
+
+    private void writeCache(Map<String, String> toCache) {
+        long userTtl = TimeUnit.MINUTES.toSeconds(CACHE_USER_TTL);
+        long nullTtl = TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            toCache.forEach((key, value) -> conn.setEx(key, value.isEmpty() ? nullTtl : userTtl, value));
+            return null;
+        });
+    }
+}
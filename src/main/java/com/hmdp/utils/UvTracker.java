@@ -0,0 +1,270 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 基于HyperLogLog的独立访客统计
+ * <p>
+ * 每个页面每天一个HLL：uv:{type}:{id}:{yyyyMMdd}，无论访客多少每个约占12KB；
+ * 访问先在本地按key去重缓存，定时用管道批量PFADD；
+ * 查询日期范围时，完整的历史周、月先PFMERGE为汇总key并缓存，再与剩余的天一起PFCOUNT求并集；
+ * 跨天后才回写到过去某天的访客会删除该天所在的周、月汇总，下次查询时重新合并。
+ * 未登录访客按IP区分，只有直接连接的地址属于hmdp.uv.trusted-proxies时才读取X-Forwarded-For
+ *
+ * @author RainSoul
+ */
+@Slf4j
+@Component
+public class UvTracker {
+    public static final String SHOP = "shop";
+    public static final String BLOG = "blog";
+
+    /**
+     * 本地缓存的访客数超过该值时立即回写
+     */
+    private static final int MAX_PENDING = 100_000;
+    /**
+     * 每次管道写入的key数量
+     */
+    private static final int FLUSH_BATCH_SIZE = 500;
+    /**
+     * 一次查询允许的最大天数
+     */
+    private static final int MAX_RANGE_DAYS = 366;
+
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final ScheduledExecutorService UV_FLUSH_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    /**
+     * 可信的反向代理地址，为空时不信任X-Forwarded-For
+     */
+    private final Set<String> trustedProxies;
+
+    /**
+     * 待写入的访客，key为HLL的key；记录时持有读锁，回写交换缓冲区时持有写锁，保证交换后不会再有写入
+     */
+    private Map<String, Set<String>> buffer = new ConcurrentHashMap<>();
+    private final ReadWriteLock bufferLock = new ReentrantReadWriteLock();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    public UvTracker(StringRedisTemplate stringRedisTemplate,
+                     @Value("${hmdp.uv.trusted-proxies:}") List<String> trustedProxies) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.trustedProxies = new HashSet<>(trustedProxies);
+        UV_FLUSH_EXECUTOR.scheduleWithFixedDelay(this::flush, UV_FLUSH_INTERVAL, UV_FLUSH_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 记录当前访客访问了某个页面，登录用户按用户id区分，未登录按IP区分
+     *
+     * @param type 页面类型
+     * @param id   页面对应的数据id
+     */
+    public void record(String type, Long id) {
+        String visitor = currentVisitor();
+        if (visitor == null) {
+            return;
+        }
+        String key = dailyKey(type, id, LocalDate.now());
+        bufferLock.readLock().lock();
+        try {
+            if (buffer.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(visitor)
+                    && pending.incrementAndGet() >= MAX_PENDING && flushing.compareAndSet(false, true)) {
+                UV_FLUSH_EXECUTOR.execute(this::flush);
+            }
+        } finally {
+            bufferLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询某个页面在日期范围内的近似独立访客数
+     *
+     * @param type 页面类型
+     * @param id   页面对应的数据id
+     * @param from 开始日期（包含）
+     * @param to   结束日期（包含）
+     * @return 近似UV，误差约0.81%
+     */
+    public long count(String type, Long id, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return 0;
+        }
+        if (from.plusDays(MAX_RANGE_DAYS).isBefore(to)) {
+            throw new IllegalArgumentException("日期范围不能超过" + MAX_RANGE_DAYS + "天");
+        }
+        List<String> keys = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        LocalDate day = from;
+        while (!day.isAfter(to)) {
+            // 1.完整且已经结束的月份使用月汇总
+            LocalDate monthEnd = day.with(TemporalAdjusters.lastDayOfMonth());
+            if (day.getDayOfMonth() == 1 && !monthEnd.isAfter(to) && monthEnd.isBefore(today)) {
+                keys.add(rollup(type, id, day, monthEnd, "m" + day.format(MONTH_FORMATTER)));
+                day = monthEnd.plusDays(1);
+                continue;
+            }
+            // 2.完整且已经结束的周（周一到周日）使用周汇总
+            LocalDate weekEnd = day.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
+            if (day.getDayOfWeek() == DayOfWeek.MONDAY && !weekEnd.isAfter(to) && weekEnd.isBefore(today)) {
+                keys.add(rollup(type, id, day, weekEnd, "w" + day.format(DAY_FORMATTER)));
+                day = weekEnd.plusDays(1);
+                continue;
+            }
+            // 3.其余按天
+            keys.add(dailyKey(type, id, day));
+            day = day.plusDays(1);
+        }
+        // 多个key的PFCOUNT返回并集的基数，不会写入临时key
+        Long size = stringRedisTemplate.opsForHyperLogLog().size(keys.toArray(new String[0]));
+        return size == null ? 0 : size;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        UV_FLUSH_EXECUTOR.shutdown();
+        // 停机前把本地缓存的访客写入Redis
+        flush();
+    }
+
+    /**
+     * 把连续若干天PFMERGE为一个汇总key，已存在时直接使用
+     * 汇总与最后一天的数据同时过期，不会比它汇总的天保留得更久
+     */
+    private String rollup(String type, Long id, LocalDate from, LocalDate to, String period) {
+        String key = rollupKey(type, id, period);
+        if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(key))) {
+            return key;
+        }
+        List<String> days = new ArrayList<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            days.add(dailyKey(type, id, d));
+        }
+        stringRedisTemplate.opsForHyperLogLog().union(key, days.toArray(new String[0]));
+        long ttlDays = UV_TTL - (LocalDate.now().toEpochDay() - to.toEpochDay());
+        stringRedisTemplate.expire(key, Math.max(ttlDays, 1), TimeUnit.DAYS);
+        return key;
+    }
+
+    private void flush() {
+        try {
+            Map<String, Set<String>> snapshot;
+            bufferLock.writeLock().lock();
+            try {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                snapshot = buffer;
+                buffer = new ConcurrentHashMap<>();
+                pending.set(0);
+            } finally {
+                bufferLock.writeLock().unlock();
+            }
+            long ttlSeconds = TimeUnit.DAYS.toSeconds(UV_TTL);
+            String today = LocalDate.now().format(DAY_FORMATTER);
+            for (List<Map.Entry<String, Set<String>>> batch : CollUtil.split(snapshot.entrySet(), FLUSH_BATCH_SIZE)) {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Map.Entry<String, Set<String>> entry : batch) {
+                        String key = entry.getKey();
+                        conn.pfAdd(key, entry.getValue().toArray(new String[0]));
+                        conn.expire(key, ttlSeconds);
+                        // 跨天后才回写的访客属于已经结束的一天，该天所在的周、月汇总可能已经生成，删除后重新合并
+                        String day = StrUtil.subAfter(key, ":", true);
+                        if (day.compareTo(today) < 0) {
+                            conn.del(staleRollupKeys(key, LocalDate.parse(day, DAY_FORMATTER)));
+                        }
+                    }
+                    return null;
+                });
+            }
+            log.debug("UV回写完成，key数量：{}", snapshot.size());
+        } catch (Exception e) {
+            log.error("UV回写异常", e);
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    private static String dailyKey(String type, Long id, LocalDate day) {
+        return UV_KEY + type + ":" + id + ":" + day.format(DAY_FORMATTER);
+    }
+
+    private static String rollupKey(String type, Long id, String period) {
+        return UV_KEY + type + ":" + id + ":" + period;
+    }
+
+    /**
+     * 某天所在的周汇总和月汇总的key
+     */
+    private static String[] staleRollupKeys(String dailyKey, LocalDate day) {
+        String prefix = StrUtil.subBefore(dailyKey, ":", true) + ":";
+        LocalDate monday = day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        return new String[]{prefix + "w" + monday.format(DAY_FORMATTER), prefix + "m" + day.format(MONTH_FORMATTER)};
+    }
+
+    private String currentVisitor() {
+        UserDTO user = UserHolder.getUser();
+        if (user != null) {
+            return user.getId().toString();
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        String ip = clientIp(request.getRemoteAddr(), request.getHeader("X-Forwarded-For"));
+        return StrUtil.isBlank(ip) ? null : "ip:" + ip;
+    }
+
+    /**
+     * 直接连接的地址是可信代理时，从X-Forwarded-For右侧向左跳过可信代理，取第一个不可信的地址；
+     * 否则X-Forwarded-For可以由客户端任意填写，只使用直接连接的地址
+     */
+    private String clientIp(String remoteAddr, String forwardedFor) {
+        if (!trustedProxies.contains(remoteAddr) || StrUtil.isBlank(forwardedFor)) {
+            return remoteAddr;
+        }
+        List<String> hops = StrUtil.split(forwardedFor, ',', true, true);
+        for (int i = hops.size() - 1; i >= 0; i--) {
+            if (!trustedProxies.contains(hops.get(i))) {
+                return hops.get(i);
+            }
+        }
+        return hops.isEmpty() ? remoteAddr : hops.get(0);
+    }
+}
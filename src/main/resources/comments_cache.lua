@@ -0,0 +1,20 @@
+-- 写入博文评论第一页的缓存
+-- 参数:
+--   KEYS[1] - 第一页缓存的LIST，例如 cache:blog:comments:1
+--   KEYS[2] - 加载标记，查询数据库前写入
+--   ARGV[1] - 加载标记的值
+--   ARGV[2] - 缓存有效期，秒
+--   ARGV[3...] - 评论JSON，按显示顺序，比一页多一条用于判断是否还有下一页
+-- 返回: 1写入成功，0查询数据库期间有新评论或缓存已被其他请求写入
+if (redis.call('get', KEYS[2]) ~= ARGV[1]) then
+    return 0
+end
+redis.call('del', KEYS[2])
+if (redis.call('exists', KEYS[1]) == 1) then
+    return 0
+end
+for i = 3, #ARGV do
+    redis.call('rpush', KEYS[1], ARGV[i])
+end
+redis.call('expire', KEYS[1], ARGV[2])
+return 1
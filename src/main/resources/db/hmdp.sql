@@ -17,7 +17,8 @@ CREATE TABLE `tb_blog`
     `comments`    int(8) UNSIGNED                                                NULL     DEFAULT NULL COMMENT '评论数量',
     `create_time` timestamp                                                      NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` timestamp                                                      NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
-    PRIMARY KEY (`id`) USING BTREE
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_user_id` (`user_id`, `id`) USING BTREE
 ) ENGINE = InnoDB
   AUTO_INCREMENT = 23
   CHARACTER SET = utf8mb4
@@ -60,7 +61,9 @@ CREATE TABLE `tb_blog_comments`
     `status`      tinyint(1) UNSIGNED                                           NULL     DEFAULT NULL COMMENT '状态，0：正常，1：被举报，2：禁止查看',
     `create_time` timestamp                                                     NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` timestamp                                                     NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
-    PRIMARY KEY (`id`) USING BTREE
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_blog_parent` (`blog_id`, `parent_id`, `id`) USING BTREE,
+    INDEX `idx_parent_id` (`parent_id`, `id`) USING BTREE
 ) ENGINE = InnoDB
   AUTO_INCREMENT = 1
   CHARACTER SET = utf8mb4
@@ -81,7 +84,9 @@ CREATE TABLE `tb_follow`
     `user_id`        bigint(20) UNSIGNED NOT NULL COMMENT '用户id',
     `follow_user_id` bigint(20) UNSIGNED NOT NULL COMMENT '关联的用户id',
     `create_time`    timestamp           NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
-    PRIMARY KEY (`id`) USING BTREE
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_follow_user_id` (`follow_user_id`, `id`) USING BTREE,
+    UNIQUE INDEX `unique_key_user_follow` (`user_id`, `follow_user_id`) USING BTREE
 ) ENGINE = InnoDB
   AUTO_INCREMENT = 1
   CHARACTER SET = utf8mb4
@@ -138,7 +143,9 @@ CREATE TABLE `tb_shop`
     `create_time` timestamp                                                      NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` timestamp                                                      NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     PRIMARY KEY (`id`) USING BTREE,
-    INDEX `foreign_key_type` (`type_id`) USING BTREE
+    INDEX `foreign_key_type` (`type_id`) USING BTREE,
+    INDEX `idx_type_score` (`type_id`, `score`, `id`) USING BTREE,
+    INDEX `idx_update_time` (`update_time`, `id`) USING BTREE
 ) ENGINE = InnoDB
   AUTO_INCREMENT = 15
   CHARACTER SET = utf8mb4
@@ -0,0 +1,35 @@
+-- 关注/取关后同步Redis中的关注关系和计数
+-- 参数:
+--   KEYS[1] - 当前用户的关注集合，例如 follows:1
+--   KEYS[2] - 当前用户的计数HASH
+--   KEYS[3] - 被关注用户的计数HASH
+--   KEYS[4] - 关注数增量HASH
+--   KEYS[5] - 粉丝数增量HASH
+--   KEYS[6] - 当前用户关注集合的加载标记
+--   ARGV[1] - 当前用户id
+--   ARGV[2] - 被关注用户id
+--   ARGV[3] - 1表示关注，-1表示取关
+-- 集合和计数只在已加载时修改，未加载的等读取时从数据库完整加载
+local delta = tonumber(ARGV[3])
+
+-- 正在加载的关注集合读到的数据库结果可能不包含本次变更，让其放弃写入
+redis.call('del', KEYS[6])
+
+if (redis.call('exists', KEYS[1]) == 1) then
+    if (delta > 0) then
+        redis.call('sadd', KEYS[1], ARGV[2])
+    else
+        redis.call('srem', KEYS[1], ARGV[2])
+    end
+end
+if (redis.call('exists', KEYS[2]) == 1) then
+    redis.call('hincrby', KEYS[2], 'followee', delta)
+end
+if (redis.call('exists', KEYS[3]) == 1) then
+    redis.call('hincrby', KEYS[3], 'fans', delta)
+end
+
+-- 记录增量，由后台任务批量回写tb_user_info
+redis.call('hincrby', KEYS[4], ARGV[1], delta)
+redis.call('hincrby', KEYS[5], ARGV[2], delta)
+return 0
@@ -0,0 +1,40 @@
+-- 用数据库中的粉丝数、关注数加上尚未回写的增量初始化计数缓存
+-- 参数:
+--   KEYS[1] - 用户的计数HASH，例如 follow:count:1
+--   KEYS[2] - 粉丝数增量HASH
+--   KEYS[3] - 粉丝数正在回写的快照
+--   KEYS[4] - 关注数增量HASH
+--   KEYS[5] - 关注数正在回写的快照
+--   KEYS[6] - 粉丝数回写版本号
+--   KEYS[7] - 关注数回写版本号
+--   ARGV[1] - 用户id
+--   ARGV[2] - 数据库中的粉丝数
+--   ARGV[3] - 数据库中的关注数
+--   ARGV[4] - 读取数据库前的粉丝数回写版本号
+--   ARGV[5] - 读取数据库前的关注数回写版本号
+--   ARGV[6] - 缓存有效期，秒
+-- 返回: {粉丝数, 关注数}
+local function pending(deltaKey, flushingKey)
+    return tonumber(redis.call('hget', deltaKey, ARGV[1]) or '0')
+            + tonumber(redis.call('hget', flushingKey, ARGV[1]) or '0')
+end
+
+local fans = math.max(tonumber(ARGV[2]) + pending(KEYS[2], KEYS[3]), 0)
+local followee = math.max(tonumber(ARGV[3]) + pending(KEYS[4], KEYS[5]), 0)
+
+-- 读取数据库期间有回写开始或结束时，数据库的值与增量可能重叠或遗漏，只返回不缓存
+local fansVersion = redis.call('get', KEYS[6]) or '0'
+local followeeVersion = redis.call('get', KEYS[7]) or '0'
+if (fansVersion == ARGV[4] and followeeVersion == ARGV[5]
+        and tonumber(fansVersion) % 2 == 0 and tonumber(followeeVersion) % 2 == 0) then
+    -- 已被其他请求初始化时保留现有的值，之后的关注/取关已经在上面累加
+    if (redis.call('hsetnx', KEYS[1], 'fans', fans) == 1) then
+        redis.call('expire', KEYS[1], ARGV[6])
+    end
+    redis.call('hsetnx', KEYS[1], 'followee', followee)
+end
+
+if (redis.call('exists', KEYS[1]) == 1) then
+    return redis.call('hmget', KEYS[1], 'fans', 'followee')
+end
+return {tostring(fans), tostring(followee)}
@@ -0,0 +1,21 @@
+-- 把从数据库读取的关注列表写入关注集合
+-- 参数:
+--   KEYS[1] - 用户的关注集合，例如 follows:1
+--   KEYS[2] - 加载标记，读取数据库前写入
+--   ARGV[1] - 加载标记的值
+--   ARGV[2] - 集合有效期，秒
+--   ARGV[3] - 占位成员，没有关注任何人时集合也存在
+--   ARGV[4...] - 关注的用户id
+-- 返回: 1写入成功，0读取数据库期间该用户关注或取关过，数据库结果可能已经过时
+if (redis.call('get', KEYS[2]) ~= ARGV[1]) then
+    return 0
+end
+redis.call('del', KEYS[2])
+if (redis.call('exists', KEYS[1]) == 1) then
+    return 1
+end
+for i = 3, #ARGV do
+    redis.call('sadd', KEYS[1], ARGV[i])
+end
+redis.call('expire', KEYS[1], ARGV[2])
+return 1
@@ -0,0 +1,13 @@
+-- 重建热榜时写入一批博文的分数
+-- 参数:
+--   KEYS[1] - 本次重建的临时热榜ZSET
+--   KEYS[2...] - 每篇博文的点赞用户ZSET，与ARGV一一对应
+--   ARGV[2i-1] - 博文id
+--   ARGV[2i] - 博文的时间分
+-- 点赞数取ZCARD，包含尚未回写数据库的点赞；与like.lua互斥执行，
+-- 写入之前的点赞已计入ZCARD，写入之后的点赞由like.lua对临时热榜ZINCRBY，每次点赞只计一次
+for i = 2, #KEYS do
+    local liked = redis.call('zcard', KEYS[i])
+    redis.call('zadd', KEYS[1], liked + tonumber(ARGV[2 * i - 2]), ARGV[2 * i - 3])
+end
+return #KEYS - 1
@@ -0,0 +1,40 @@
+-- 点赞/取消点赞切换
+-- 参数:
+--   KEYS[1] - 博文的点赞用户ZSET，例如 blog:liked:1
+--   KEYS[2] - 待回写数据库的点赞数增量HASH
+--   KEYS[3] - 热门博文排行ZSET
+--   KEYS[4] - 正在重建的临时热榜的key，不在重建时不存在
+--   ARGV[1] - 博文id
+--   ARGV[2] - 用户id
+--   ARGV[3] - 当前时间戳（毫秒），作为点赞的分数
+-- 返回值:
+--   1 表示点赞，-1 表示取消点赞
+local likedKey = KEYS[1]
+local deltaKey = KEYS[2]
+local hotKey = KEYS[3]
+local blogId = ARGV[1]
+local userId = ARGV[2]
+
+local delta
+-- 已点赞则取消，否则点赞
+if (redis.call('zscore', likedKey, userId)) then
+    redis.call('zrem', likedKey, userId)
+    delta = -1
+else
+    redis.call('zadd', likedKey, ARGV[3], userId)
+    delta = 1
+end
+
+-- 记录点赞数增量，由后台任务批量回写数据库
+redis.call('hincrby', deltaKey, blogId, delta)
+-- 只同步已在热榜中的博文，热榜不存在时等待重建，也不会把热榜之外的id加进去
+if (redis.call('zscore', hotKey, blogId)) then
+    redis.call('zincrby', hotKey, delta, blogId)
+end
+-- 正在重建时，已写入临时热榜的博文同步分数，否则重建完成RENAME后会丢失这次点赞；
+-- 尚未写入的博文在写入时按ZCARD计算，已包含这次点赞
+local rebuildKey = redis.call('get', KEYS[4])
+if (rebuildKey and redis.call('zscore', rebuildKey, blogId)) then
+    redis.call('zincrby', rebuildKey, delta, blogId)
+end
+return delta
@@ -19,3 +19,6 @@ end
 -- 扣减库存并记录用户订单
 redis.call('incrby', stockKey, -1)
 redis.call('sadd', orderKey, userId)
+
+-- 下单成功
+return 0
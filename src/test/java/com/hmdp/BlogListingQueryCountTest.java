@@ -0,0 +1,168 @@
+package com.hmdp;
+
+import com.baomidou.mybatisplus.autoconfigure.MybatisPlusAutoConfiguration;
+import com.hmdp.config.MybatisConfig;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Blog;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.impl.BlogServiceImpl;
+import com.hmdp.service.impl.UserServiceImpl;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CounterFlusher;
+import com.hmdp.utils.DauTracker;
+import com.hmdp.utils.FeedEngine;
+import com.hmdp.utils.InMemoryRedisServer;
+import com.hmdp.utils.RequestTiming;
+import com.hmdp.utils.SqlFingerprintMetrics;
+import com.hmdp.utils.UserProfileLoader;
+import com.hmdp.utils.UvTracker;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.annotation.MapperScan;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 列表接口每页执行的SQL条数
+ * <p>
+ * 博文和用户经过真实的mapper、MyBatis-Plus和SqlMetricsInterceptor访问H2，Redis使用 {@link InMemoryRedisServer}；
+ * 用RequestTiming包住一次调用，按拦截器统计的条数断言，测试配置中开启了fail-on-n-plus-one
+ */
+@SpringBootTest(classes = BlogListingQueryCountTest.Config.class, properties = {
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.url=jdbc:h2:mem:blog-listing;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.schema=classpath:db/blog-listing.sql",
+        "spring.redis.password="
+})
+class BlogListingQueryCountTest {
+
+    @Configuration
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, DataSourceTransactionManagerAutoConfiguration.class,
+            MybatisPlusAutoConfiguration.class, RedisAutoConfiguration.class})
+    @MapperScan("com.hmdp.mapper")
+    @Import({MybatisConfig.class, SqlFingerprintMetrics.class, UserProfileLoader.class,
+            UserServiceImpl.class, BlogServiceImpl.class})
+    static class Config {
+    }
+
+    private static InMemoryRedisServer redis;
+
+    @MockBean
+    private FeedEngine feedEngine;
+    @MockBean
+    private CounterFlusher counterFlusher;
+    @MockBean
+    private CacheClient cacheClient;
+    @MockBean
+    private UvTracker uvTracker;
+    @MockBean
+    private DauTracker dauTracker;
+
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) throws IOException {
+        redis = new InMemoryRedisServer();
+        registry.add("spring.redis.host", redis::getHost);
+        registry.add("spring.redis.port", redis::getPort);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        // 清空用户缓存，热榜按id倒序：25, 24, ..., 1
+        RedisConnection connection = stringRedisTemplate.getRequiredConnectionFactory().getConnection();
+        try {
+            connection.flushDb();
+        } finally {
+            connection.close();
+        }
+        for (long id = 1; id <= 25; id++) {
+            stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, Long.toString(id), id);
+        }
+    }
+
+    @Test
+    void coldPageRunsOneBlogQueryAndOneUserQuery() {
+        int[] sizes = {10, 10, 5};
+        for (int current = 1; current <= sizes.length; current++) {
+            clearUserCache();
+            List<Blog> page = queryHotBlog(current, 2);
+            assertEquals(sizes[current - 1], page.size());
+            assertEquals(25L - (current - 1) * 10, page.get(0).getId());
+            page.forEach(blog -> assertEquals("user_" + blog.getUserId(), blog.getName()));
+        }
+        // 超出热榜的页不查询数据库
+        assertTrue(queryHotBlog(4, 0).isEmpty());
+    }
+
+    @Test
+    void cachedUsersLeaveOnlyTheBlogQuery() {
+        queryHotBlog(1, 2);
+        // 第一页的10篇博文已经覆盖全部8个作者
+        List<Blog> page2 = queryHotBlog(2, 1);
+        page2.forEach(blog -> assertEquals("user_" + blog.getUserId(), blog.getName()));
+    }
+
+    @Test
+    void invalidPageRunsNoQuery() {
+        RequestTiming timing = RequestTiming.start();
+        try {
+            Result result = blogService.queryHotBlog(0);
+            assertFalse(result.getSuccess());
+            assertEquals(0, timing.getSqlCalls());
+        } finally {
+            RequestTiming.clear();
+        }
+    }
+
+    private void clearUserCache() {
+        Set<String> keys = stringRedisTemplate.keys(CACHE_USER_KEY + "*");
+        if (keys != null && !keys.isEmpty()) {
+            stringRedisTemplate.delete(keys);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Blog> queryHotBlog(int current, int expectedSqlCalls) {
+        RequestTiming timing = RequestTiming.start();
+        try {
+            Result result = blogService.queryHotBlog(current);
+            assertTrue(result.getSuccess());
+            assertEquals(expectedSqlCalls, timing.getSqlCalls(), "第" + current + "页的SQL条数");
+            return (List<Blog>) result.getData();
+        } finally {
+            RequestTiming.clear();
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.hmdp;
+
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.User;
+import com.hmdp.entity.Voucher;
+import com.hmdp.service.IUserService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.InMemoryRedisServer;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀接口的进程内压测，直接运行main方法
+ * <p>
+ * 在同一个JVM中以随机端口启动应用，准备N个已登录用户和库存为S的秒杀券，
+ * 按设定的并发通过HTTP请求 POST /voucher-order/seckill/{id}，每个用户请求attempts次，
+ * 输出吞吐量、p50/p99/p999延迟和失败原因分布，并校验：不超卖、每个用户最多一单、Redis与数据库的订单数最终一致。
+ * 正式压测之前用另一张秒杀券预热，预热的订单不参与统计和校验。
+ * <p>
+ * 参数均为系统属性：
+ * <ul>
+ *     <li>-Dusers=2000 -Dstock=200 -Dconcurrency=64 -Dattempts=2 -Dwarmup=500</li>
+ *     <li>-Dtimeout=30 等待订单异步落库的秒数；-Dkeep=true 保留压测数据</li>
+ *     <li>-Dredis=127.0.0.1:6379 -Dredis.password=xxx 不指定时使用进程内的InMemoryRedisServer，Redisson锁以JVM内的锁代替</li>
+ *     <li>-Ddb.url -Ddb.username -Ddb.password 默认使用application.yaml中的数据源；
+ *     使用H2时需要自行把H2加入类路径，并指定 -Ddb.driver=org.h2.Driver -Ddb.schema=classpath:xxx.sql</li>
+ * </ul>
+ * 校验失败时进程以1退出
+ */
+public class SeckillLoadHarness {
+
+    private static final String SUCCESS = "成功";
+
+    private final int users = Integer.getInteger("users", 2000);
+    private final int stock = Integer.getInteger("stock", 200);
+    private final int concurrency = Integer.getInteger("concurrency", 64);
+    private final int attempts = Integer.getInteger("attempts", 2);
+    private final int warmup = Integer.getInteger("warmup", 500);
+    private final int timeoutSeconds = Integer.getInteger("timeout", 30);
+    private final boolean keep = Boolean.getBoolean("keep");
+
+    private final ConfigurableApplicationContext context;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final int port;
+
+    private final List<Long> userIds = new ArrayList<>();
+    private final List<String> tokens = new ArrayList<>();
+    private final List<Long> voucherIds = new ArrayList<>();
+    private boolean passed = true;
+
+    private SeckillLoadHarness(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.stringRedisTemplate = context.getBean(StringRedisTemplate.class);
+        this.jdbcTemplate = context.getBean(JdbcTemplate.class);
+        this.port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        arguments.add("--server.port=0");
+        // SQL日志会拖慢落库并淹没输出
+        arguments.add("--logging.level.com.hmdp=info");
+        InMemoryRedisServer server = null;
+        String redis = System.getProperty("redis");
+        if (redis == null) {
+            server = new InMemoryRedisServer();
+            arguments.add("--spring.redis.host=" + server.getHost());
+            arguments.add("--spring.redis.port=" + server.getPort());
+            arguments.add("--spring.redis.password=");
+        } else {
+            String[] hostPort = redis.split(":");
+            arguments.add("--spring.redis.host=" + hostPort[0]);
+            arguments.add("--spring.redis.port=" + hostPort[1]);
+            arguments.add("--spring.redis.password=" + System.getProperty("redis.password", ""));
+        }
+        addIfPresent(arguments, "db.url", "spring.datasource.url");
+        addIfPresent(arguments, "db.username", "spring.datasource.username");
+        addIfPresent(arguments, "db.password", "spring.datasource.password");
+        addIfPresent(arguments, "db.driver", "spring.datasource.driver-class-name");
+        if (System.getProperty("db.schema") != null) {
+            addIfPresent(arguments, "db.schema", "spring.datasource.schema");
+            arguments.add("--spring.datasource.initialization-mode=always");
+        }
+
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(HmDianPingApplication.class);
+        if (server != null) {
+            // 替身不能执行Redisson的Lua脚本，RedissonConfig在已有RedissonClient时不再创建
+            builder.initializers(ctx -> ctx.getBeanFactory().registerSingleton("redissonClient", localRedisson()));
+        }
+        System.setProperty("http.maxConnections", String.valueOf(Integer.getInteger("concurrency", 64)));
+        boolean passed = false;
+        ConfigurableApplicationContext context = builder.run(arguments.toArray(new String[0]));
+        try {
+            passed = new SeckillLoadHarness(context).run();
+        } finally {
+            context.close();
+            if (server != null) {
+                server.close();
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        try {
+            seedUsers();
+            // 1.预热
+            if (warmup > 0) {
+                long warmVoucher = seedVoucher(warmup);
+                int[] plan = new int[Math.min(warmup, users)];
+                for (int i = 0; i < plan.length; i++) {
+                    plan[i] = i;
+                }
+                fire(warmVoucher, plan, new long[plan.length], new ConcurrentHashMap<>(), new AtomicIntegerArray(users));
+            }
+            // 2.每个用户请求attempts次，顺序打乱
+            long voucherId = seedVoucher(stock);
+            int total = users * attempts;
+            int[] plan = new int[total];
+            for (int i = 0; i < total; i++) {
+                plan[i] = i % users;
+            }
+            Random random = new Random(42);
+            for (int i = total - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = plan[i];
+                plan[i] = plan[j];
+                plan[j] = tmp;
+            }
+            long[] latencies = new long[total];
+            Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+            AtomicIntegerArray wins = new AtomicIntegerArray(users);
+            long nanos = fire(voucherId, plan, latencies, outcomes, wins);
+            report(total, nanos, latencies, outcomes);
+            verify(voucherId, wins);
+            return passed;
+        } finally {
+            if (!keep) {
+                cleanUp();
+            }
+        }
+    }
+
+    private void seedUsers() {
+        IUserService userService = context.getBean(IUserService.class);
+        // 手机号 1 + 两位批次 + 8位序号，批次取00~29，不会与真实号段冲突
+        int batch = -1;
+        for (int b = 0; b < 30 && batch < 0; b++) {
+            if (userService.query().likeRight("phone", String.format("1%02d", b)).count() == 0) {
+                batch = b;
+            }
+        }
+        if (batch < 0) {
+            throw new IllegalStateException("没有空闲的压测手机号段，请清理tb_user中1[0-2]开头的手机号");
+        }
+        List<User> list = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            User user = new User();
+            user.setPhone(String.format("1%02d%08d", batch, i));
+            user.setNickName("load_" + batch + "_" + i);
+            list.add(user);
+        }
+        userService.saveBatch(list, 1000);
+        for (User user : list) {
+            if (user.getId() == null) {
+                throw new IllegalStateException("批量插入后没有取得用户id");
+            }
+            userIds.add(user.getId());
+            tokens.add(UUID.randomUUID().toString(true));
+        }
+        // 与登录接口写入相同结构的Hash
+        long ttl = TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < list.size(); i++) {
+                Map<String, String> userMap = new HashMap<>(4);
+                userMap.put("id", list.get(i).getId().toString());
+                userMap.put("nickName", list.get(i).getNickName());
+                userMap.put("icon", list.get(i).getIcon());
+                conn.hMSet(LOGIN_USER_KEY + tokens.get(i), userMap);
+                conn.expire(LOGIN_USER_KEY + tokens.get(i), ttl);
+            }
+            return null;
+        });
+        System.out.printf("准备 %,d 个用户，手机号批次 %02d%n", users, batch);
+    }
+
+    private long seedVoucher(int stock) {
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("压测秒杀券");
+        voucher.setPayValue(100L);
+        voucher.setActualValue(1000L);
+        voucher.setType(1);
+        voucher.setStatus(1);
+        voucher.setStock(stock);
+        voucher.setBeginTime(LocalDateTime.now().minusHours(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        // 同时写入数据库和Redis中的库存
+        context.getBean(IVoucherService.class).addSeckillVoucher(voucher);
+        voucherIds.add(voucher.getId());
+        return voucher.getId();
+    }
+
+    /**
+     * 按计划发出请求，plan[i]为第i个请求使用的用户下标
+     *
+     * @return 全部请求完成的耗时，纳秒
+     */
+    private long fire(long voucherId, int[] plan, long[] latencies, Map<String, LongAdder> outcomes,
+                      AtomicIntegerArray wins) throws Exception {
+        URL url = new URL("http://127.0.0.1:" + port + "/voucher-order/seckill/" + voucherId);
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int t = 0; t < concurrency; t++) {
+            pool.execute(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < plan.length) {
+                    int user = plan[i];
+                    long begin = System.nanoTime();
+                    String outcome = post(url, tokens.get(user));
+                    latencies[i] = System.nanoTime() - begin;
+                    if (SUCCESS.equals(outcome)) {
+                        wins.incrementAndGet(user);
+                    }
+                    outcomes.computeIfAbsent(outcome, k -> new LongAdder()).increment();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        return System.nanoTime() - start;
+    }
+
+    private static String post(URL url, String token) {
+        try {
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("authorization", token);
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(0);
+            conn.getOutputStream().close();
+            int code = conn.getResponseCode();
+            // 读完响应体，连接才能被复用
+            String body;
+            try (InputStream in = code < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+                body = in == null ? "" : IoUtil.read(in, StandardCharsets.UTF_8);
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                return "HTTP " + code;
+            }
+            Result result = JSONUtil.toBean(body, Result.class);
+            return Boolean.TRUE.equals(result.getSuccess()) ? SUCCESS : String.valueOf(result.getErrorMsg());
+        } catch (IOException e) {
+            return "连接异常 " + e.getClass().getSimpleName();
+        }
+    }
+
+    private void report(int total, long nanos, long[] latencies, Map<String, LongAdder> outcomes) {
+        Arrays.sort(latencies);
+        System.out.printf("请求 %,d 次，并发 %d，耗时 %,d ms，吞吐量 %,.0f 次/秒%n",
+                total, concurrency, nanos / 1_000_000, total / (nanos / 1e9));
+        System.out.printf("延迟 p50 %.2f ms，p99 %.2f ms，p999 %.2f ms，最大 %.2f ms%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                latencies[latencies.length - 1] / 1e6);
+        List<Map.Entry<String, LongAdder>> entries = new ArrayList<>(outcomes.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()));
+        for (Map.Entry<String, LongAdder> entry : entries) {
+            System.out.printf("  %-12s %,8d%n", entry.getKey(), entry.getValue().sum());
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private void verify(long voucherId, AtomicIntegerArray wins) throws InterruptedException {
+        int successes = 0;
+        int maxWins = 0;
+        for (int i = 0; i < wins.length(); i++) {
+            successes += wins.get(i);
+            maxWins = Math.max(maxWins, wins.get(i));
+        }
+        // 1.接口返回与Redis
+        check("成功数不超过库存", successes <= stock, "成功 " + successes + "，库存 " + stock);
+        check("每个用户最多成功一次", maxWins <= 1, "单个用户最多成功 " + maxWins + " 次");
+        String left = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_KEY + voucherId);
+        check("Redis剩余库存 = 库存 - 成功数", left != null && Long.parseLong(left) == stock - successes,
+                "剩余 " + left);
+        Long ordered = stringRedisTemplate.opsForSet().size(SECKILL_ORDER_KEY + voucherId);
+        check("Redis下单用户数 = 成功数", ordered != null && ordered == successes, "下单用户 " + ordered);
+        // 2.订单异步落库，等待数据库与Redis一致
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        long begin = System.currentTimeMillis();
+        int orders;
+        while (true) {
+            orders = count("select count(*) from tb_voucher_order where voucher_id = ?", voucherId);
+            if (orders >= successes || System.currentTimeMillis() > deadline) {
+                break;
+            }
+            Thread.sleep(200);
+        }
+        check("数据库订单数与Redis一致", orders == successes,
+                "订单 " + orders + "，等待 " + (System.currentTimeMillis() - begin) + " ms");
+        int buyers = count("select count(distinct user_id) from tb_voucher_order where voucher_id = ?", voucherId);
+        check("数据库中每个用户最多一单", buyers == orders, "下单用户 " + buyers + "，订单 " + orders);
+        int dbStock = count("select stock from tb_seckill_voucher where voucher_id = ?", voucherId);
+        check("数据库库存 = 库存 - 订单数", dbStock == stock - orders && dbStock >= 0, "库存 " + dbStock);
+    }
+
+    private int count(String sql, long voucherId) {
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, voucherId);
+        return count == null ? 0 : count;
+    }
+
+    private void check(String name, boolean ok, String detail) {
+        System.out.printf("[%s] %s（%s）%n", ok ? "通过" : "失败", name, detail);
+        passed &= ok;
+    }
+
+    private void cleanUp() {
+        for (Long voucherId : voucherIds) {
+            jdbcTemplate.update("delete from tb_voucher_order where voucher_id = ?", voucherId);
+            jdbcTemplate.update("delete from tb_seckill_voucher where voucher_id = ?", voucherId);
+            jdbcTemplate.update("delete from tb_voucher where id = ?", voucherId);
+            stringRedisTemplate.delete(Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId));
+        }
+        if (!userIds.isEmpty()) {
+            context.getBean(IUserService.class).removeByIds(userIds);
+            List<String> keys = new ArrayList<>(tokens.size());
+            for (String token : tokens) {
+                keys.add(LOGIN_USER_KEY + token);
+            }
+            stringRedisTemplate.delete(keys);
+        }
+    }
+
+    private static void addIfPresent(List<String> arguments, String property, String springProperty) {
+        String value = System.getProperty(property);
+        if (value != null) {
+            arguments.add("--" + springProperty + "=" + value);
+        }
+    }
+
+    /**
+     * 只实现下单流程用到的getLock、tryLock和unlock，锁在JVM内，单实例压测时语义相同
+     */
+    private static RedissonClient localRedisson() {
+        Map<String, RLock> locks = new ConcurrentHashMap<>();
+        return (RedissonClient) Proxy.newProxyInstance(RedissonClient.class.getClassLoader(),
+                new Class<?>[]{RedissonClient.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getLock":
+                            return locks.computeIfAbsent((String) args[0], SeckillLoadHarness::localLock);
+                        case "shutdown":
+                            return null;
+                        case "isShutdown":
+                        case "isShuttingDown":
+                            return false;
+                        case "toString":
+                            return "LocalRedissonClient";
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static RLock localLock(String name) {
+        ReentrantLock lock = new ReentrantLock();
+        return (RLock) Proxy.newProxyInstance(RLock.class.getClassLoader(), new Class<?>[]{RLock.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "tryLock":
+                            if (args == null) {
+                                return lock.tryLock();
+                            }
+                            throw new UnsupportedOperationException("tryLock with timeout");
+                        case "unlock":
+                            lock.unlock();
+                            return null;
+                        case "isHeldByCurrentThread":
+                            return lock.isHeldByCurrentThread();
+                        case "getName":
+                        case "toString":
+                            return name;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
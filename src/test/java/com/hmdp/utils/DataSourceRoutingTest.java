@@ -0,0 +1,32 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSourceRoutingTest {
+
+    @AfterEach
+    void clear() {
+        DataSourceRouting.clear();
+    }
+
+    @Test
+    void cacheFillReadsPrimaryInsideReadOnly() {
+        DataSourceRouting.beginRequest(null, 0);
+        DataSourceRouting.enterReadOnly();
+        assertTrue(DataSourceRouting.isReplicaAllowed());
+        // 回填缓存的查询走主库，嵌套时同样如此
+        assertFalse(DataSourceRouting.readPrimary(DataSourceRouting::isReplicaAllowed));
+        assertFalse(DataSourceRouting.readPrimary(() -> DataSourceRouting.readPrimary(DataSourceRouting::isReplicaAllowed)));
+        // 结束后恢复从库，异常时同样恢复
+        assertTrue(DataSourceRouting.isReplicaAllowed());
+        assertThrows(IllegalStateException.class, () -> DataSourceRouting.readPrimary(() -> {
+            throw new IllegalStateException();
+        }));
+        assertTrue(DataSourceRouting.isReplicaAllowed());
+        DataSourceRouting.exitReadOnly();
+        assertFalse(DataSourceRouting.isReplicaAllowed());
+    }
+}
@@ -0,0 +1,272 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ScrollResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.FEED_ACTIVE_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_OUTBOX_KEY;
+
+/**
+ * 推拉结合关注流的基准测试，直接运行main方法
+ * <p>
+ * 先输出按粉丝分布估算的写成本：每发布一篇博文需要写入的收件箱数量（推模式全部推送，混合模式大V只写发件箱）；
+ * 再用JMH测量FeedEngine.read本身：活跃读者读取收件箱、不活跃读者回来后的第一页（从发件箱有限归并）、
+ * 后台补齐收件箱，以及mergeDesc的一页多路归并。
+ * Redis使用进程内的 {@link InMemoryRedisServer}，关注关系由内存中的列表代替数据库
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeedEngineBenchmark {
+
+    private static final int AUTHORS = 10_000;
+    private static final int PAGE_SIZE = 10;
+    private static final int SOURCE_SIZE = 1000;
+    private static final long[] THRESHOLDS = {1_000, 5_000, 50_000};
+    /**
+     * 每个发件箱中的博文数
+     */
+    private static final int OUTBOX_SIZE = 50;
+    private static final int BIG_AUTHORS = 3;
+    private static final long WARM_USER = 1L;
+
+    public static void main(String[] args) throws RunnerException {
+        Random random = new Random(42);
+        estimate("均匀分布(平均200粉丝)", uniform(random, 400));
+        estimate("Zipf s=1.0(最大50万粉丝)", zipf(500_000, 1.0));
+        estimate("Zipf s=0.7(长尾更重)", zipf(500_000, 0.7));
+        new Runner(new OptionsBuilder()
+                .include(FeedEngineBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    /**
+     * 关注关系来自内存的FeedEngine；不活跃读者的后台补齐不执行，单独由rebuildInbox测量
+     */
+    static class InMemoryFeedEngine extends FeedEngine {
+        private final List<Long> followees;
+        private final List<String> bigFollowees;
+
+        InMemoryFeedEngine(StringRedisTemplate template, List<Long> followees, List<String> bigFollowees) {
+            super(template, null, null, 2, 1000);
+            this.followees = followees;
+            this.bigFollowees = bigFollowees;
+        }
+
+        @Override
+        List<Long> recentFollowees(Long userId, int limit) {
+            return followees.subList(0, Math.min(limit, followees.size()));
+        }
+
+        @Override
+        List<String> bigFolloweesOf(Long userId) {
+            return bigFollowees;
+        }
+
+        @Override
+        void rebuildInboxAsync(Long userId) {
+            // 只测量请求线程上的开销
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FeedState {
+        /**
+         * 读者关注的人数
+         */
+        @Param({"50", "500", "5000"})
+        int followees;
+
+        private InMemoryRedisServer server;
+        private LettuceConnectionFactory factory;
+        InMemoryFeedEngine engine;
+        final AtomicLong coldUser = new AtomicLong(1_000_000);
+
+        @Setup
+        public void setup() throws IOException {
+            server = new InMemoryRedisServer();
+            factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+            factory.afterPropertiesSet();
+            StringRedisTemplate template = new StringRedisTemplate(factory);
+            // 1.每位作者的发件箱写入OUTBOX_SIZE篇，作者id从1开始，大V排在最后
+            int authors = followees + BIG_AUTHORS;
+            Random random = new Random(followees);
+            long blogId = 0;
+            for (int a = 1; a <= authors; a++) {
+                String key = FEED_OUTBOX_KEY + a;
+                List<String> blogs = new ArrayList<>(OUTBOX_SIZE);
+                List<Double> scores = new ArrayList<>(OUTBOX_SIZE);
+                double score = 1_700_000_000_000d;
+                for (int i = 0; i < OUTBOX_SIZE; i++) {
+                    score -= random.nextInt(3_600_000);
+                    blogs.add(Long.toString(++blogId));
+                    scores.add(score);
+                }
+                template.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (int i = 0; i < blogs.size(); i++) {
+                        conn.zAdd(key, scores.get(i), blogs.get(i));
+                    }
+                    return null;
+                });
+            }
+            List<Long> followeeIds = new ArrayList<>(followees);
+            for (long a = followees; a >= 1; a--) {
+                followeeIds.add(a);
+            }
+            List<String> bigIds = new ArrayList<>(BIG_AUTHORS);
+            for (int a = followees + 1; a <= authors; a++) {
+                bigIds.add(Integer.toString(a));
+            }
+            engine = new InMemoryFeedEngine(template, followeeIds, bigIds);
+            // 2.活跃读者：收件箱已补齐，最近读取过
+            engine.rebuildInbox(WARM_USER);
+            template.opsForZSet().add(FEED_ACTIVE_KEY, Long.toString(WARM_USER), System.currentTimeMillis());
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            engine.destroy();
+            factory.destroy();
+            server.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MergeState {
+        /**
+         * 归并的来源数：收件箱加关注的大V发件箱
+         */
+        @Param({"1", "3", "10", "50"})
+        int sourceCount;
+
+        List<List<ZSetOperations.TypedTuple<String>>> sources;
+
+        @Setup
+        public void setup() {
+            sources = new ArrayList<>(sourceCount);
+            Random random = new Random(sourceCount);
+            for (int s = 0; s < sourceCount; s++) {
+                List<ZSetOperations.TypedTuple<String>> source = new ArrayList<>(SOURCE_SIZE);
+                double score = 1_700_000_000_000d;
+                for (int i = 0; i < SOURCE_SIZE; i++) {
+                    score -= random.nextInt(60_000);
+                    source.add(new DefaultTypedTuple<>(s + ":" + i, score));
+                }
+                sources.add(source);
+            }
+        }
+    }
+
+    /**
+     * 活跃读者读第一页：收件箱与大V发件箱归并，之后命中缓存的归并结果
+     */
+    @Benchmark
+    public ScrollResult readWarm(FeedState s) {
+        return s.engine.read(WARM_USER, Long.MAX_VALUE, 0, PAGE_SIZE);
+    }
+
+    /**
+     * 不活跃读者回来后的第一页，每次一个新读者，收件箱为空，从最近关注的人的发件箱有限归并
+     */
+    @Benchmark
+    public ScrollResult readCold(FeedState s) {
+        return s.engine.read(s.coldUser.incrementAndGet(), Long.MAX_VALUE, 0, PAGE_SIZE);
+    }
+
+    /**
+     * 后台补齐收件箱的一次完整执行
+     */
+    @Benchmark
+    public void rebuildInbox(FeedState s) {
+        s.engine.rebuildInbox(2L);
+    }
+
+    @Benchmark
+    public List<ZSetOperations.TypedTuple<String>> mergePage(MergeState s) {
+        return FeedEngine.mergeDesc(s.sources, PAGE_SIZE);
+    }
+
+    private static void estimate(String name, long[] fans) {
+        long pushAll = 0;
+        for (long f : fans) {
+            pushAll += f;
+        }
+        System.out.printf("%n== %s ==%n纯推模式：每轮每位作者发一篇，写入收件箱 %,d 次%n", name, pushAll);
+        for (long threshold : THRESHOLDS) {
+            long writes = 0;
+            int bigAuthors = 0;
+            for (long f : fans) {
+                if (f > threshold) {
+                    bigAuthors++;
+                } else {
+                    writes += f;
+                }
+            }
+            // 假设读者关注的作者按粉丝数比例抽取，关注50人时平均命中的大V数量
+            double bigFollowed = expectedBigFollowed(fans, threshold, 50);
+            int sources = 1 + (int) Math.ceil(bigFollowed);
+            System.out.printf("阈值 %,7d：大V %4d 人，写入 %,12d 次（%.1f%%），读者平均归并 %d 路%n",
+                    threshold, bigAuthors, writes, 100.0 * writes / pushAll, sources);
+        }
+        System.out.println("单页归并耗时见JMH结果中的mergePage");
+    }
+
+    private static double expectedBigFollowed(long[] fans, long threshold, int follows) {
+        double total = 0;
+        double big = 0;
+        for (long f : fans) {
+            total += f;
+            if (f > threshold) {
+                big += f;
+            }
+        }
+        return follows * big / total;
+    }
+
+    private static long[] uniform(Random random, int maxFans) {
+        long[] fans = new long[AUTHORS];
+        for (int i = 0; i < AUTHORS; i++) {
+            fans[i] = random.nextInt(maxFans + 1);
+        }
+        return fans;
+    }
+
+    private static long[] zipf(long maxFans, double s) {
+        long[] fans = new long[AUTHORS];
+        for (int i = 0; i < AUTHORS; i++) {
+            fans[i] = (long) (maxFans / Math.pow(i + 1, s));
+        }
+        return fans;
+    }
+}
@@ -0,0 +1,115 @@
+package com.hmdp.utils;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 关注关系索引的内存与延迟估算，直接运行main方法，建议 -Xmx4g
+ * <p>
+ * 生成100万用户、1000万条关注边，被关注者按Zipf分布抽取；
+ * 对比FollowGraph与HashMap&lt;Long, Set&lt;Long&gt;&gt;的内存占用，
+ * 以及粉丝遍历、共同关注、二度推荐的耗时
+ */
+public class FollowGraphBenchmark {
+
+    private static final int USERS = 1_000_000;
+    private static final int EDGES = 10_000_000;
+    private static final int QUERIES = 1000;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        long[] src = new long[EDGES];
+        long[] dst = new long[EDGES];
+        double[] cdf = zipfCdf(USERS, 0.9);
+        for (int i = 0; i < EDGES; i++) {
+            src[i] = 1 + random.nextInt(USERS);
+            dst[i] = 1 + sample(cdf, random.nextDouble());
+        }
+
+        long before = usedMemory();
+        long start = System.nanoTime();
+        FollowGraph graph = FollowGraph.build(src, dst, EDGES);
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        long graphBytes = usedMemory() - before;
+        System.out.printf("FollowGraph：节点 %,d，去重后边 %,d，构建 %,d ms，堆占用约 %,d MB（估算 %,d MB）%n",
+                graph.nodeCount(), graph.edgeCount(), buildMillis, graphBytes >> 20, graph.estimatedBytes() >> 20);
+
+        // 1.粉丝遍历：最大的大V与随机用户
+        long[] sum = {0};
+        start = System.nanoTime();
+        graph.forEachFollower(1, id -> sum[0] += id);
+        System.out.printf("遍历最大大V的 %,d 个粉丝：%.2f ms%n",
+                graph.followerCount(1), (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            graph.forEachFollower(1 + random.nextInt(USERS), id -> sum[0] += id);
+        }
+        System.out.printf("随机用户粉丝遍历：平均 %.2f us%n", (System.nanoTime() - start) / 1e3 / QUERIES);
+
+        // 2.共同关注
+        long[] out = new long[1000];
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            graph.intersectFollowees(1 + random.nextInt(USERS), 1 + random.nextInt(USERS), out);
+        }
+        System.out.printf("共同关注：平均 %.2f us%n", (System.nanoTime() - start) / 1e3 / QUERIES);
+
+        // 3.二度推荐，先预热线程内缓冲区
+        graph.recommend(2, 10);
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            graph.recommend(1 + random.nextInt(USERS), 10);
+        }
+        System.out.printf("二度推荐：平均 %.2f ms%n", (System.nanoTime() - start) / 1e6 / QUERIES);
+
+        // 4.对照：装箱集合保存同样的粉丝关系，只取前1/5的边避免内存溢出，再按比例估算
+        graph = null;
+        int sampleEdges = EDGES / 5;
+        before = usedMemory();
+        Map<Long, Set<Long>> followers = new HashMap<>();
+        for (int i = 0; i < sampleEdges; i++) {
+            followers.computeIfAbsent(dst[i], k -> new HashSet<>()).add(src[i]);
+        }
+        long boxedBytes = (usedMemory() - before) * (EDGES / sampleEdges);
+        System.out.printf("HashMap<Long, Set<Long>> 单方向 %,d 个用户：估算 %,d MB（校验和 %d）%n",
+                followers.size(), boxedBytes >> 20, sum[0]);
+    }
+
+    private static double[] zipfCdf(int n, double s) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += 1.0 / Math.pow(i + 1, s);
+            cdf[i] = total;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, double p) {
+        int lo = 0;
+        int hi = cdf.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cdf[mid] < p) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
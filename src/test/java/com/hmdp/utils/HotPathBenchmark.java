@@ -0,0 +1,349 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点路径的JMH基准测试，直接运行main方法，或者 mvn -Pbenchmark test-compile exec:exec -Dbenchmark=HotPathBenchmark
+ * <p>
+ * 覆盖CacheClient的三种查询策略、RedisIdWorker、SimpleRedisLock、Hutool与Jackson的JSON序列化、
+ * 以及RefreshTokenInterceptor中的BeanUtil.fillBeanWithMap。
+ * 默认连接进程内的 {@link InMemoryRedisServer}，测得的是Lettuce客户端与本机回环的开销；
+ * 加 -Dredis=127.0.0.1:6379 改为连接本机Redis，键都带有bench前缀，结束后删除。
+ * 结果用于对比改动前后的变化而不是绝对值
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotPathBenchmark {
+
+    private static final String PREFIX = "bench:shop:";
+    private static final String LOCK_PREFIX = "bench:lock:shop:";
+    private static final long HOT_ID = 1L;
+    private static final int THREADS = 8;
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(HotPathBenchmark.class.getSimpleName());
+        // 基准测试在新的JVM中运行，需要传递Redis地址
+        String redis = System.getProperty("redis");
+        if (redis != null) {
+            options.jvmArgsAppend("-Dredis=" + redis);
+        }
+        new Runner(options.build()).run();
+    }
+
+    /**
+     * Redis连接和被测对象，所有线程共享
+     */
+    @State(Scope.Benchmark)
+    public static class RedisState {
+        private InMemoryRedisServer server;
+        private LettuceConnectionFactory factory;
+        StringRedisTemplate template;
+        CacheClient cacheClient;
+        RedisIdWorker idWorker;
+        SimpleRedisLock lock;
+        final AtomicLong missId = new AtomicLong(1_000_000);
+
+        @Setup
+        public void setup() throws IOException {
+            String redis = System.getProperty("redis");
+            RedisStandaloneConfiguration config;
+            if (redis == null) {
+                server = new InMemoryRedisServer();
+                config = new RedisStandaloneConfiguration(server.getHost(), server.getPort());
+            } else {
+                String[] hostPort = redis.split(":");
+                config = new RedisStandaloneConfiguration(hostPort[0], Integer.parseInt(hostPort[1]));
+            }
+            factory = new LettuceConnectionFactory(config);
+            factory.afterPropertiesSet();
+            template = new StringRedisTemplate(factory);
+            cacheClient = new CacheClient(template);
+            idWorker = new RedisIdWorker(template);
+            lock = new SimpleRedisLock("bench", template);
+
+            cacheClient.set(PREFIX + HOT_ID, newShop(HOT_ID), 30L, TimeUnit.MINUTES);
+            template.opsForValue().set(PREFIX + "0", "", 30L, TimeUnit.MINUTES);
+            cacheClient.setWithLogicalExpire(PREFIX + "2", newShop(2L), 30L, TimeUnit.MINUTES);
+            // 逻辑过期时间为0，每次都判定过期并尝试抢锁重建，模拟热点键持续过期的最坏情况
+            cacheClient.setWithLogicalExpire(PREFIX + "3", newShop(3L), 0L, TimeUnit.SECONDS);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            try {
+                cacheClient.destroy();
+                template.delete(template.keys("bench:*"));
+                template.delete(template.keys("icr:bench:*"));
+            } finally {
+                factory.destroy();
+                if (server != null) {
+                    server.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 每个线程一把锁，对应按用户加锁的场景
+     */
+    @State(Scope.Thread)
+    public static class ThreadLockState {
+        ILock lock;
+
+        @Setup
+        public void setup(RedisState redis) {
+            lock = new SimpleRedisLock("bench:" + Thread.currentThread().getId(), redis.template);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class JsonState {
+        ObjectMapper mapper;
+        Shop shop;
+        RedisData redisData;
+        String hutoolShop;
+        String jacksonShop;
+        String hutoolData;
+        String jacksonData;
+
+        @Setup
+        public void setup() throws IOException {
+            mapper = new ObjectMapper()
+                    .registerModule(new JavaTimeModule())
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+            shop = newShop(HOT_ID);
+            redisData = new RedisData();
+            redisData.setData(shop);
+            redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+            hutoolShop = JSONUtil.toJsonStr(shop);
+            jacksonShop = mapper.writeValueAsString(shop);
+            hutoolData = JSONUtil.toJsonStr(redisData);
+            jacksonData = mapper.writeValueAsString(redisData);
+        }
+    }
+
+    /**
+     * 与Redis中登录用户的Hash一致，值都是字符串
+     */
+    @State(Scope.Benchmark)
+    public static class UserMapState {
+        final Map<Object, Object> userMap = new HashMap<>();
+
+        @Setup
+        public void setup() {
+            userMap.put("id", "1010");
+            userMap.put("nickName", "user_bench");
+            userMap.put("icon", "/imgs/icons/default.jpg");
+        }
+    }
+
+    // ==================== CacheClient ====================
+
+    @Benchmark
+    @Threads(1)
+    public Shop passThroughHit(RedisState s) {
+        return s.cacheClient.queryWithPassThrough(PREFIX, HOT_ID, Shop.class, HotPathBenchmark::newShop, 30L, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public Shop passThroughHitConcurrent(RedisState s) {
+        return s.cacheClient.queryWithPassThrough(PREFIX, HOT_ID, Shop.class, HotPathBenchmark::newShop, 30L, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public Shop passThroughNullHit(RedisState s) {
+        return s.cacheClient.queryWithPassThrough(PREFIX, 0L, Shop.class, HotPathBenchmark::newShop, 30L, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 每次一个新id，走数据库回退并写回缓存；回退直接构造对象，只统计缓存这一侧的开销
+     */
+    @Benchmark
+    @Threads(THREADS)
+    public Shop passThroughMiss(RedisState s) {
+        return s.cacheClient.queryWithPassThrough(PREFIX, s.missId.incrementAndGet(), Shop.class, HotPathBenchmark::newShop, 1L, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public Shop mutexHit(RedisState s) {
+        return s.cacheClient.queryWithMutex(PREFIX, HOT_ID, Shop.class, HotPathBenchmark::newShop, 30L, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public Shop mutexMiss(RedisState s) {
+        return s.cacheClient.queryWithMutex(PREFIX, s.missId.incrementAndGet(), Shop.class, HotPathBenchmark::newShop, 1L, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public Shop logicalExpireFresh(RedisState s) {
+        return s.cacheClient.queryWithLogicalExpire(PREFIX, LOCK_PREFIX, 2L, Shop.class, HotPathBenchmark::newShop, 30L, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public Shop logicalExpireExpired(RedisState s) {
+        return s.cacheClient.queryWithLogicalExpire(PREFIX, LOCK_PREFIX, 3L, Shop.class, HotPathBenchmark::newShop, 0L, TimeUnit.SECONDS);
+    }
+
+    // ==================== RedisIdWorker ====================
+
+    @Benchmark
+    @Threads(1)
+    public long nextId(RedisState s) {
+        return s.idWorker.nextId("bench");
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public long nextIdConcurrent(RedisState s) {
+        return s.idWorker.nextId("bench");
+    }
+
+    // ==================== SimpleRedisLock ====================
+
+    @Benchmark
+    @Threads(1)
+    public void lockSameKey(RedisState s) {
+        if (!s.lock.tryLock(10L)) {
+            throw new IllegalStateException("没有竞争时加锁失败");
+        }
+        s.lock.unlock();
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void lockPerThread(ThreadLockState s) {
+        if (!s.lock.tryLock(10L)) {
+            throw new IllegalStateException("没有竞争时加锁失败");
+        }
+        s.lock.unlock();
+    }
+
+    // ==================== JSON ====================
+
+    @Benchmark
+    public String hutoolWriteShop(JsonState s) {
+        return JSONUtil.toJsonStr(s.shop);
+    }
+
+    @Benchmark
+    public String jacksonWriteShop(JsonState s) throws IOException {
+        return s.mapper.writeValueAsString(s.shop);
+    }
+
+    @Benchmark
+    public Shop hutoolReadShop(JsonState s) {
+        return JSONUtil.toBean(s.hutoolShop, Shop.class);
+    }
+
+    @Benchmark
+    public Shop jacksonReadShop(JsonState s) throws IOException {
+        return s.mapper.readValue(s.jacksonShop, Shop.class);
+    }
+
+    @Benchmark
+    public String hutoolWriteRedisData(JsonState s) {
+        return JSONUtil.toJsonStr(s.redisData);
+    }
+
+    @Benchmark
+    public String jacksonWriteRedisData(JsonState s) throws IOException {
+        return s.mapper.writeValueAsString(s.redisData);
+    }
+
+    /**
+     * 与queryWithLogicalExpire相同：先解析外层，再把data转换为Shop
+     */
+    @Benchmark
+    public Shop hutoolReadRedisData(JsonState s) {
+        RedisData data = JSONUtil.toBean(s.hutoolData, RedisData.class);
+        return JSONUtil.toBean((JSONObject) data.getData(), Shop.class);
+    }
+
+    @Benchmark
+    public Shop jacksonReadRedisData(JsonState s) throws IOException {
+        RedisData data = s.mapper.readValue(s.jacksonData, RedisData.class);
+        return s.mapper.convertValue(data.getData(), Shop.class);
+    }
+
+    // ==================== BeanUtil ====================
+
+    @Benchmark
+    public UserDTO fillBeanWithMap(UserMapState s) {
+        return BeanUtil.fillBeanWithMap(s.userMap, new UserDTO(), false);
+    }
+
+    /**
+     * 手写赋值，作为fillBeanWithMap的对照
+     */
+    @Benchmark
+    public UserDTO fillBeanByHand(UserMapState s) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(Long.valueOf((String) s.userMap.get("id")));
+        userDTO.setNickName((String) s.userMap.get("nickName"));
+        userDTO.setIcon((String) s.userMap.get("icon"));
+        return userDTO;
+    }
+
+    private static Shop newShop(Long id) {
+        Shop shop = new Shop();
+        shop.setId(id);
+        shop.setName("103茶餐厅");
+        shop.setTypeId(1L);
+        shop.setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg");
+        shop.setArea("大关");
+        shop.setAddress("金华路锦昌文华苑29号");
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setSold(4215);
+        shop.setComments(3035);
+        shop.setScore(37);
+        shop.setOpenHours("10:00-22:00");
+        shop.setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39));
+        shop.setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        return shop;
+    }
+}
@@ -0,0 +1,107 @@
+package com.hmdp.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * 图片发送方式的吞吐量对比，直接运行main方法
+ * <p>
+ * 通过本机回环连接发送同一个文件若干次，接收端只负责读完丢弃，对比：
+ * InputStream + 8KB缓冲区复制到Socket输出流（Servlet默认写法），与FileChannel.transferTo到SocketChannel（Linux上为sendfile）
+ */
+public class ImageServeBenchmark {
+
+    private static final int[] FILE_SIZES = {64 * 1024, 1024 * 1024, 8 * 1024 * 1024};
+    private static final long BYTES_PER_ROUND = 2L * 1024 * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            Thread drain = new Thread(() -> drain(server), "drain");
+            drain.setDaemon(true);
+            drain.start();
+            Random random = new Random(42);
+            for (int size : FILE_SIZES) {
+                byte[] data = new byte[size];
+                random.nextBytes(data);
+                Path file = Files.createTempFile("img-bench-", ".jpg");
+                try {
+                    Files.write(file, data);
+                    int times = (int) Math.max(1, BYTES_PER_ROUND / size);
+                    // 预热
+                    streamCopy(server, file, times / 4);
+                    transferTo(server, file, times / 4);
+                    long start = System.nanoTime();
+                    streamCopy(server, file, times);
+                    report("InputStream复制", size, times, System.nanoTime() - start);
+                    start = System.nanoTime();
+                    transferTo(server, file, times);
+                    report("FileChannel.transferTo", size, times, System.nanoTime() - start);
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static void streamCopy(ServerSocketChannel server, Path file, int times) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(server.getLocalAddress());
+            OutputStream out = socket.getOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int i = 0; i < times; i++) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, n);
+                    }
+                }
+            }
+            out.flush();
+        }
+    }
+
+    private static void transferTo(ServerSocketChannel server, Path file, int times) throws IOException {
+        try (SocketChannel socket = SocketChannel.open(server.getLocalAddress())) {
+            for (int i = 0; i < times; i++) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = channel.size();
+                    while (position < size) {
+                        position += channel.transferTo(position, size - position, socket);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void drain(ServerSocketChannel server) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+        while (true) {
+            try (SocketChannel socket = server.accept()) {
+                while (socket.read(buffer) != -1) {
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static void report(String name, int size, int times, long nanos) {
+        double mb = (double) size * times / (1024 * 1024);
+        System.out.printf("%s 文件%,dKB：%,.0f MB/s，平均每个文件 %.1f us%n",
+                name, size / 1024, mb / (nanos / 1e9), nanos / 1e3 / times);
+    }
+}
@@ -0,0 +1,825 @@
+package com.hmdp.utils;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 进程内的Redis替身，只用于测试、基准测试和压测，不依赖本机安装Redis
+ * <p>
+ * 在本机回环地址上实现RESP2协议，客户端（Lettuce、StringRedisTemplate）照常经过编解码和网络，测得的是真实的客户端开销；
+ * 与Redis一样所有命令串行执行，保证单条命令和脚本的原子性。只实现项目用到的命令，
+ * 支持字符串、集合、哈希和有序集合的常用命令；Lua脚本不做解释执行，而是按脚本内容的SHA1注册等价的Java实现，EVALSHA和EVAL都按SHA1查找。
+ * 键和值按ISO-8859-1逐字节转换为字符串保存，与Redis一样是二进制安全的，位图命令直接操作这些字节
+ */
+public class InMemoryRedisServer implements Closeable {
+
+    /**
+     * 脚本的Java实现，返回值按Long、String、List、null编码为RESP
+     */
+    public interface Script {
+        Object run(InMemoryRedisServer redis, List<String> keys, List<String> args);
+    }
+
+    private static final class Entry {
+        private Object value;
+        private long expireAt;
+
+        private Entry(Object value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * 有序集合，按 (分数, 成员) 升序排列，与Redis相同
+     */
+    public static final class ZSet {
+        private final Map<String, Double> scores = new HashMap<>();
+        private final TreeSet<String> ordered = new TreeSet<>((a, b) -> {
+            int c = Double.compare(scores.get(a), scores.get(b));
+            return c != 0 ? c : a.compareTo(b);
+        });
+
+        public boolean add(String member, double score) {
+            boolean added = !scores.containsKey(member);
+            if (!added) {
+                ordered.remove(member);
+            }
+            scores.put(member, score);
+            ordered.add(member);
+            return added;
+        }
+
+        public boolean remove(String member) {
+            if (!scores.containsKey(member)) {
+                return false;
+            }
+            ordered.remove(member);
+            scores.remove(member);
+            return true;
+        }
+
+        public Double score(String member) {
+            return scores.get(member);
+        }
+
+        public int size() {
+            return scores.size();
+        }
+
+        /**
+         * 按分数升序的成员列表
+         */
+        private List<String> ascending() {
+            return new ArrayList<>(ordered);
+        }
+    }
+
+    private static final class RedisError extends RuntimeException {
+        private RedisError(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private final Map<String, Entry> data = new HashMap<>();
+    private final Map<String, Script> scripts = new ConcurrentHashMap<>();
+    private final ServerSocket server;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public InMemoryRedisServer() throws IOException {
+        server = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        registerScript("unlock.lua", (redis, keys, args) -> {
+            if (args.get(0).equals(redis.get(keys.get(0)))) {
+                return redis.del(keys.get(0));
+            }
+            return 0L;
+        });
+        registerScript("seckill.lua", (redis, keys, args) -> {
+            String stockKey = "seckill:stock:" + args.get(0);
+            String orderKey = "seckill:order:" + args.get(0);
+            String stock = redis.get(stockKey);
+            if (stock == null) {
+                throw new RedisError("ERR user_script: attempt to compare nil with number");
+            }
+            if (Long.parseLong(stock) <= 0) {
+                return 1L;
+            }
+            if (redis.set(orderKey).contains(args.get(1))) {
+                return 2L;
+            }
+            redis.incrBy(stockKey, -1);
+            redis.set(orderKey).add(args.get(1));
+            return 0L;
+        });
+        Thread acceptor = new Thread(this::accept, "in-memory-redis");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public String getHost() {
+        return server.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * 注册类路径下的Lua脚本对应的Java实现，SHA1按脚本文本计算，与DefaultRedisScript一致
+     */
+    public void registerScript(String resource, Script script) {
+        try (InputStream in = InMemoryRedisServer.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("脚本不存在，" + resource);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            scripts.put(sha1(out.toByteArray()), script);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (Socket client : clients) {
+            client.close();
+        }
+    }
+
+    // ------------------------------------------------------------------ 数据结构，脚本在持有锁时调用
+
+    public String get(String key) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!(entry.value instanceof String)) {
+            throw wrongType();
+        }
+        return (String) entry.value;
+    }
+
+    public long del(String key) {
+        return entry(key) != null && data.remove(key) != null ? 1L : 0L;
+    }
+
+    public long incrBy(String key, long delta) {
+        String value = get(key);
+        long result;
+        try {
+            result = (value == null ? 0L : Long.parseLong(value)) + delta;
+        } catch (NumberFormatException e) {
+            throw new RedisError("ERR value is not an integer or out of range");
+        }
+        Entry entry = entry(key);
+        if (entry == null) {
+            data.put(key, new Entry(Long.toString(result)));
+        } else {
+            entry.value = Long.toString(result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<String> set(String key) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            entry = new Entry(new HashSet<String>());
+            data.put(key, entry);
+        } else if (!(entry.value instanceof Set)) {
+            throw wrongType();
+        }
+        return (Set<String>) entry.value;
+    }
+
+    public ZSet zset(String key) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            entry = new Entry(new ZSet());
+            data.put(key, entry);
+        } else if (!(entry.value instanceof ZSet)) {
+            throw wrongType();
+        }
+        return (ZSet) entry.value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, String> hash(String key) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            entry = new Entry(new HashMap<String, String>());
+            data.put(key, entry);
+        } else if (!(entry.value instanceof Map)) {
+            throw wrongType();
+        }
+        return (Map<String, String>) entry.value;
+    }
+
+    private Entry entry(String key) {
+        Entry entry = data.get(key);
+        if (entry != null && entry.expireAt > 0 && entry.expireAt <= System.currentTimeMillis()) {
+            data.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private void put(String key, String value, long expireAt) {
+        Entry entry = new Entry(value);
+        entry.expireAt = expireAt;
+        data.put(key, entry);
+    }
+
+    private static RedisError wrongType() {
+        return new RedisError("WRONGTYPE Operation against a key holding the wrong kind of value");
+    }
+
+    // ------------------------------------------------------------------ 网络与协议
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                clients.add(socket);
+                Thread thread = new Thread(() -> serve(socket), "in-memory-redis-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = new BufferedInputStream(s.getInputStream(), 64 * 1024);
+            OutputStream out = new BufferedOutputStream(s.getOutputStream(), 64 * 1024);
+            while (true) {
+                List<String> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                Object reply;
+                try {
+                    synchronized (data) {
+                        reply = execute(command);
+                    }
+                } catch (RedisError e) {
+                    reply = e;
+                } catch (RuntimeException e) {
+                    // 参数个数或格式不对
+                    reply = new RedisError("ERR " + e);
+                }
+                writeReply(out, reply);
+                // 管道中还有未读的命令时攒着一起写回
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (SocketException e) {
+            // 客户端断开
+        } catch (IOException e) {
+            if (!closed) {
+                e.printStackTrace();
+            }
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    private Object execute(List<String> command) {
+        String name = command.get(0).toUpperCase(Locale.ROOT);
+        switch (name) {
+            case "PING":
+                return new Status("PONG");
+            case "AUTH":
+            case "SELECT":
+            case "CLIENT":
+                return new Status("OK");
+            case "FLUSHDB":
+            case "FLUSHALL":
+                data.clear();
+                return new Status("OK");
+            case "DBSIZE":
+                return (long) data.size();
+            case "KEYS": {
+                // 只支持 * 和 ? 通配符
+                Pattern pattern = Pattern.compile(Pattern.quote(command.get(1))
+                        .replace("*", "\\E.*\\Q").replace("?", "\\E.\\Q"));
+                List<Object> keys = new ArrayList<>();
+                for (String key : new ArrayList<>(data.keySet())) {
+                    if (pattern.matcher(key).matches() && entry(key) != null) {
+                        keys.add(key);
+                    }
+                }
+                return keys;
+            }
+            case "GET":
+                return get(command.get(1));
+            case "MGET": {
+                List<Object> values = new ArrayList<>(command.size() - 1);
+                for (int i = 1; i < command.size(); i++) {
+                    Entry entry = entry(command.get(i));
+                    values.add(entry != null && entry.value instanceof String ? entry.value : null);
+                }
+                return values;
+            }
+            case "SET":
+                return setCommand(command);
+            case "SETEX":
+                put(command.get(1), command.get(3), System.currentTimeMillis() + Long.parseLong(command.get(2)) * 1000);
+                return new Status("OK");
+            case "PSETEX":
+                put(command.get(1), command.get(3), System.currentTimeMillis() + Long.parseLong(command.get(2)));
+                return new Status("OK");
+            case "SETNX":
+                if (entry(command.get(1)) != null) {
+                    return 0L;
+                }
+                put(command.get(1), command.get(2), 0);
+                return 1L;
+            case "DEL":
+            case "UNLINK": {
+                long count = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    count += del(command.get(i));
+                }
+                return count;
+            }
+            case "RENAME": {
+                Entry entry = entry(command.get(1));
+                if (entry == null) {
+                    throw new RedisError("ERR no such key");
+                }
+                data.remove(command.get(1));
+                data.put(command.get(2), entry);
+                return new Status("OK");
+            }
+            case "SETBIT":
+                return setBit(command.get(1), Long.parseLong(command.get(2)), "1".equals(command.get(3)));
+            case "GETBIT": {
+                String value = get(command.get(1));
+                long offset = Long.parseLong(command.get(2));
+                int index = (int) (offset >> 3);
+                return value == null || index >= value.length() ? 0L
+                        : (long) ((value.charAt(index) >> (7 - (offset & 7))) & 1);
+            }
+            case "BITCOUNT": {
+                String value = get(command.get(1));
+                long count = 0;
+                for (int i = 0; value != null && i < value.length(); i++) {
+                    count += Integer.bitCount(value.charAt(i));
+                }
+                return count;
+            }
+            case "EXISTS": {
+                long count = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    count += entry(command.get(i)) != null ? 1 : 0;
+                }
+                return count;
+            }
+            case "INCR":
+                return incrBy(command.get(1), 1);
+            case "DECR":
+                return incrBy(command.get(1), -1);
+            case "INCRBY":
+                return incrBy(command.get(1), Long.parseLong(command.get(2)));
+            case "DECRBY":
+                return incrBy(command.get(1), -Long.parseLong(command.get(2)));
+            case "EXPIRE":
+                return expire(command.get(1), Long.parseLong(command.get(2)) * 1000);
+            case "PEXPIRE":
+                return expire(command.get(1), Long.parseLong(command.get(2)));
+            case "TTL":
+            case "PTTL": {
+                Entry entry = entry(command.get(1));
+                if (entry == null) {
+                    return -2L;
+                }
+                if (entry.expireAt == 0) {
+                    return -1L;
+                }
+                long millis = entry.expireAt - System.currentTimeMillis();
+                return "TTL".equals(name) ? (millis + 999) / 1000 : millis;
+            }
+            case "SADD": {
+                Set<String> set = set(command.get(1));
+                long added = 0;
+                for (int i = 2; i < command.size(); i++) {
+                    added += set.add(command.get(i)) ? 1 : 0;
+                }
+                return added;
+            }
+            case "SISMEMBER": {
+                Entry entry = entry(command.get(1));
+                return entry != null && set(command.get(1)).contains(command.get(2)) ? 1L : 0L;
+            }
+            case "SCARD": {
+                Entry entry = entry(command.get(1));
+                return entry == null ? 0L : (long) set(command.get(1)).size();
+            }
+            case "SMEMBERS": {
+                Entry entry = entry(command.get(1));
+                return entry == null ? Collections.emptyList() : new ArrayList<Object>(set(command.get(1)));
+            }
+            case "HSET":
+            case "HMSET": {
+                Map<String, String> hash = hash(command.get(1));
+                long added = 0;
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    added += hash.put(command.get(i), command.get(i + 1)) == null ? 1 : 0;
+                }
+                return "HSET".equals(name) ? (Object) added : new Status("OK");
+            }
+            case "HGET": {
+                Entry entry = entry(command.get(1));
+                return entry == null ? null : hash(command.get(1)).get(command.get(2));
+            }
+            case "HGETALL": {
+                Entry entry = entry(command.get(1));
+                List<Object> values = new ArrayList<>();
+                if (entry != null) {
+                    for (Map.Entry<String, String> e : hash(command.get(1)).entrySet()) {
+                        values.add(e.getKey());
+                        values.add(e.getValue());
+                    }
+                }
+                return values;
+            }
+            case "ZADD": {
+                ZSet zset = zset(command.get(1));
+                long added = 0;
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    added += zset.add(command.get(i + 1), parseScore(command.get(i))) ? 1 : 0;
+                }
+                return added;
+            }
+            case "ZREM": {
+                Entry entry = entry(command.get(1));
+                long removed = 0;
+                for (int i = 2; entry != null && i < command.size(); i++) {
+                    removed += zset(command.get(1)).remove(command.get(i)) ? 1 : 0;
+                }
+                return removed;
+            }
+            case "ZSCORE": {
+                Entry entry = entry(command.get(1));
+                Double score = entry == null ? null : zset(command.get(1)).score(command.get(2));
+                return score == null ? null : formatScore(score);
+            }
+            case "ZCARD": {
+                Entry entry = entry(command.get(1));
+                return entry == null ? 0L : (long) zset(command.get(1)).size();
+            }
+            case "ZRANGE":
+            case "ZREVRANGE": {
+                Entry entry = entry(command.get(1));
+                List<String> members = entry == null ? Collections.emptyList() : zset(command.get(1)).ascending();
+                if ("ZREVRANGE".equals(name)) {
+                    Collections.reverse(members);
+                }
+                int[] range = rankRange(members.size(), Long.parseLong(command.get(2)), Long.parseLong(command.get(3)));
+                boolean withScores = command.size() > 4 && "WITHSCORES".equalsIgnoreCase(command.get(4));
+                return rangeReply(entry == null ? null : zset(command.get(1)),
+                        members.subList(range[0], range[1]), withScores);
+            }
+            case "ZREVRANGEBYSCORE":
+                return revRangeByScore(command);
+            case "ZREMRANGEBYRANK": {
+                Entry entry = entry(command.get(1));
+                if (entry == null) {
+                    return 0L;
+                }
+                ZSet zset = zset(command.get(1));
+                List<String> members = zset.ascending();
+                int[] range = rankRange(members.size(), Long.parseLong(command.get(2)), Long.parseLong(command.get(3)));
+                for (String member : members.subList(range[0], range[1])) {
+                    zset.remove(member);
+                }
+                return (long) (range[1] - range[0]);
+            }
+            case "ZUNIONSTORE":
+                return unionStore(command);
+            case "EVALSHA":
+            case "EVAL": {
+                String sha = "EVAL".equals(name)
+                        ? sha1(command.get(1).getBytes(StandardCharsets.ISO_8859_1))
+                        : command.get(1).toLowerCase(Locale.ROOT);
+                Script script = scripts.get(sha);
+                if (script == null) {
+                    throw new RedisError("EVALSHA".equals(name)
+                            ? "NOSCRIPT No matching script. Please use EVAL."
+                            : "ERR script is not registered in InMemoryRedisServer");
+                }
+                int numKeys = Integer.parseInt(command.get(2));
+                List<String> keys = command.subList(3, 3 + numKeys);
+                List<String> args = command.subList(3 + numKeys, command.size());
+                return script.run(this, keys, args);
+            }
+            default:
+                throw new RedisError("ERR unknown command '" + command.get(0) + "'");
+        }
+    }
+
+    private Object setCommand(List<String> command) {
+        String key = command.get(1);
+        long expireAt = 0;
+        boolean nx = false;
+        boolean xx = false;
+        for (int i = 3; i < command.size(); i++) {
+            String option = command.get(i).toUpperCase(Locale.ROOT);
+            if ("EX".equals(option)) {
+                expireAt = System.currentTimeMillis() + Long.parseLong(command.get(++i)) * 1000;
+            } else if ("PX".equals(option)) {
+                expireAt = System.currentTimeMillis() + Long.parseLong(command.get(++i));
+            } else if ("NX".equals(option)) {
+                nx = true;
+            } else if ("XX".equals(option)) {
+                xx = true;
+            } else {
+                throw new RedisError("ERR syntax error");
+            }
+        }
+        boolean exists = entry(key) != null;
+        if ((nx && exists) || (xx && !exists)) {
+            return null;
+        }
+        put(key, command.get(2), expireAt);
+        return new Status("OK");
+    }
+
+    private Object revRangeByScore(List<String> command) {
+        Entry entry = entry(command.get(1));
+        double max = parseBound(command.get(2));
+        double min = parseBound(command.get(3));
+        boolean maxExclusive = command.get(2).startsWith("(");
+        boolean minExclusive = command.get(3).startsWith("(");
+        boolean withScores = false;
+        long offset = 0;
+        long count = -1;
+        for (int i = 4; i < command.size(); i++) {
+            String option = command.get(i).toUpperCase(Locale.ROOT);
+            if ("WITHSCORES".equals(option)) {
+                withScores = true;
+            } else if ("LIMIT".equals(option)) {
+                offset = Long.parseLong(command.get(++i));
+                count = Long.parseLong(command.get(++i));
+            } else {
+                throw new RedisError("ERR syntax error");
+            }
+        }
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        ZSet zset = zset(command.get(1));
+        List<String> members = new ArrayList<>();
+        long skipped = 0;
+        for (String member : zset.ordered.descendingSet()) {
+            double score = zset.score(member);
+            if (score > max || (maxExclusive && score == max)) {
+                continue;
+            }
+            if (score < min || (minExclusive && score == min)) {
+                break;
+            }
+            if (skipped++ < offset) {
+                continue;
+            }
+            if (count >= 0 && members.size() >= count) {
+                break;
+            }
+            members.add(member);
+        }
+        return rangeReply(zset, members, withScores);
+    }
+
+    private Object unionStore(List<String> command) {
+        String destination = command.get(1);
+        int numKeys = Integer.parseInt(command.get(2));
+        String aggregate = "SUM";
+        for (int i = 3 + numKeys; i < command.size(); i++) {
+            String option = command.get(i).toUpperCase(Locale.ROOT);
+            if ("AGGREGATE".equals(option)) {
+                aggregate = command.get(++i).toUpperCase(Locale.ROOT);
+            } else {
+                throw new RedisError("ERR WEIGHTS is not supported by InMemoryRedisServer");
+            }
+        }
+        Map<String, Double> union = new HashMap<>();
+        for (int i = 0; i < numKeys; i++) {
+            String key = command.get(3 + i);
+            if (entry(key) == null) {
+                continue;
+            }
+            ZSet zset = zset(key);
+            for (Map.Entry<String, Double> e : zset.scores.entrySet()) {
+                Double old = union.get(e.getKey());
+                double score = e.getValue();
+                if (old != null) {
+                    score = "MAX".equals(aggregate) ? Math.max(old, score)
+                            : "MIN".equals(aggregate) ? Math.min(old, score)
+                            : old + score;
+                }
+                union.put(e.getKey(), score);
+            }
+        }
+        data.remove(destination);
+        if (union.isEmpty()) {
+            return 0L;
+        }
+        ZSet result = zset(destination);
+        union.forEach(result::add);
+        return (long) result.size();
+    }
+
+    private static List<Object> rangeReply(ZSet zset, List<String> members, boolean withScores) {
+        List<Object> reply = new ArrayList<>(withScores ? members.size() * 2 : members.size());
+        for (String member : members) {
+            reply.add(member);
+            if (withScores) {
+                reply.add(formatScore(zset.score(member)));
+            }
+        }
+        return reply;
+    }
+
+    /**
+     * 把Redis的排名区间（支持负数）转换为 [from, to)
+     */
+    private static int[] rankRange(int size, long start, long stop) {
+        if (start < 0) {
+            start = Math.max(0, start + size);
+        }
+        if (stop < 0) {
+            stop += size;
+        }
+        stop = Math.min(stop, size - 1);
+        if (start > stop || start >= size) {
+            return new int[]{0, 0};
+        }
+        return new int[]{(int) start, (int) stop + 1};
+    }
+
+    private static double parseScore(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (lower.equals("+inf") || lower.equals("inf")) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (lower.equals("-inf")) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return Double.parseDouble(text);
+    }
+
+    private static double parseBound(String text) {
+        return parseScore(text.startsWith("(") ? text.substring(1) : text);
+    }
+
+    private static String formatScore(double score) {
+        if (score == Math.rint(score) && Math.abs(score) < 1e17) {
+            return Long.toString((long) score);
+        }
+        return Double.toString(score);
+    }
+
+    private long setBit(String key, long offset, boolean on) {
+        String value = get(key);
+        int index = (int) (offset >> 3);
+        char[] bytes = Arrays.copyOf(value == null ? new char[0] : value.toCharArray(),
+                Math.max(index + 1, value == null ? 0 : value.length()));
+        int mask = 1 << (7 - (offset & 7));
+        long old = (bytes[index] & mask) != 0 ? 1L : 0L;
+        bytes[index] = (char) (on ? bytes[index] | mask : bytes[index] & ~mask);
+        Entry entry = entry(key);
+        if (entry == null) {
+            data.put(key, new Entry(new String(bytes)));
+        } else {
+            entry.value = new String(bytes);
+        }
+        return old;
+    }
+
+    private long expire(String key, long millis) {
+        Entry entry = entry(key);
+        if (entry == null) {
+            return 0L;
+        }
+        entry.expireAt = System.currentTimeMillis() + millis;
+        return 1L;
+    }
+
+    private static final class Status {
+        private final String text;
+
+        private Status(String text) {
+            this.text = text;
+        }
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            return null;
+        }
+        if (b != '*') {
+            throw new IOException("只支持RESP数组格式的命令");
+        }
+        int count = (int) readLong(in);
+        List<String> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("命令参数必须是bulk string");
+            }
+            int length = (int) readLong(in);
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(bytes, read, length - read);
+                if (n == -1) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            // 跳过 \r\n
+            in.read();
+            in.read();
+            command.add(new String(bytes, StandardCharsets.ISO_8859_1));
+        }
+        return command;
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            if (b == '-') {
+                negative = true;
+            } else {
+                value = value * 10 + (b - '0');
+            }
+        }
+        in.read();
+        return negative ? -value : value;
+    }
+
+    private static void writeReply(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof Status) {
+            out.write(("+" + ((Status) reply).text + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof RedisError) {
+            out.write(("-" + ((RedisError) reply).getMessage() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof Long) {
+            out.write((":" + reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof String) {
+            byte[] bytes = ((String) reply).getBytes(StandardCharsets.ISO_8859_1);
+            out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(bytes);
+            out.write('\r');
+            out.write('\n');
+        } else if (reply instanceof List) {
+            List<?> list = (List<?>) reply;
+            out.write(("*" + list.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (Object item : list) {
+                writeReply(out, item);
+            }
+        } else {
+            throw new IllegalStateException("不支持的返回值类型 " + reply.getClass());
+        }
+    }
+
+    private static String sha1(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte d : digest) {
+                sb.append(Character.forDigit((d >> 4) & 0xF, 16)).append(Character.forDigit(d & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
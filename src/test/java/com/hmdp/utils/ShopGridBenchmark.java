@@ -0,0 +1,166 @@
+package com.hmdp.utils;
+
+import io.lettuce.core.GeoArgs;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+
+import java.util.Random;
+
+/**
+ * 店铺空间索引的延迟估算，直接运行main方法，建议 -Xmx2g
+ * <p>
+ * 在杭州附近约60公里见方的范围内生成100万个店铺（一半集中在若干商圈），
+ * 对比ShopGrid、全量扫描，以及传入Redis地址时的GEORADIUS查询耗时，例如：
+ * java ... ShopGridBenchmark redis://127.0.0.1:6379
+ */
+public class ShopGridBenchmark {
+
+    private static final int SHOPS = 1_000_000;
+    private static final int QUERIES = 2000;
+    private static final double CENTER_X = 120.15;
+    private static final double CENTER_Y = 30.28;
+    private static final double SPAN = 0.6;
+    private static final double RADIUS = 5000;
+    private static final int PAGE = 10;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        long[] ids = new long[SHOPS];
+        double[] xs = new double[SHOPS];
+        double[] ys = new double[SHOPS];
+        long[] types = new long[SHOPS];
+        int[] scores = new int[SHOPS];
+        long[] prices = new long[SHOPS];
+        double[][] hubs = new double[20][2];
+        for (double[] hub : hubs) {
+            hub[0] = CENTER_X + (random.nextDouble() - 0.5) * SPAN;
+            hub[1] = CENTER_Y + (random.nextDouble() - 0.5) * SPAN;
+        }
+        for (int i = 0; i < SHOPS; i++) {
+            ids[i] = i + 1;
+            if (i % 2 == 0) {
+                double[] hub = hubs[random.nextInt(hubs.length)];
+                xs[i] = hub[0] + random.nextGaussian() * 0.01;
+                ys[i] = hub[1] + random.nextGaussian() * 0.01;
+            } else {
+                xs[i] = CENTER_X + (random.nextDouble() - 0.5) * SPAN;
+                ys[i] = CENTER_Y + (random.nextDouble() - 0.5) * SPAN;
+            }
+            types[i] = 1 + random.nextInt(10);
+            scores[i] = 10 + random.nextInt(41);
+            prices[i] = 20 + random.nextInt(300);
+        }
+
+        long start = System.nanoTime();
+        ShopGrid grid = ShopGrid.build(ids, xs, ys, types, scores, prices, SHOPS);
+        System.out.printf("构建 %,d 个店铺：%,d ms%n", grid.size(), (System.nanoTime() - start) / 1_000_000);
+
+        double[][] points = new double[QUERIES][2];
+        for (double[] p : points) {
+            double[] hub = hubs[random.nextInt(hubs.length)];
+            p[0] = random.nextBoolean() ? hub[0] : CENTER_X + (random.nextDouble() - 0.5) * SPAN;
+            p[1] = random.nextBoolean() ? hub[1] : CENTER_Y + (random.nextDouble() - 0.5) * SPAN;
+        }
+        ShopGrid.Filter byType = new ShopGrid.Filter(3, 0, 0, Long.MAX_VALUE);
+        ShopGrid.Filter strict = new ShopGrid.Filter(3, 40, 50, 120);
+        // 预热
+        for (int round = 0; round < 3; round++) {
+            for (double[] p : points) {
+                grid.nearest(p[0], p[1], RADIUS, byType, null, PAGE);
+            }
+        }
+        time("ShopGrid 类型 前10", () -> {
+            for (double[] p : points) {
+                grid.nearest(p[0], p[1], RADIUS, byType, null, PAGE);
+            }
+        });
+        time("ShopGrid 类型 第10页", () -> {
+            for (double[] p : points) {
+                grid.nearest(p[0], p[1], RADIUS, byType, null, PAGE * 10);
+            }
+        });
+        time("ShopGrid 类型+评分+价格 前10", () -> {
+            for (double[] p : points) {
+                grid.nearest(p[0], p[1], RADIUS, strict, null, PAGE);
+            }
+        });
+
+        // 校验：与全量扫描的结果一致
+        for (int q = 0; q < 50; q++) {
+            double[] p = points[q];
+            ShopGrid.Hits hits = grid.nearest(p[0], p[1], RADIUS, strict, null, PAGE);
+            ShopGrid.Hits expected = new ShopGrid.Hits(PAGE);
+            for (int i = 0; i < SHOPS; i++) {
+                if (strict.test(types[i], scores[i], prices[i])) {
+                    double d = ShopGrid.distance(p[0], p[1], xs[i], ys[i]);
+                    if (d <= RADIUS) {
+                        expected.offer(ids[i], d);
+                    }
+                }
+            }
+            expected.sorted();
+            for (int i = 0; i < expected.size(); i++) {
+                if (hits.size() != expected.size() || hits.id(i) != expected.id(i)) {
+                    throw new IllegalStateException("结果与全量扫描不一致，查询 " + q);
+                }
+            }
+        }
+        time("全量扫描 类型+评分+价格 前10（50次）", 50, () -> {
+            for (int q = 0; q < 50; q++) {
+                ShopGrid.Hits expected = new ShopGrid.Hits(PAGE);
+                for (int i = 0; i < SHOPS; i++) {
+                    if (strict.test(types[i], scores[i], prices[i])) {
+                        expected.offer(ids[i], ShopGrid.distance(points[q][0], points[q][1], xs[i], ys[i]));
+                    }
+                }
+            }
+        });
+
+        if (args.length > 0) {
+            redis(args[0], ids, xs, ys, types, points);
+        }
+    }
+
+    /**
+     * Redis GEO路径：每个类型一个GEO集合，GEORADIUS只能按类型过滤，评分和价格需要取回后再过滤
+     */
+    private static void redis(String uri, long[] ids, double[] xs, double[] ys, long[] types, double[][] points) {
+        RedisClient client = RedisClient.create(uri);
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            RedisCommands<String, String> commands = connection.sync();
+            String key = "bench:shop:geo:3";
+            commands.del(key);
+            for (int i = 0; i < ids.length; i++) {
+                if (types[i] == 3) {
+                    commands.geoadd(key, xs[i], ys[i], String.valueOf(ids[i]));
+                }
+            }
+            GeoArgs args = new GeoArgs().withDistance().withCount(PAGE).asc();
+            time("Redis GEORADIUS 类型 前10", () -> {
+                for (double[] p : points) {
+                    commands.georadius(key, p[0], p[1], RADIUS, GeoArgs.Unit.m, args);
+                }
+            });
+            GeoArgs page10 = new GeoArgs().withDistance().withCount(PAGE * 10).asc();
+            time("Redis GEORADIUS 类型 第10页", () -> {
+                for (double[] p : points) {
+                    commands.georadius(key, p[0], p[1], RADIUS, GeoArgs.Unit.m, page10);
+                }
+            });
+            commands.del(key);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private static void time(String name, Runnable task) {
+        time(name, QUERIES, task);
+    }
+
+    private static void time(String name, int queries, Runnable task) {
+        long start = System.nanoTime();
+        task.run();
+        System.out.printf("%s：平均 %.1f us%n", name, (System.nanoTime() - start) / 1e3 / queries);
+    }
+}
@@ -0,0 +1,106 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShopGridTest {
+
+    @Test
+    void nearestMatchesBruteForce() {
+        Random random = new Random(7);
+        int size = 20000;
+        long[] ids = new long[size];
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        long[] types = new long[size];
+        int[] scores = new int[size];
+        long[] prices = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i + 1;
+            xs[i] = 120.1 + random.nextDouble() * 0.2;
+            ys[i] = 30.2 + random.nextDouble() * 0.2;
+            types[i] = 1 + random.nextInt(5);
+            scores[i] = random.nextInt(51);
+            prices[i] = random.nextInt(10) == 0 ? -1 : random.nextInt(300);
+        }
+        ShopGrid grid = ShopGrid.build(ids, xs, ys, types, scores, prices, size);
+        ShopGrid.Filter[] filters = {
+                ShopGrid.Filter.ANY,
+                new ShopGrid.Filter(3, 0, 0, Long.MAX_VALUE),
+                new ShopGrid.Filter(0, 40, 50, 100)
+        };
+        double[] radii = {300, 2000, 50000};
+        for (ShopGrid.Filter filter : filters) {
+            for (double radius : radii) {
+                for (int q = 0; q < 20; q++) {
+                    double x = 120.1 + random.nextDouble() * 0.2;
+                    double y = 30.2 + random.nextDouble() * 0.2;
+                    ShopGrid.Hits hits = grid.nearest(x, y, radius, filter, id -> id % 7 == 0, 10);
+                    List<double[]> expected = new ArrayList<>();
+                    for (int i = 0; i < size; i++) {
+                        if (ids[i] % 7 == 0 || !filter.test(types[i], scores[i], prices[i])) {
+                            continue;
+                        }
+                        double d = ShopGrid.distance(x, y, xs[i], ys[i]);
+                        if (d <= radius) {
+                            expected.add(new double[]{d, ids[i]});
+                        }
+                    }
+                    expected.sort(Comparator.<double[]>comparingDouble(e -> e[0]).thenComparingDouble(e -> e[1]));
+                    assertEquals(Math.min(10, expected.size()), hits.size(), "radius " + radius);
+                    for (int i = 0; i < hits.size(); i++) {
+                        assertEquals((long) expected.get(i)[1], hits.id(i), "radius " + radius + " #" + i);
+                        assertEquals(expected.get(i)[0], hits.distance(i), 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void emptyGridAndZeroLimit() {
+        assertEquals(0, ShopGrid.empty().nearest(120.1, 30.2, 1000, ShopGrid.Filter.ANY, null, 10).size());
+        ShopGrid grid = ShopGrid.build(new long[]{1}, new double[]{120.1}, new double[]{30.2},
+                new long[]{1}, new int[]{40}, new long[]{80}, 1);
+        assertEquals(0, grid.nearest(120.1, 30.2, 1000, ShopGrid.Filter.ANY, null, 0).size());
+        assertEquals(1, grid.nearest(120.1, 30.2, 1000, ShopGrid.Filter.ANY, null, 10).size());
+    }
+
+    @Test
+    void shopsWithoutPriceOnlyMatchWithoutPriceRange() {
+        ShopGrid.Filter any = ShopGrid.Filter.ANY;
+        ShopGrid.Filter priced = new ShopGrid.Filter(0, 0, 0, 100);
+        assertTrue(any.test(1, 0, -1));
+        assertFalse(priced.test(1, 0, -1));
+        assertTrue(priced.test(1, 0, 100));
+        assertFalse(new ShopGrid.Filter(2, 0, 0, Long.MAX_VALUE).test(1, 50, 10));
+    }
+
+    @Test
+    void hitsKeepClosestAndBreakTiesById() {
+        ShopGrid.Hits hits = new ShopGrid.Hits(3);
+        hits.offer(5, 10);
+        hits.offer(4, 30);
+        hits.offer(3, 20);
+        hits.offer(2, 10);
+        hits.offer(1, 40);
+        hits.sorted();
+        assertEquals(3, hits.size());
+        assertEquals(2, hits.id(0));
+        assertEquals(5, hits.id(1));
+        assertEquals(3, hits.id(2));
+    }
+
+    @Test
+    void distanceAcrossCells() {
+        // 纬度方向0.01度约1112米
+        assertEquals(1112, ShopGrid.distance(120.1, 30.2, 120.1, 30.21), 1);
+        assertEquals(0, ShopGrid.distance(120.1, 30.2, 120.1, 30.2), 1e-9);
+    }
+}
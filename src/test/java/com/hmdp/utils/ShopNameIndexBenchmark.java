@@ -0,0 +1,136 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 店铺名称倒排索引的延迟估算，直接运行main方法，建议 -Xmx2g
+ * <p>
+ * 从3000个汉字中按偏斜分布（少数常用字出现得多）随机生成100万个店铺名称，加上分店后缀和商圈，
+ * 按关键字长度分别统计倒排索引的耗时，对比逐个contains的全量扫描，并校验两者在同一打分规则下返回相同的结果
+ */
+public class ShopNameIndexBenchmark {
+
+    private static final int SHOPS = 1_000_000;
+    private static final int QUERIES = 2000;
+    private static final int PAGE = 10;
+
+    private static final int ALPHABET = 3000;
+    private static final String[] SUFFIXES = {"", "(西湖店)", "(滨江店)", "·总店", "(武林广场店)", " Coffee", "KTV"};
+    private static final String[] AREAS = {"西湖", "滨江", "拱墅", "武林广场", "钱江新城", "下沙", "良渚", "余杭"};
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        long[] ids = new long[SHOPS];
+        String[] names = new String[SHOPS];
+        String[] areas = new String[SHOPS];
+        int[] scores = new int[SHOPS];
+        for (int i = 0; i < SHOPS; i++) {
+            ids[i] = i + 1;
+            int length = 2 + random.nextInt(5);
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                double r = random.nextDouble();
+                sb.append((char) (0x4E00 + (int) (ALPHABET * r * r * r)));
+            }
+            names[i] = sb.append(SUFFIXES[random.nextInt(SUFFIXES.length)]).toString();
+            areas[i] = AREAS[random.nextInt(AREAS.length)];
+            scores[i] = 10 + random.nextInt(41);
+        }
+
+        System.gc();
+        long before = usedMemory();
+        long start = System.nanoTime();
+        ShopNameIndex index = ShopNameIndex.build(ids, names, areas, null, scores, SHOPS);
+        long buildMs = (System.nanoTime() - start) / 1_000_000;
+        System.gc();
+        System.out.printf("构建 %,d 个店铺，%,d 个词项：%,d ms，估算 %,d MB，实测约 %,d MB%n", index.size(),
+                index.termCount(), buildMs, index.estimatedBytes() >> 20, (usedMemory() - before) >> 20);
+
+        // 关键字从已有名称中截取，长度1~4
+        String[] queries = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            String name = ShopNameIndex.normalize(names[random.nextInt(SHOPS)]);
+            int length = Math.min(name.length(), 1 + random.nextInt(4));
+            int offset = random.nextInt(name.length() - length + 1);
+            queries[q] = name.substring(offset, offset + length);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (String query : queries) {
+                index.search(query, null, new ShopNameIndex.Hits(PAGE));
+            }
+        }
+        for (int length = 1; length <= 4; length++) {
+            int len = length;
+            int count = 0;
+            for (String query : queries) {
+                count += query.length() == len ? 1 : 0;
+            }
+            time("倒排索引 前10 关键字长度" + len, count, () -> {
+                for (String query : queries) {
+                    if (query.length() == len) {
+                        index.search(query, null, new ShopNameIndex.Hits(PAGE));
+                    }
+                }
+            });
+        }
+        time("倒排索引 第10页", QUERIES, () -> {
+            for (String query : queries) {
+                index.search(query, null, new ShopNameIndex.Hits(PAGE * 10));
+            }
+        });
+
+        // 校验：与全量扫描的结果一致
+        String[] normalizedNames = new String[SHOPS];
+        String[] normalizedAreas = new String[SHOPS];
+        for (int i = 0; i < SHOPS; i++) {
+            normalizedNames[i] = ShopNameIndex.normalize(names[i]);
+            normalizedAreas[i] = ShopNameIndex.normalize(areas[i]);
+        }
+        String[] checks = Arrays.copyOf(queries, 60);
+        System.arraycopy(new String[]{"西湖", "武林广场", "钱江", "新城", "coffee", "ktv", "总店", "湖店", "不存在", "ktvx"},
+                0, checks, 50, 10);
+        for (String check : checks) {
+            String query = ShopNameIndex.normalize(check);
+            ShopNameIndex.Hits hits = new ShopNameIndex.Hits(PAGE);
+            index.search(query, null, hits);
+            hits.sorted();
+            ShopNameIndex.Hits expected = scan(query, ids, normalizedNames, normalizedAreas, scores);
+            if (hits.size() != expected.size()) {
+                throw new IllegalStateException("结果数量与全量扫描不一致，关键字 " + check);
+            }
+            for (int i = 0; i < expected.size(); i++) {
+                if (hits.id(i) != expected.id(i)) {
+                    throw new IllegalStateException("结果与全量扫描不一致，关键字 " + check);
+                }
+            }
+        }
+        time("全量扫描 前10（50次）", 50, () -> {
+            for (int q = 0; q < 50; q++) {
+                scan(queries[q], ids, normalizedNames, normalizedAreas, scores);
+            }
+        });
+    }
+
+    private static ShopNameIndex.Hits scan(String query, long[] ids, String[] names, String[] areas, int[] scores) {
+        ShopNameIndex.Hits hits = new ShopNameIndex.Hits(PAGE);
+        for (int i = 0; i < ids.length; i++) {
+            int score = ShopNameIndex.score(query, names[i], areas[i], "");
+            if (score >= 0) {
+                hits.offer(ids[i], score, scores[i]);
+            }
+        }
+        return hits.sorted();
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void time(String name, int queries, Runnable task) {
+        long start = System.nanoTime();
+        task.run();
+        System.out.printf("%s：平均 %.1f us%n", name, (System.nanoTime() - start) / 1e3 / queries);
+    }
+}
@@ -0,0 +1,173 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShopNameIndexTest {
+
+    private static final String[] WORDS = {"茶", "餐厅", "火锅", "海底捞", "咖啡", "KTV", "烧烤", "面馆", "小吃"};
+    private static final String[] AREAS = {"拱宸桥", "大关", "运河上街", "北城天地", "火车东站"};
+
+    @Test
+    void tiersRankBeforeShopScore() {
+        ShopNameIndex index = build(
+                shop(1, "海底捞火锅", "大关", 30),
+                shop(2, "海底捞", "大关", 10),
+                shop(3, "老海底捞", "大关", 50),
+                shop(4, "川味小馆", "海底捞旁", 50),
+                shop(5, "ＨＡＩ海底捞！", "大关", 40));
+        ShopNameIndex.Hits hits = search(index, "海底捞", 10);
+        // 完全相同 > 前缀 > 名称包含（同档次按评分）> 商圈包含
+        assertArrayEquals(new long[]{2, 1, 3, 5, 4}, ids(hits));
+    }
+
+    @Test
+    void sameTierOrdersByScoreThenId() {
+        ShopNameIndex index = build(
+                shop(7, "咖啡1", "", 40),
+                shop(3, "咖啡2", "", 40),
+                shop(5, "咖啡3", "", 45),
+                shop(1, "咖啡4", "", 10));
+        assertArrayEquals(new long[]{5, 3, 7, 1}, ids(search(index, "咖啡", 10)));
+    }
+
+    @Test
+    void singleCharacterDoesNotMatchArea() {
+        ShopNameIndex index = build(
+                shop(1, "茶颜", "大关", 10),
+                shop(2, "咖啡", "茶山", 50));
+        assertArrayEquals(new long[]{1}, ids(search(index, "茶", 10)));
+        assertArrayEquals(new long[]{2}, ids(search(index, "茶山", 10)));
+    }
+
+    @Test
+    void stopsOnceHitsAreFull() {
+        List<Object[]> shops = new ArrayList<>();
+        shops.add(shop(1, "火锅", "", 0));
+        for (int i = 2; i <= 1000; i++) {
+            shops.add(shop(i, "火锅店" + i, "", 50));
+        }
+        ShopNameIndex index = build(shops.toArray(new Object[0][]));
+        AtomicInteger visited = new AtomicInteger();
+        ShopNameIndex.Hits hits = new ShopNameIndex.Hits(1);
+        index.search("火锅", id -> {
+            visited.incrementAndGet();
+            return false;
+        }, hits);
+        // 完全相同的一家已经凑够，不再扫描前缀档次
+        assertArrayEquals(new long[]{1}, ids(hits.sorted()));
+        assertEquals(1, visited.get());
+
+        visited.set(0);
+        hits = new ShopNameIndex.Hits(3);
+        index.search("火锅", id -> {
+            visited.incrementAndGet();
+            return false;
+        }, hits);
+        assertEquals(3, hits.size());
+        assertTrue(visited.get() <= 3, "visited " + visited.get());
+    }
+
+    @Test
+    void excludedShopsAreSkipped() {
+        ShopNameIndex index = build(
+                shop(1, "面馆", "", 10),
+                shop(2, "面馆分店", "", 20),
+                shop(3, "老面馆", "", 30));
+        ShopNameIndex.Hits hits = new ShopNameIndex.Hits(10);
+        index.search("面馆", id -> id == 1 || id == 3, hits);
+        assertArrayEquals(new long[]{2}, ids(hits.sorted()));
+    }
+
+    @Test
+    void pagesMatchBruteForce() {
+        Random random = new Random(42);
+        int size = 5000;
+        Object[][] shops = new Object[size][];
+        for (int i = 0; i < size; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + WORDS[random.nextInt(WORDS.length)];
+            shops[i] = shop(i + 1, name, AREAS[random.nextInt(AREAS.length)], random.nextInt(51));
+        }
+        ShopNameIndex index = build(shops);
+        int pageSize = 10;
+        for (String keyword : Arrays.asList("火锅", "餐厅咖啡", "ktv", "大关", "茶", "不存在")) {
+            String query = ShopNameIndex.normalize(keyword);
+            List<Object[]> expected = bruteForce(shops, query);
+            for (int page = 1; page <= 5; page++) {
+                // 与queryShopByName相同：取前page页，再截取最后一页
+                ShopNameIndex.Hits hits = search(index, query, page * pageSize);
+                int from = (page - 1) * pageSize;
+                for (int i = from; i < page * pageSize; i++) {
+                    if (i >= expected.size()) {
+                        assertEquals(expected.size(), hits.size(), keyword);
+                        break;
+                    }
+                    assertEquals((long) expected.get(i)[0], hits.id(i), keyword + " page " + page + " #" + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void normalizeFoldsWidthCaseAndPunctuation() {
+        assertEquals("ktv量贩", ShopNameIndex.normalize("ＫＴＶ·量贩！"));
+        assertEquals("", ShopNameIndex.normalize(null));
+        assertEquals(-1, ShopNameIndex.score("", "a", "", ""));
+    }
+
+    private static List<Object[]> bruteForce(Object[][] shops, String query) {
+        List<Object[]> matched = new ArrayList<>();
+        for (Object[] shop : shops) {
+            int score = ShopNameIndex.score(query, ShopNameIndex.normalize((String) shop[1]),
+                    ShopNameIndex.normalize((String) shop[2]), "");
+            if (score >= 0) {
+                matched.add(new Object[]{shop[0], score, shop[3]});
+            }
+        }
+        matched.sort(Comparator.<Object[]>comparingInt(s -> -(int) s[1])
+                .thenComparingInt(s -> -(int) s[2])
+                .thenComparingLong(s -> (long) s[0]));
+        return matched;
+    }
+
+    private static Object[] shop(long id, String name, String area, int score) {
+        return new Object[]{id, name, area, score};
+    }
+
+    private static ShopNameIndex build(Object[]... shops) {
+        int size = shops.length;
+        long[] ids = new long[size];
+        String[] names = new String[size];
+        String[] areas = new String[size];
+        int[] scores = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = (long) shops[i][0];
+            names[i] = (String) shops[i][1];
+            areas[i] = (String) shops[i][2];
+            scores[i] = (int) shops[i][3];
+        }
+        return ShopNameIndex.build(ids, names, areas, null, scores, size);
+    }
+
+    private static ShopNameIndex.Hits search(ShopNameIndex index, String keyword, int k) {
+        ShopNameIndex.Hits hits = new ShopNameIndex.Hits(k);
+        index.search(ShopNameIndex.normalize(keyword), null, hits);
+        return hits.sorted();
+    }
+
+    private static long[] ids(ShopNameIndex.Hits hits) {
+        long[] ids = new long[hits.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = hits.id(i);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,51 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShopSearchIndexTest {
+
+    @Test
+    void overridesReplaceSnapshotUntilMerged() {
+        ShopSearchIndex index = new ShopSearchIndex(null, false, 30, 360);
+        Map<Long, ShopSearchIndex.ShopDoc> snapshot = new HashMap<>();
+        for (Shop shop : new Shop[]{shop(1, "海底捞", 10), shop(2, "海底捞火锅", 30), shop(3, "面馆", 50)}) {
+            snapshot.put(shop.getId(), index.convert(shop));
+        }
+        index.rebuild(true, snapshot);
+        assertArrayEquals(new long[]{1, 2}, ids(index.search("海底捞", 10)));
+
+        // 改名后新名称立即可搜，旧名称不再命中
+        index.onShopChanged(shop(3, "海底捞面馆", 50));
+        assertArrayEquals(new long[]{1, 3, 2}, ids(index.search("海底捞", 10)));
+        index.onShopChanged(shop(1, "老店", 10));
+        assertArrayEquals(new long[]{3, 2}, ids(index.search("海底捞", 10)));
+        assertArrayEquals(new long[]{1}, ids(index.search("老店", 10)));
+        // 覆盖表同样受数量限制
+        assertArrayEquals(new long[]{3}, ids(index.search("海底捞", 1)));
+
+        // 合并进快照后结果不变
+        index.rebuild(false, new HashMap<>(index.overrides));
+        index.overrides.clear();
+        assertArrayEquals(new long[]{3, 2}, ids(index.search("海底捞", 10)));
+        assertArrayEquals(new long[]{1}, ids(index.search("老店", 10)));
+        assertArrayEquals(new long[]{3}, ids(index.search("面馆", 10)));
+    }
+
+    private static Shop shop(long id, String name, int score) {
+        return new Shop().setId(id).setName(name).setArea("").setAddress("").setScore(score);
+    }
+
+    private static long[] ids(ShopNameIndex.Hits hits) {
+        long[] ids = new long[hits.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = hits.id(i);
+        }
+        return ids;
+    }
+}
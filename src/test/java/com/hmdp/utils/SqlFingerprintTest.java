@@ -0,0 +1,74 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.SqlFingerprintStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlFingerprintTest {
+
+    @AfterEach
+    void tearDown() {
+        RequestTiming.clear();
+    }
+
+    @Test
+    void literalsAndListLengthsShareOneFingerprint() {
+        assertEquals(SqlFingerprint.of("SELECT id,name FROM tb_user WHERE id IN ( ? , ? , ?)"),
+                SqlFingerprint.of("select id,name from tb_user\n where id in (?)"));
+        assertEquals("select * from tb_blog where user_id=? and title=? limit ?",
+                SqlFingerprint.of("SELECT * FROM tb_blog WHERE user_id = 12 AND title = 'it''s' LIMIT 10"));
+        assertEquals("insert into tb_follow(user_id,follow_user_id)values(?+)",
+                SqlFingerprint.of("INSERT INTO tb_follow (user_id, follow_user_id) VALUES (?, ?), (?, ?)"));
+        // 标识符中的数字和反引号中的内容保留
+        assertEquals("select `order`,t2.c3 from t2 where c3>?",
+                SqlFingerprint.of("SELECT `order`, t2.c3 FROM t2 WHERE c3 > 5"));
+    }
+
+    @Test
+    void repeatedStatementInOneRequestFailsInStrictMode() {
+        SqlFingerprintMetrics metrics = new SqlFingerprintMetrics(3, true);
+        RequestTiming timing = RequestTiming.start();
+        String fingerprint = SqlFingerprint.of("SELECT * FROM tb_user WHERE id = ?");
+        for (int i = 0; i < 3; i++) {
+            metrics.check(timing, fingerprint);
+        }
+        // 其它语句不受影响
+        metrics.check(timing, SqlFingerprint.of("SELECT * FROM tb_blog WHERE id = ?"));
+        AssertionError error = assertThrows(AssertionError.class, () -> metrics.check(timing, fingerprint));
+        assertTrue(error.getMessage().contains(fingerprint));
+    }
+
+    @Test
+    void repeatedStatementIsCountedOncePerRequestInLenientMode() {
+        SqlFingerprintMetrics metrics = new SqlFingerprintMetrics(2, false);
+        String fingerprint = SqlFingerprint.of("SELECT * FROM tb_user WHERE id = ?");
+        for (int request = 0; request < 2; request++) {
+            RequestTiming timing = RequestTiming.start();
+            for (int i = 0; i < 10; i++) {
+                metrics.check(timing, fingerprint);
+                metrics.record(fingerprint, 1_000_000);
+            }
+            RequestTiming.clear();
+        }
+        List<SqlFingerprintStats> stats = metrics.snapshot();
+        assertEquals(1, stats.size());
+        assertEquals(20L, stats.get(0).getCount());
+        assertEquals(2L, stats.get(0).getFlaggedRequests());
+        assertEquals(1.0, stats.get(0).getAvgMs(), 1e-9);
+    }
+
+    @Test
+    void histogramBucketsCoverEveryValue() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int bucket = SqlFingerprintMetrics.bucket(micros);
+            long upper = SqlFingerprintMetrics.upperBoundMicros(bucket);
+            assertTrue(micros < upper, "micros " + micros);
+            // 区间宽度不超过下界的25%
+            assertTrue(upper - micros <= Math.max(1, micros / 4 + 1), "micros " + micros);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.User;
+import com.hmdp.service.IUserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class UserProfileLoaderTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private IUserService userService;
+    private UserProfileLoader loader;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        userService = mock(IUserService.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(userService.listByIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> new User().setId(id).setNickName("user_" + id)).collect(Collectors.toList());
+        });
+        loader = new UserProfileLoader(stringRedisTemplate, userService);
+    }
+
+    @Test
+    void onePageOfBlogsIssuesOneUserQuery() {
+        // 缓存全部未命中
+        when(valueOperations.multiGet(anyList())).thenAnswer(invocation -> {
+            List<String> keys = invocation.getArgument(0);
+            return new ArrayList<>(Collections.nCopies(keys.size(), (String) null));
+        });
+        List<Blog> blogs = blogsOfUsers(1L, 2L, 3L, 1L, 2L, 4L, 5L, 6L, 7L, 8L);
+
+        loader.fill(blogs, Blog::getUserId, (blog, user) -> blog.setName(user.getNickName()));
+
+        verify(valueOperations, times(1)).multiGet(anyList());
+        verify(userService, times(1)).listByIds(anyCollection());
+        verify(userService, never()).getById(any());
+        blogs.forEach(blog -> assertEquals("user_" + blog.getUserId(), blog.getName()));
+    }
+
+    @Test
+    void cachedUsersIssueNoQuery() {
+        when(valueOperations.multiGet(anyList())).thenAnswer(invocation -> {
+            List<String> keys = invocation.getArgument(0);
+            return keys.stream()
+                    .map(key -> "{\"id\":" + key.substring(RedisConstants.CACHE_USER_KEY.length()) + ",\"nickName\":\"cached\"}")
+                    .collect(Collectors.toList());
+        });
+        List<Blog> blogs = blogsOfUsers(1L, 2L, 3L);
+
+        loader.fill(blogs, Blog::getUserId, (blog, user) -> blog.setName(user.getNickName()));
+
+        verify(userService, never()).listByIds(anyCollection());
+        blogs.forEach(blog -> assertEquals("cached", blog.getName()));
+    }
+
+    @Test
+    void missingUsersAreSkipped() {
+        // 空字符串表示用户不存在
+        when(valueOperations.multiGet(anyList())).thenReturn(Collections.singletonList(""));
+
+        UserDTO user = loader.loadAll(Collections.singletonList(9L)).get(9L);
+
+        assertNull(user);
+        verify(userService, never()).listByIds(anyCollection());
+    }
+
+    private List<Blog> blogsOfUsers(Long... userIds) {
+        List<Blog> blogs = new ArrayList<>();
+        for (Long userId : userIds) {
+            blogs.add(new Blog().setUserId(userId));
+        }
+        return blogs;
+    }
+}
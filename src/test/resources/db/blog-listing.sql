@@ -0,0 +1,34 @@
+-- 列表接口SQL条数测试使用的H2表结构与数据，列与 db/hmdp.sql 中的MySQL表一致
+CREATE TABLE tb_user
+(
+    id          BIGINT AUTO_INCREMENT PRIMARY KEY,
+    phone       VARCHAR(11)  NOT NULL,
+    password    VARCHAR(128) DEFAULT '',
+    nick_name   VARCHAR(32)  DEFAULT '',
+    icon        VARCHAR(255) DEFAULT '',
+    create_time TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    update_time TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE tb_blog
+(
+    id          BIGINT AUTO_INCREMENT PRIMARY KEY,
+    shop_id     BIGINT        NOT NULL,
+    user_id     BIGINT        NOT NULL,
+    title       VARCHAR(255)  NOT NULL,
+    images      VARCHAR(2048) NOT NULL,
+    content     VARCHAR(2048) NOT NULL,
+    liked       INT       DEFAULT 0,
+    comments    INT       DEFAULT NULL,
+    create_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    update_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 8个用户，25篇博文轮流属于这些用户，每页10篇中有重复的作者
+INSERT INTO tb_user (id, phone, nick_name)
+SELECT X, CAST(13800000000 + X AS VARCHAR), CONCAT('user_', X)
+FROM SYSTEM_RANGE(1, 8);
+
+INSERT INTO tb_blog (id, shop_id, user_id, title, images, content, liked, comments)
+SELECT X, 1, MOD(X - 1, 8) + 1, CONCAT('blog_', X), '', '', 0, 0
+FROM SYSTEM_RANGE(1, 25);